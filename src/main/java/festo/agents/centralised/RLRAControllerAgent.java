@@ -4,6 +4,7 @@ import jade.core.Agent;
 import jade.core.behaviours.CyclicBehaviour;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
+import festo.protocol.MessageDispatcher;
 import festo.utils.Logger;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -26,6 +27,8 @@ public class RLRAControllerAgent extends Agent {
     private int reconfigurationsSent = 0;
     private long startTime;
 
+    private MessageDispatcher dispatcher;
+
     protected void setup() {
         startTime = System.currentTimeMillis();
         printAgentHeader();
@@ -36,6 +39,16 @@ public class RLRAControllerAgent extends Agent {
         System.out.println(CYAN + "\n[CONFIGURATION] Initialisation du contrôleur central..." + RESET);
         printConfigurationPanel();
 
+        // Routage par mot-clé ("FAILURE:M1:...", "HIGH_LOAD:M2:95.0", ...)
+        dispatcher = new MessageDispatcher("Contrôleur RLRA");
+        dispatcher.onKeyword("FAILURE",
+                msg -> handleFailure(msg.getSender().getLocalName(), msg.getContent()));
+        dispatcher.onKeyword("HIGH_LOAD",
+                msg -> handleHighLoad(msg.getSender().getLocalName(), msg.getContent()));
+        dispatcher.onKeyword("REQUEST",
+                msg -> handleRequest(msg.getSender().getLocalName(), msg.getContent()));
+        dispatcher.onDefault(msg -> handleUnknownMessage(msg.getContent()));
+
         // Comportement principal avec template pour filtrer les messages
         addBehaviour(new CyclicBehaviour(this) {
             public void action() {
@@ -88,15 +101,7 @@ public class RLRAControllerAgent extends Agent {
 
         Logger.log("Message reçu de " + sender + ": " + content);
 
-        if (content.startsWith("FAILURE")) {
-            handleFailure(sender, content);
-        } else if (content.startsWith("HIGH_LOAD")) {
-            handleHighLoad(sender, content);
-        } else if (content.startsWith("REQUEST")) {
-            handleRequest(sender, content);
-        } else {
-            handleUnknownMessage(content);
-        }
+        dispatcher.dispatch(msg);
 
         updateStatusBar();
     }
@@ -274,6 +279,9 @@ public class RLRAControllerAgent extends Agent {
         System.out.printf("  Temps de fonctionnement: %s%d secondes%s\n", GREEN, uptime, RESET);
         System.out.printf("  Statut système:        %s● OPÉRATIONNEL%s\n", GREEN, RESET);
         System.out.println(CYAN + "═".repeat(70) + RESET);
+        if (dispatcher != null) {
+            dispatcher.printStatistics();
+        }
     }
 
     private void updateStatusBar() {
@@ -5,17 +5,26 @@ import jade.core.behaviours.CyclicBehaviour;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import festo.models.ReconfigurationRequest;
+import festo.protocol.MessageDispatcher;
 import festo.utils.Logger;
 
 public class CompositeMonitorModule {
     private Agent agent;
     private CompositeLearnerModule learnerModule;
     private int alertsReceived;
+    private final MessageDispatcher dispatcher;
 
     public CompositeMonitorModule(Agent agent) {
         this.agent = agent;
         this.alertsReceived = 0;
 
+        // Type d'alerte et scénario associé, par mot-clé
+        this.dispatcher = new MessageDispatcher("Monitor composite");
+        dispatcher.onKeyword("FAILURE", msg -> processAlert(msg, "PANNE", "FAILURE"));
+        dispatcher.onKeyword("HIGH_LOAD", msg -> processAlert(msg, "SURCHARGE", "HIGH_LOAD"));
+        dispatcher.onKeyword("REQUEST", msg -> processAlert(msg, "DEMANDE", null));
+        dispatcher.onDefault(msg -> processAlert(msg, "INCONNU", null));
+
         System.out.println("\n[MONITOR COMPOSITE] Module initialisé");
         System.out.println("└─ Agent: " + agent.getAID().getName());
     }
@@ -32,7 +41,7 @@ public class CompositeMonitorModule {
                 ACLMessage msg = agent.receive(mt);
 
                 if (msg != null) {
-                    processAlert(msg);
+                    dispatcher.dispatch(msg);
                 } else {
                     block();
                 }
@@ -40,7 +49,7 @@ public class CompositeMonitorModule {
         };
     }
 
-    private void processAlert(ACLMessage msg) {
+    private void processAlert(ACLMessage msg, String alertType, String scenarioType) {
         alertsReceived++;
         String content = msg.getContent();
         String sender = msg.getSender().getLocalName();
@@ -48,11 +57,11 @@ public class CompositeMonitorModule {
         System.out.println("\n[MONITOR] Alerte reçue");
         System.out.println("├─ Expéditeur: " + sender);
         System.out.println("├─ Contenu: " + content);
-        System.out.println("├─ Type: " + getAlertType(content));
+        System.out.println("├─ Type: " + alertType);
 
         Logger.log("[Composite] Alerte de " + sender + ": " + content);
 
-        ReconfigurationRequest request = createRequestFromAlert(content, sender);
+        ReconfigurationRequest request = createRequestFromAlert(content, scenarioType);
 
         if (request != null) {
             System.out.println("├─ Demande créée: " + request.getRequestId());
@@ -68,27 +77,10 @@ public class CompositeMonitorModule {
         }
     }
 
-    private String getAlertType(String content) {
-        if (content.startsWith("FAILURE")) {
-            return "PANNE";
-        } else if (content.startsWith("HIGH_LOAD")) {
-            return "SURCHARGE";
-        } else if (content.startsWith("REQUEST")) {
-            return "DEMANDE";
-        } else {
-            return "INCONNU";
-        }
-    }
-
-    private ReconfigurationRequest createRequestFromAlert(String content, String sender) {
-        String scenarioType = "";
+    private ReconfigurationRequest createRequestFromAlert(String content, String scenarioType) {
         String requestId = "REQ_" + System.currentTimeMillis();
 
-        if (content.startsWith("FAILURE")) {
-            scenarioType = "FAILURE";
-        } else if (content.startsWith("HIGH_LOAD")) {
-            scenarioType = "HIGH_LOAD";
-        } else {
+        if (scenarioType == null) {
             return null; // Type non supporté
         }
 
@@ -101,6 +93,7 @@ public class CompositeMonitorModule {
     public void printStats() {
         System.out.println("\n[STATS MONITOR]");
         System.out.println("├─ Alertes reçues: " + alertsReceived);
+        dispatcher.printStatistics();
         System.out.println("└─ Learner: " + (learnerModule != null ? "Connecté" : "Absent"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+package festo.bench;
+
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.core.behaviours.WakerBehaviour;
+import jade.wrapper.AgentContainer;
+import jade.wrapper.AgentController;
+import festo.utils.TimerWheel;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Banc d'essai : fins de traitement simulées pour N tâches en vol (10 000 par défaut).
+ *
+ * Phase 1 : un WakerBehaviour par tâche (ancienne version de AutonomousMachineAgent).
+ * Phase 2 : une {@link TimerWheel} avancée par un seul TickerBehaviour (version actuelle).
+ *
+ * Les deux phases tournent dans le même agent JADE, avec les mêmes délais (1 à 2 s) ;
+ * on mesure le temps d'armement, le CPU du thread de l'agent et le retard des fins.
+ *
+ * Lancement : java [-Dfesto.bench.port=2199] festo.bench.CompletionSchedulerBenchmark [nombreDeTâches]
+ * Le conteneur principal du banc écoute sur son propre port, distinct de celui du système (2099).
+ */
+public class CompletionSchedulerBenchmark {
+
+    private static final int MAIN_PORT = Integer.getInteger("festo.bench.port", 2199);
+
+    static final CountDownLatch done = new CountDownLatch(1);
+
+    public static void main(String[] args) throws Exception {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+        Runtime runtime = Runtime.instance();
+        Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.MAIN_HOST, "localhost");
+        profile.setParameter(Profile.MAIN_PORT, String.valueOf(MAIN_PORT));
+        profile.setParameter(Profile.GUI, "false");
+        AgentContainer container = runtime.createMainContainer(profile);
+
+        AgentController agent = container.createNewAgent("CompletionBenchmark",
+                BenchmarkAgent.class.getName(), new Object[] { tasks });
+        agent.start();
+
+        done.await();
+        container.kill();
+        runtime.shutDown();
+        System.exit(0);
+    }
+
+    public static class BenchmarkAgent extends Agent {
+
+        private static final long MIN_DELAY_MS = 1000;
+        private static final long DELAY_SPREAD_MS = 1000;
+        private static final long WHEEL_TICK_MS = 10;
+
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private int tasks;
+        private long[] delays;
+
+        // Mesures de la phase en cours
+        private String phase;
+        private int completed;
+        private long scheduleNanos;
+        private long cpuStart;
+        private long wallStart;
+        private long totalLateness;
+        private long maxLateness;
+
+        protected void setup() {
+            Object[] args = getArguments();
+            tasks = args != null && args.length > 0 ? (Integer) args[0] : 10_000;
+
+            // Mêmes délais pour les deux phases
+            Random random = new Random(42);
+            delays = new long[tasks];
+            for (int i = 0; i < tasks; i++) {
+                delays[i] = MIN_DELAY_MS + random.nextInt((int) DELAY_SPREAD_MS);
+            }
+
+            System.out.println("⏱️ Banc d'essai fins de traitement - " + tasks + " tâches en vol");
+            System.out.printf("%-22s %12s %12s %12s %12s%n",
+                    "Ordonnancement", "armement ms", "CPU agent ms", "retard moy", "retard max");
+
+            addBehaviour(new OneShotBehaviour(this) {
+                public void action() {
+                    runWakerPhase();
+                }
+            });
+        }
+
+        // Phase 1 : un comportement par tâche
+        private void runWakerPhase() {
+            startPhase("WakerBehaviour x N");
+            long now = System.currentTimeMillis();
+            long start = System.nanoTime();
+            for (int i = 0; i < tasks; i++) {
+                long due = now + delays[i];
+                addBehaviour(new WakerBehaviour(this, delays[i]) {
+                    protected void onWake() {
+                        taskCompleted(due);
+                        if (completed == tasks) {
+                            endPhase();
+                            runWheelPhase();
+                        }
+                    }
+                });
+            }
+            scheduleNanos = System.nanoTime() - start;
+        }
+
+        // Phase 2 : une roue, un seul TickerBehaviour
+        private void runWheelPhase() {
+            startPhase("TimerWheel + 1 Ticker");
+            long now = System.currentTimeMillis();
+            TimerWheel<Long> wheel = new TimerWheel<>(WHEEL_TICK_MS, 256, now);
+            long start = System.nanoTime();
+            for (int i = 0; i < tasks; i++) {
+                wheel.schedule(now + delays[i], delays[i], now);
+            }
+            scheduleNanos = System.nanoTime() - start;
+
+            addBehaviour(new TickerBehaviour(this, WHEEL_TICK_MS) {
+                protected void onTick() {
+                    wheel.advance(System.currentTimeMillis(), due -> taskCompleted(due));
+                    if (completed == tasks) {
+                        endPhase();
+                        stop();
+                        System.out.println("✅ Banc d'essai terminé");
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        private void startPhase(String name) {
+            phase = name;
+            completed = 0;
+            totalLateness = 0;
+            maxLateness = 0;
+            cpuStart = threads.getCurrentThreadCpuTime();
+            wallStart = System.currentTimeMillis();
+        }
+
+        private void taskCompleted(long due) {
+            long lateness = Math.max(0, System.currentTimeMillis() - due);
+            totalLateness += lateness;
+            maxLateness = Math.max(maxLateness, lateness);
+            completed++;
+        }
+
+        private void endPhase() {
+            long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+            System.out.printf("%-22s %12.2f %12.1f %10.1f ms %9d ms   (durée %d ms)%n",
+                    phase, scheduleNanos / 1e6, cpu / 1e6,
+                    (double) totalLateness / tasks, maxLateness,
+                    System.currentTimeMillis() - wallStart);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package festo.distributed;
+
+import festo.protocol.AdmissionControlMessage;
+
+/**
+ * Contrôle d'admission d'une machine : un seau à jetons par classe de priorité
+ * (basse 1-4, normale 5-7, haute 8-10).
+ *
+ * Le seau du site est réparti entre ses machines : chacune applique à son propre débit
+ * nominal (créneaux / durée de cycle) les facteurs diffusés par le coordinateur, si bien que
+ * la somme des débits admis vaut le débit fixé pour le site. Sans limitation (état initial),
+ * toute tâche est admise et aucun jeton n'est consommé.
+ */
+public class AdmissionController {
+
+    public static final int CLASS_COUNT = AdmissionControlMessage.CLASS_COUNT;
+    public static final int LOW = 0;
+    public static final int NORMAL = 1;
+    public static final int HIGH = 2;
+    private static final String[] CLASS_NAMES = {"basse", "normale", "haute"};
+
+    private final double nominalRatePerMs;
+    private final double burst;
+
+    private boolean limited;
+    private int sequence = -1;
+    private final double[] ratePerMs = new double[CLASS_COUNT];
+    private final double[] tokens = new double[CLASS_COUNT];
+    private long lastRefill;
+
+    // Statistiques
+    private final long[] admitted = new long[CLASS_COUNT];
+    private final long[] throttled = new long[CLASS_COUNT];
+
+    /**
+     * @param nominalRatePerSecond débit de traitement de la machine (tâches/s)
+     * @param burst jetons maximum par classe (rafale admise d'un coup)
+     */
+    public AdmissionController(double nominalRatePerSecond, double burst) {
+        this.nominalRatePerMs = nominalRatePerSecond / 1000.0;
+        this.burst = Math.max(1, burst);
+    }
+
+    public static int classOf(int priority) {
+        return priority >= 8 ? HIGH : priority >= 5 ? NORMAL : LOW;
+    }
+
+    /**
+     * Applique une diffusion du coordinateur.
+     * @return false si elle est plus ancienne que la dernière appliquée
+     */
+    public boolean update(AdmissionControlMessage msg, long now) {
+        if (msg.getSequence() <= sequence) {
+            return false;
+        }
+        sequence = msg.getSequence();
+        if (!msg.isLimited()) {
+            limited = false;
+            return true;
+        }
+        if (limited) {
+            refill(now);
+        } else {
+            // Début de limitation : seaux pleins, la rafale déjà en route n'est pas sanctionnée
+            for (int c = 0; c < CLASS_COUNT; c++) {
+                tokens[c] = burst;
+            }
+            lastRefill = now;
+            limited = true;
+        }
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            ratePerMs[c] = nominalRatePerMs * msg.getFactor(c);
+        }
+        return true;
+    }
+
+    /** Consomme un jeton de la classe de la tâche ; false si la tâche doit être refusée. */
+    public boolean tryAcquire(int priority, long now) {
+        int c = classOf(priority);
+        if (limited) {
+            refill(now);
+            if (tokens[c] < 1) {
+                throttled[c]++;
+                return false;
+            }
+            tokens[c] -= 1;
+        }
+        admitted[c]++;
+        return true;
+    }
+
+    /** Jetons entiers disponibles pour cette priorité, sans les consommer. */
+    public int available(int priority, long now) {
+        if (!limited) {
+            return Integer.MAX_VALUE;
+        }
+        refill(now);
+        return (int) tokens[classOf(priority)];
+    }
+
+    /** Lot tout ou rien : assez de jetons dans chaque classe ({@code needed} indexé par classe) ? */
+    public boolean canAdmit(int[] needed, long now) {
+        if (!limited) {
+            return true;
+        }
+        refill(now);
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            if (needed[c] > tokens[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isLimited() {
+        return limited;
+    }
+
+    public long getThrottled() {
+        return throttled[LOW] + throttled[NORMAL] + throttled[HIGH];
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed <= 0) {
+            return;
+        }
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            tokens[c] = Math.min(burst, tokens[c] + elapsed * ratePerMs[c]);
+        }
+        lastRefill = now;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(limited ? "limitée" : "libre");
+        for (int c = CLASS_COUNT - 1; c >= 0; c--) {
+            sb.append(String.format(" | %s: %d admises, %d refusées", CLASS_NAMES[c], admitted[c], throttled[c]));
+            if (limited) {
+                sb.append(String.format(" (%.2f/s)", ratePerMs[c] * 1000));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -7,6 +7,8 @@ import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.lang.acl.ACLMessage;
 import festo.utils.Logger;
+import festo.utils.TimerWheel;
+import festo.protocol.*;
 import jade.lang.acl.MessageTemplate;
 
 import java.util.*;
@@ -19,6 +21,7 @@ public class AutonomousMachineAgent extends Agent {
 
     private String machineId;
     private String machineType;
+    private long capabilityMask; // capacités couvertes (voir Capability.maskOf)
     private String site;
     private boolean operational;
     private double load;
@@ -27,71 +30,244 @@ public class AutonomousMachineAgent extends Agent {
     private double energyConsumption;
 
     // Pour la prise de décision autonome
-    private Queue<String> localQueue;
+    private TaskQueue localQueue; // priorité + vieillissement
     private Map<String, Integer> resourceAllocation;
     private AID siteCoordinatorAID;
+    // Grand site : la propriété d'une tâche est tenue par le shard que désigne son identifiant
+    private ConsistentHashRing siteRing; // null si le site n'est pas découpé
+    private AID[] siteShardAIDs;
+    private int siteShard = -1;
     private List<String> neighborMachines;
 
+    // Vieillissement : +1 de priorité toutes les 5 s d'attente
+    private static final long AGING_STEP_MS = 5000;
+
+    // Fins de traitement : une roue temporelle et un seul TickerBehaviour pour toutes les tâches
+    private static final long COMPLETION_TICK_MS = 100;
+    private static final int COMPLETION_WHEEL_SLOTS = 256; // un tour = 25,6 s
+    private TimerWheel<Integer> completionWheel; // porte le numéro du créneau
+
+    // Exécution : N créneaux de traitement en parallèle (argument 7, capacité par défaut)
+    // charge = créneaux occupés / créneaux ; capacity borne la file d'attente
+    private int processingSlots;
+    private String[] slotTasks;      // tâche en cours par créneau, null si libre
+    private long[] slotStartedAt;
+    private long[] slotCreatedAt;    // création de la tâche en cours (latence de bout en bout)
+    private long[] slotQueueWait;
+    private int[] slotPriority;
+    private long[] slotDeadline;     // TaskQueue.NO_DEADLINE si aucune
+    private long[] slotFreeAt;       // tampon pour predictFinish
+    private TimerWheel.Timeout<Integer>[] slotTimeouts; // fin de traitement armée, annulable (doublon)
+    private long[] slotBusyMs;       // temps occupé cumulé (tâches terminées)
+    private int[] slotCompleted;
+    private int busySlots;
+    private long startedAt;
+    private int[] slotUtilization;   // tampon pour les messages d'état (pour mille)
+
+    // Échéances : tâches terminées à échéance, manquées, retard (ms), refus faute de pouvoir la tenir
+    private int deadlineTasks;
+    private int deadlineMisses;
+    private long totalLatenessMs;
+    private long maxLatenessMs;
+    private int deadlineRefusals;
+
+    // Registre de propriété du site : chaque admission est revendiquée auprès du coordinateur,
+    // qui refuse les doublons ; la copie refusée est retirée de la file ou interrompue
+    private final TaskClaimMessage taskClaim = new TaskClaimMessage();
+    private int duplicatesDropped;   // retirés de la file avant exécution
+    private int duplicatesAborted;   // interrompus en cours de traitement
+    private int duplicatesTooLate;   // déjà terminés à l'arrivée du refus
+
     // Métriques de performance
     private int tasksCompleted;
     private int tasksFailed;
     private double averageProcessingTime;
+
+    // Protocole binaire (instances réutilisées, agent mono-thread)
+    private final MessageCodec codec = new MessageCodec();
+    private final TaskMessage taskMessage = new TaskMessage();
+    private final TaskReplyMessage taskReply = new TaskReplyMessage();
+    private final HeartbeatMessage heartbeat = new HeartbeatMessage();
+    private final TaskBatchMessage taskBatch = new TaskBatchMessage();
+    private final TaskBatchReplyMessage taskBatchReply = new TaskBatchReplyMessage();
+
+    // Contrôle d'admission du site (seaux à jetons par classe de priorité, réglés par le coordinateur)
+    private AdmissionController admission;
+    private final AdmissionControlMessage admissionControl = new AdmissionControlMessage();
+    private final int[] batchNeeded = new int[AdmissionController.CLASS_COUNT];
+
+    // Dernier état envoyé au coordinateur (heartbeat agrégé)
+    private boolean stateReported;
+    private int reportedLoadTenths;
+    private int reportedQueueSize;
+    private boolean reportedOperational;
+    private int stateSequence; // numéro du dernier MACHINE_STATE (le coordinateur ignore les plus anciens)
+
+    // Vue du site reconstruite depuis les SITE_DIGEST du coordinateur
+    private SiteDigestView siteView;
+    private final SiteDigestMessage siteDigest = new SiteDigestMessage();
+
+    /*
+     * Vol de travail entre machines du même site :
+     * une machine aux créneaux libres et à la file vide demande des tâches à la voisine
+     * dont la file est la plus longue (d'après le digest) ; la victime cède la queue
+     * de sa file (tâches les moins prioritaires) en un seul message.
+     * Anti-oscillation : une seule demande en vol, pause par victime après un refus,
+     * et une machine qui vient de céder ou de recevoir des tâches ne vole pas / n'est pas volée.
+     */
+    private static final int STEAL_MAX_TASKS = 4;
+    private static final int STEAL_MIN_BACKLOG = 2;           // file minimale de la victime
+    private static final long STEAL_REPLY_TIMEOUT_MS = 3000;
+    private static final long STEAL_VICTIM_COOLDOWN_MS = 10000; // après un refus ou une file vide
+    private static final long STEAL_INCOMPATIBLE_COOLDOWN_MS = 60000;
+    private static final long STEAL_SETTLE_MS = 5000;          // après un échange de tâches
+
+    private final StealRequestMessage stealRequest = new StealRequestMessage();
+    private final StealGrantMessage stealGrant = new StealGrantMessage();
+    private final String[] stealTaskIds = new String[STEAL_MAX_TASKS];
+    private final int[] stealPriorities = new int[STEAL_MAX_TASKS];
+    private final long[] stealCreatedAt = new long[STEAL_MAX_TASKS];
+    private final long[] stealDeadlines = new long[STEAL_MAX_TASKS];
+    private final int[] stealCapabilities = new int[STEAL_MAX_TASKS];
+    private final Map<String, Long> stealCooldownUntil = new HashMap<>();
+    private String stealPendingFrom;  // victime de la demande en vol, null si aucune
+    private long stealRequestedAt;
+    private long lastStealExchange;   // dernier vol réussi ou dernière cession
+    private int tasksStolen;
+    private int tasksGivenAway;
+    private int stealRequestsSent;
+    private int stealRequestsDenied;
+
     /**
-     * Méthode simple pour tester la distribution
-     * - Chaque machine connaît ses voisins
-     * - Communication directe machine à machine
+     * Transfert ordonné par le coordinateur (plan TRANSFER_TASKS) : pour chaque mouvement, la source
+     * retire la queue de sa file, l'envoie en un seul lot à la cible et garde ce lot jusqu'à son
+     * accusé (TASK_BATCH_REPLY) avant de passer au mouvement suivant.
+     * Les tâches refusées reviennent dans la file ; sans accusé, tout le lot est repris et
+     * revendiqué à nouveau (le registre du site tranche si la cible l'avait reçu).
      */
+    private static final int TRANSFER_MAX_TASKS = 16;
+    private static final int TRANSFER_MAX_MOVES = 8; // mouvements d'un plan pour cette machine
+    private static final long TRANSFER_ACK_TIMEOUT_MS = 10000;
+
+    private final TransferTasksMessage transferTasks = new TransferTasksMessage();
+    private final TaskBatchMessage transferBatch = new TaskBatchMessage(); // lot en vol, jusqu'à l'accusé
+    private final String[] transferTaskIds = new String[TRANSFER_MAX_TASKS];
+    private final int[] transferPriorities = new int[TRANSFER_MAX_TASKS];
+    private final long[] transferCreatedAt = new long[TRANSFER_MAX_TASKS];
+    private final long[] transferDeadlines = new long[TRANSFER_MAX_TASKS];
+    private final int[] transferCapabilities = new int[TRANSFER_MAX_TASKS];
+    private final Set<String> reclaimedTasks = new HashSet<>(); // reprises sans accusé, en attente du registre
+    private final String[] moveTargets = new String[TRANSFER_MAX_MOVES];
+    private final int[] moveCounts = new int[TRANSFER_MAX_MOVES];
+    private int moveCount;
+    private int nextMove;
+    private String transferPendingTo; // cible du lot en vol, null si aucun
+    private long transferSentAt;
+    private int transferSequence;
+    private int tasksTransferredOut;
+    private int tasksTransferredIn;
+    private int transfersTimedOut;
 
-    private void establishPeerToPeerNetwork() {
+    /**
+     * Heartbeat agrégé :
+     * - la machine ne parle qu'à son coordinateur de site ;
+     * - un état complet (MACHINE_STATE) n'est envoyé qu'à l'arrivée ou quand l'état change ;
+     * - le coordinateur republie un digest delta du site aux machines et au moniteur.
+     */
+    private void startHeartbeat() {
         addBehaviour(new TickerBehaviour(this, 3000) {
             protected void onTick() {
-                String loadStr = String.format(Locale.US, "%.1f", load);
-
-                for (String neighbor : neighborMachines) {
-                    ACLMessage ping = new ACLMessage(ACLMessage.INFORM);
-                    ping.addReceiver(new AID(neighbor, AID.ISLOCALNAME));
-                    ping.setContent("PING:" + machineId +
-                            ":LOAD:" + loadStr +
-                            ":QUEUE:" + localQueue.size());
-                    send(ping);
-                }
-
-                ACLMessage monitorMsg = new ACLMessage(ACLMessage.INFORM);
-                monitorMsg.addReceiver(new AID("SystemMonitor", AID.ISLOCALNAME));
-                monitorMsg.setContent("PING:" + machineId +
-                        ":LOAD:" + loadStr +
-                        ":QUEUE:" + localQueue.size() +
-                        ":SITE:" + site);
-                send(monitorMsg);
+                reportStateIfChanged();
             }
         });
-        //  CHANGE : Ne pas bloquer, traiter TOUS les messages
-        addBehaviour(new CyclicBehaviour(this) {
-            public void action() {
-                ACLMessage msg = receive();
-                if (msg != null) {
-                    if (msg.getContent() != null && msg.getContent().startsWith("PING:")) {
-                        // Répondre au PING
-                        ACLMessage reply = msg.createReply();
-                        reply.setPerformative(ACLMessage.INFORM);
-                        String loadStrForReply = String.format(Locale.US, "%.1f", load);
-                        reply.setContent("PONG:" + machineId +
-                                ":LOAD:" + loadStrForReply +
-                                ":STATUS:" + operational +
-                                ":CAPACITY:" + (capacity - localQueue.size()) +
-                                ":SITE:" + site);
-                        send(reply);
-                    } else {
-                        //  AJOUTE : Traiter les autres messages ici aussi
-                        handleMessage(msg);
-                    }
-                } else {
-                    block();
-                }
+    }
+
+    // Contrôle de flux : crédits annoncés au générateur de tâches
+    private static final int CREDIT_REFRESH_TICKS = 5; // ré-annonce même sans changement
+    private final AID taskGeneratorAID = new AID("TaskGenerator", AID.ISLOCALNAME);
+    private final CreditMessage creditMessage = new CreditMessage();
+    private int advertisedCredits = -1;
+    private int ticksSinceAdvertisement;
+
+    private void startCreditAdvertisement() {
+        addBehaviour(new TickerBehaviour(this, 1000) {
+            protected void onTick() {
+                advertiseCredits(false);
             }
         });
     }
 
+    /**
+     * Places libres = créneaux libres + places dans la file :
+     * exactement ce que evaluateTaskAcceptance accepterait sans passe-droit de priorité.
+     * Sous limitation d'admission, bornées par les jetons de la classe haute :
+     * le générateur ralentit au lieu d'essuyer des refus.
+     */
+    private int availableSlots() {
+        if (!operational) {
+            return 0;
+        }
+        int free = Math.max(0, processingSlots + capacity - busySlots - localQueue.size());
+        return Math.min(free, admission.available(10, System.currentTimeMillis()));
+    }
+
+    private void advertiseCredits(boolean force) {
+        int credits = availableSlots();
+        ticksSinceAdvertisement++;
+        if (!force && credits == advertisedCredits && ticksSinceAdvertisement < CREDIT_REFRESH_TICKS) {
+            return;
+        }
+
+        ACLMessage advert = new ACLMessage(ACLMessage.INFORM);
+        advert.addReceiver(taskGeneratorAID);
+        codec.write(advert, creditMessage.set(machineId, credits).withCapabilities(capabilityMask));
+        send(advert);
+
+        advertisedCredits = credits;
+        ticksSinceAdvertisement = 0;
+    }
+
+    private void reportStateIfChanged() {
+        int loadTenths = (int) Math.round(load * 10);
+        int queueSize = localQueue.size();
+
+        if (stateReported && loadTenths == reportedLoadTenths &&
+                queueSize == reportedQueueSize && operational == reportedOperational) {
+            return; // Rien de nouveau : pas de trafic
+        }
+
+        ACLMessage state = new ACLMessage(ACLMessage.INFORM);
+        state.addReceiver(siteCoordinatorAID);
+        codec.write(state, withSlotStatus(heartbeat.set(MessageType.MACHINE_STATE, machineId, site, load,
+                queueSize, capacity - queueSize, operational)).withSequence(++stateSequence));
+        send(state);
+
+        stateReported = true;
+        reportedLoadTenths = loadTenths;
+        reportedQueueSize = queueSize;
+        reportedOperational = operational;
+    }
+
+    // Répondre au PING avec notre état courant
+    private void replyToPing(ACLMessage msg) {
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(ACLMessage.INFORM);
+        codec.write(reply, withSlotStatus(heartbeat.set(MessageType.PONG, machineId, site, load,
+                localQueue.size(), capacity - localQueue.size(), operational)));
+        send(reply);
+    }
+
+    // Utilisation et débit de chaque créneau depuis le démarrage
+    private HeartbeatMessage withSlotStatus(HeartbeatMessage message) {
+        long now = System.currentTimeMillis();
+        long elapsed = Math.max(1, now - startedAt);
+        for (int i = 0; i < processingSlots; i++) {
+            long busy = slotBusyMs[i] + (slotTasks[i] != null ? now - slotStartedAt[i] : 0);
+            slotUtilization[i] = (int) Math.min(1000, busy * 1000 / elapsed);
+        }
+        return message.withSlots(busySlots, processingSlots, slotUtilization, slotCompleted);
+    }
+
     protected void setup() {
         Object[] args = getArguments();
         if (args != null && args.length >= 6) {
@@ -102,10 +278,28 @@ public class AutonomousMachineAgent extends Agent {
             cycleTime = (Integer) args[4];
             energyConsumption = (Double) args[5];
         }
+        processingSlots = args != null && args.length >= 7 ? (Integer) args[6] : capacity;
+        int siteShards = args != null && args.length >= 8 ? (Integer) args[7] : 1;
+        capabilityMask = Capability.maskOf(machineType);
+        // Débit nominal : un créneau termine une tâche par cycle (cycleTime en secondes)
+        admission = new AdmissionController(processingSlots / (double) Math.max(1, cycleTime), processingSlots);
 
         operational = true;
         load = 0.0;
-        localQueue = new LinkedList<>();
+        localQueue = new TaskQueue(AGING_STEP_MS);
+        startedAt = System.currentTimeMillis();
+        completionWheel = new TimerWheel<>(COMPLETION_TICK_MS, COMPLETION_WHEEL_SLOTS, startedAt);
+        slotTasks = new String[processingSlots];
+        slotStartedAt = new long[processingSlots];
+        slotCreatedAt = new long[processingSlots];
+        slotQueueWait = new long[processingSlots];
+        slotPriority = new int[processingSlots];
+        slotDeadline = new long[processingSlots];
+        slotFreeAt = new long[processingSlots];
+        slotTimeouts = newTimeouts(processingSlots);
+        slotBusyMs = new long[processingSlots];
+        slotCompleted = new int[processingSlots];
+        slotUtilization = new int[processingSlots];
         resourceAllocation = new HashMap<>();
         neighborMachines = new ArrayList<>();
         tasksCompleted = 0;
@@ -117,17 +311,25 @@ public class AutonomousMachineAgent extends Agent {
         neighborMachines.add("M4");
         neighborMachines.remove(machineId);
 
-        // Trouver le coordinateur du site
-        siteCoordinatorAID = new AID("SiteCoordinator_" + site, AID.ISLOCALNAME);
-
-        // Trouver le coordinateur du site
-        siteCoordinatorAID = new AID("SiteCoordinator_" + site, AID.ISLOCALNAME);
+        // Trouver le coordinateur du site (grand site : le shard désigné par l'anneau de hachage)
+        if (siteShards > 1) {
+            siteRing = new ConsistentHashRing(siteShards);
+            siteShardAIDs = new AID[siteShards];
+            for (int i = 0; i < siteShards; i++) {
+                siteShardAIDs[i] = new AID(SiteAggregatorAgent.coordinatorName(site, i), AID.ISLOCALNAME);
+            }
+            siteShard = siteRing.shardOf(machineId);
+        }
+        siteCoordinatorAID = new AID(SiteAggregatorAgent.coordinatorName(site, siteShard), AID.ISLOCALNAME);
+        siteView = new SiteDigestView(SiteAggregatorAgent.shardLabel(site, siteShard));
 
         Logger.log("🤖 Machine Autonome démarrée: " + machineId +
-                " (Site: " + site + ", Capacité: " + capacity + ")");
+                " (Site: " + site + ", Capacité: " + capacity +
+                ", Créneaux: " + processingSlots + ")");
 
-        // S'enregistrer auprès du coordinateur de site
+        // S'enregistrer auprès du coordinateur de site (+ état complet initial)
         registerWithCoordinator();
+        reportStateIfChanged();
 
         // Comportement pour recevoir les demandes et négociations
         addBehaviour(new CyclicBehaviour(this) {
@@ -162,9 +364,17 @@ public class AutonomousMachineAgent extends Agent {
             }
         });
 
-        establishPeerToPeerNetwork();
+        // Fins de traitement, traitées par paquets à chaque tick
+        addBehaviour(new TickerBehaviour(this, COMPLETION_TICK_MS) {
+            protected void onTick() {
+                completionWheel.advance(System.currentTimeMillis(), slot -> releaseSlot(slot));
+            }
+        });
 
-        Logger.log("🔗 " + machineId + " - Réseau P2P activé");
+        startHeartbeat();
+        startCreditAdvertisement();
+
+        Logger.log("🔗 " + machineId + " - Heartbeat agrégé activé (via coordinateur " + site + ")");
 
     }
 
@@ -218,6 +428,10 @@ public class AutonomousMachineAgent extends Agent {
             case ACLMessage.CFP:
                 handleCallForProposal(msg);
                 break;
+            case ACLMessage.AGREE:
+            case ACLMessage.REFUSE:
+                handleTransferAck(msg); // accusé d'un lot transféré
+                break;
             default:
                 Logger.log("📨 " + machineId + " - Message de " + sender + ": " + content);
         }
@@ -227,24 +441,23 @@ public class AutonomousMachineAgent extends Agent {
      * Prise de décision autonome
      */
     private void makeAutonomousDecision() {
+        checkTransferTimeout(System.currentTimeMillis());
         if (!operational) {
             attemptSelfRecovery();
             return;
         }
 
-        // Décision 1: Gestion de la file d'attente locale
-        if (!localQueue.isEmpty() && load < 80) {
-            processNextTask();
-        }
+        // Décision 1: Gestion de la file d'attente locale (créneaux libérés normalement remplis aussitôt)
+        fillSlots();
 
-        // Décision 2: Redistribution si surcharge
-        if (load > 85) {
+        // Décision 2: Redistribution si surcharge (tous les créneaux pris et des tâches attendent)
+        if (load > 85 && !localQueue.isEmpty()) {
             requestLoadBalancing();
         }
 
-        // Décision 3: Offrir de l'aide si sous-utilisé
-        if (load < 30 && operational) {
-            offerHelpToNeighbors();
+        // Décision 3: Voler du travail à une voisine si des créneaux restent libres
+        if (busySlots < processingSlots && localQueue.isEmpty()) {
+            stealWorkFromNeighbor();
         }
 
         // Décision 4: Ajustement des paramètres
@@ -255,49 +468,180 @@ public class AutonomousMachineAgent extends Agent {
 
 
     private void handleTaskRequest(ACLMessage msg) {
-        System.out.println("🎯 " + machineId + " reçoit demande de tâche: " + msg.getContent());
+        MessageType type = MessageCodec.peekType(msg);
+        if (type == MessageType.TASK_BATCH) {
+            handleTaskBatch(msg);
+            return;
+        }
+        if (type == MessageType.STEAL_REQUEST) {
+            handleStealRequest(msg);
+            return;
+        }
+        if (type == MessageType.TRANSFER_TASKS) {
+            handleTransferOrder(msg);
+            return;
+        }
+        if (type != MessageType.TASK) {
+            Logger.log("📨 " + machineId + " - Requête non reconnue de " +
+                    msg.getSender().getLocalName() + ": " + msg.getContent());
+            return;
+        }
 
-        String[] parts = msg.getContent().split(":");
-        if (parts.length >= 3) {
-            String taskId = parts[1];
-            int priority = Integer.parseInt(parts[2]);
+        try {
+            codec.read(msg, taskMessage);
+        } catch (ProtocolException e) {
+            Logger.warn(machineId + " - Trame TASK invalide: " + e.getMessage());
+            return;
+        }
 
-            // Décision autonome: accepter ou refuser
-            boolean canAccept = evaluateTaskAcceptance(taskId, priority);
+        String taskId = taskMessage.getTaskId();
+        int priority = taskMessage.getPriority();
+        long deadline = queueDeadline(taskMessage.getDeadline());
+        long now = System.currentTimeMillis();
 
-            ACLMessage reply = msg.createReply();
-            if (canAccept) {
-                localQueue.add(taskId);
-                reply.setPerformative(ACLMessage.AGREE);
-                reply.setContent("ACCEPTED:" + taskId + ":ETA:" + estimateCompletionTime());
-                Logger.log("✅ " + machineId + " accepte tâche " + taskId);
+        // Déjà dans la file (tâche réémise) : refusée avant de consommer un jeton d'admission,
+        // pour que l'émetteur ne compte pas une seconde copie
+        boolean queued = localQueue.contains(taskId);
+        if (queued) {
+            Logger.log("♻️ " + machineId + " - " + taskId + " déjà en file");
+        }
 
-                //  AJOUTE CETTE LIGNE - Traiter immédiatement
-                processNextTask();
+        // Décision autonome: accepter ou refuser (capacité exigée d'abord)
+        boolean canAccept = !queued && canRun(taskMessage.getCapability()) && evaluateTaskAcceptance(taskId, priority);
+        int refusal = TaskReplyMessage.REASON_CAPACITY;
+        long finish = predictFinish(priority, deadline, now, 0);
+        if (canAccept && taskMessage.isFirm() && finish > deadline) {
+            // Le générateur peut l'envoyer tout de suite à une machine qui la tiendra
+            canAccept = false;
+            refusal = TaskReplyMessage.REASON_DEADLINE;
+            deadlineRefusals++;
+            Logger.log("⏰ " + machineId + " - " + taskId + " finirait " + (finish - deadline) +
+                    " ms après son échéance");
+        }
+        if (canAccept && !admission.tryAcquire(priority, now)) {
+            canAccept = false;
+            Logger.log("🚦 " + machineId + " - " + taskId + " refusée par le contrôle d'admission");
+        }
 
-            } else {
-                reply.setPerformative(ACLMessage.REFUSE);
-                reply.setContent("REFUSED:" + taskId + ":LOAD:" + load);
-                Logger.log("❌ " + machineId + " refuse tâche " + taskId + " (charge: " + load + "%)");
+        ACLMessage reply = msg.createReply();
+        if (canAccept) {
+            if (localQueue.offer(taskId, priority, deadline, now, taskMessage.getCreatedAt(),
+                    taskMessage.getCapability())) {
+                claimTask(taskId, null);
             }
-            send(reply);
+            reply.setPerformative(ACLMessage.AGREE);
+            int eta = (int) ((finish - now + 999) / 1000);
+            Logger.log("✅ " + machineId + " accepte tâche " + taskId);
+
+            // Traiter immédiatement si un créneau est libre
+            fillSlots();
+            codec.write(reply, taskReply.accepted(taskId, eta).withCredits(availableSlots()));
+
+        } else {
+            reply.setPerformative(ACLMessage.REFUSE);
+            codec.write(reply, taskReply.refused(taskId, load).withReason(refusal).withCredits(availableSlots()));
+            Logger.log("❌ " + machineId + " refuse tâche " + taskId + " (charge: " + load + "%)");
         }
+        send(reply);
+        advertisedCredits = availableSlots(); // crédits déjà transmis dans la réponse
     }
 
     private boolean evaluateTaskAcceptance(String taskId, int priority) {
         System.out.println("🤔 " + machineId + " évalue tâche " + taskId +
-                " (load=" + load + ", queue=" + localQueue.size() +
+                " (créneaux=" + busySlots + "/" + processingSlots + ", queue=" + localQueue.size() +
                 ", capacity=" + capacity + ", priority=" + priority + ")");
 
-        // Logique de décision autonome
+        return admits(priority, busySlots + localQueue.size());
+      }
+
+    // Capacité exigée par une tâche (code binaire), toujours vraie sans exigence
+    private boolean canRun(int capabilityCode) {
+        Capability capability = Capability.fromCode(capabilityCode);
+        return capability == null || (capabilityMask & capability.bit()) != 0;
+    }
+
+    /**
+     * Logique de décision autonome (aussi utilisée pour simuler un lot).
+     * @param backlog tâches en cours + en file
+     */
+    private boolean admits(int priority, int backlog) {
         if (!operational) return false;
-        if (load > 90) return false;  // ← OK, charge = 0
-        if (localQueue.size() >= capacity) {  // ← capacity = 10 pour M1
+        if (backlog >= processingSlots + capacity) {  // créneaux pris et file pleine
             // Accepter seulement si priorité haute
             return priority > 7;
         }
         return true;
-      }
+    }
+
+    /**
+     * Lot de tâches : une seule décision par tâche (ou pour tout le lot)
+     * et une seule réponse.
+     */
+    private void handleTaskBatch(ACLMessage msg) {
+        try {
+            codec.read(msg, taskBatch);
+        } catch (ProtocolException e) {
+            Logger.warn(machineId + " - Trame TASK_BATCH invalide: " + e.getMessage());
+            return;
+        }
+        int count = taskBatch.size();
+        String transferFrom = taskBatch.getTransferFrom(); // tâches déjà admises sur le site : pas de jetons
+
+        // Tout ou rien : simuler l'admission du lot complet (jetons compris)
+        long now = System.currentTimeMillis();
+        boolean admitAll = true;
+        if (taskBatch.isAllOrNothing()) {
+            int backlog = busySlots + localQueue.size();
+            Arrays.fill(batchNeeded, 0);
+            for (int i = 0; i < count && admitAll; i++) {
+                admitAll = canRun(taskBatch.getCapability(i)) && admits(taskBatch.getPriority(i), backlog + i)
+                        && (!taskBatch.isFirm(i) || meetsDeadline(taskBatch.getPriority(i),
+                                queueDeadline(taskBatch.getDeadline(i)), now, i)); // au pire derrière les précédentes
+                batchNeeded[AdmissionController.classOf(taskBatch.getPriority(i))]++;
+            }
+            admitAll = admitAll && admission.canAdmit(batchNeeded, now);
+        }
+
+        taskBatchReply.begin(taskBatch.getBatchId(), load);
+        for (int i = 0; i < count; i++) {
+            String taskId = taskBatch.getTaskId(i);
+            int priority = taskBatch.getPriority(i);
+            long deadline = queueDeadline(taskBatch.getDeadline(i));
+            int refusal = TaskReplyMessage.REASON_CAPACITY;
+            boolean accepted;
+            if (taskBatch.isAllOrNothing()) {
+                accepted = admitAll && admission.tryAcquire(priority, now);
+            } else {
+                accepted = canRun(taskBatch.getCapability(i)) && admits(priority, busySlots + localQueue.size());
+                if (accepted && taskBatch.isFirm(i) && !meetsDeadline(priority, deadline, now, 0)) {
+                    accepted = false;
+                    refusal = TaskReplyMessage.REASON_DEADLINE;
+                    deadlineRefusals++;
+                }
+                accepted = accepted && (transferFrom != null || admission.tryAcquire(priority, now));
+            }
+            // Déjà dans la file (lot réémis) : refusée, pour que l'émetteur ne compte pas une seconde copie
+            accepted = accepted && localQueue.offer(taskId, priority, deadline, now,
+                    taskBatch.getCreatedAt(i), taskBatch.getCapability(i));
+            if (accepted) {
+                claimTask(taskId, transferFrom);
+                if (transferFrom != null) tasksTransferredIn++;
+                taskBatchReply.withEta(estimateCompletionTime());
+                fillSlots();
+            }
+            taskBatchReply.add(taskId, accepted, refusal);
+        }
+
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(taskBatchReply.getAcceptedCount() > 0 ? ACLMessage.AGREE : ACLMessage.REFUSE);
+        codec.write(reply, taskBatchReply.withCredits(availableSlots()));
+        send(reply);
+        advertisedCredits = availableSlots(); // crédits déjà transmis dans la réponse
+
+        Logger.log("📦 " + machineId + " lot " + taskBatch.getBatchId() + ": " +
+                taskBatchReply.getAcceptedCount() + "/" + count + " tâches acceptées" +
+                " (charge: " + String.format("%.1f", load) + "%)");
+    }
 
     /**
      * Négociation avec d'autres machines
@@ -320,6 +664,12 @@ public class AutonomousMachineAgent extends Agent {
                 send(proposal);
                 Logger.log("💡 " + machineId + " propose pour " + taskId +
                         " (score: " + String.format("%.2f", myScore) + ")");
+            } else if (parts[0].equals("CFP")) {
+                // Le gestionnaire peut clore la fenêtre sans attendre l'échéance
+                ACLMessage decline = msg.createReply();
+                decline.setPerformative(ACLMessage.REFUSE);
+                decline.setContent("NO_BID:" + taskId);
+                send(decline);
             }
         }
     }
@@ -358,8 +708,56 @@ public class AutonomousMachineAgent extends Agent {
     }
 
     private void handleProposalAcceptance(ACLMessage msg) {
-        Logger.log("✅ " + machineId + " - Proposition acceptée: " + msg.getContent());
-        // Continuer avec la tâche négociée
+        String content = msg.getContent();
+        if (content == null || !content.startsWith("AWARD:")) {
+            Logger.log("✅ " + machineId + " - Proposition acceptée: " + content);
+            return;
+        }
+
+        // Contract Net gagné : "AWARD:<tâche>:PRIORITY:<p>:CAPABILITY:<c>:CREATED:<ms>:DEADLINE:<ms>"
+        String[] parts = content.split(":");
+        String taskId;
+        int priority;
+        String capability;
+        long createdAt;
+        long wireDeadline;
+        try {
+            taskId = parts[1];
+            priority = parts.length >= 4 ? Integer.parseInt(parts[3]) : 5;
+            capability = parts.length >= 6 ? parts[5] : "null";
+            createdAt = parts.length >= 8 ? Long.parseLong(parts[7]) : 0;
+            wireDeadline = parts.length >= 10 ? Long.parseLong(parts[9]) : 0;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            Logger.warn(machineId + " - AWARD invalide: " + content);
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        if (localQueue.contains(taskId)) {
+            // Attribution réémise : la tâche est déjà ici, ne pas la réclamer une seconde fois
+            Logger.log("♻️ " + machineId + " - " + taskId + " déjà en file");
+            return;
+        }
+
+        if (!admits(priority, busySlots + localQueue.size())
+                || !meetsDeadline(priority, queueDeadline(wireDeadline), now, 0)
+                || !admission.tryAcquire(priority, now)) {
+            // L'état a changé depuis l'offre (ou le site limite l'admission) : le gestionnaire réattribue
+            ACLMessage failure = msg.createReply();
+            failure.setPerformative(ACLMessage.FAILURE);
+            failure.setContent("AWARD_FAILED:" + taskId + ":CAPABILITY:" + capability + ":CREATED:" + createdAt +
+                    ":DEADLINE:" + wireDeadline);
+            send(failure);
+            Logger.log("⚠️ " + machineId + " ne peut plus prendre " + taskId);
+            return;
+        }
+        if (!localQueue.offer(taskId, priority, queueDeadline(wireDeadline), now, createdAt,
+                Capability.codeOf(Capability.fromName(capability)))) {
+            return;
+        }
+        claimTask(taskId, null);
+        Logger.log("🏆 " + machineId + " remporte " + taskId + " (priorité: " + priority + ")");
+        fillSlots();
     }
 
     private void handleProposalRejection(ACLMessage msg) {
@@ -368,6 +766,30 @@ public class AutonomousMachineAgent extends Agent {
     }
 
     private void handleInformation(ACLMessage msg) {
+        MessageType type = MessageCodec.peekType(msg);
+        if (type == MessageType.PING) {
+            replyToPing(msg);
+            return;
+        } else if (type == MessageType.SITE_DIGEST) {
+            try {
+                siteView.apply(codec.read(msg, siteDigest));
+            } catch (ProtocolException e) {
+                Logger.warn(machineId + " - Digest invalide: " + e.getMessage());
+            }
+            return;
+        } else if (type == MessageType.STEAL_GRANT) {
+            handleStealGrant(msg);
+            return;
+        } else if (type == MessageType.ADMISSION_CONTROL) {
+            handleAdmissionControl(msg);
+            return;
+        } else if (type == MessageType.TASK_CLAIM_REJECTED) {
+            handleClaimRejected(msg);
+            return;
+        } else if (type != null) {
+            return; // PONG et autres trames d'état : rien à faire ici
+        }
+
         String content = msg.getContent();
 
         if (content.startsWith("NEIGHBOR:")) {
@@ -383,36 +805,149 @@ public class AutonomousMachineAgent extends Agent {
         }
     }
 
+    // Revendication d'une tâche admise ; le coordinateur ne répond qu'en cas de doublon
+    private void claimTask(String taskId, String from) {
+        ACLMessage claim = new ACLMessage(ACLMessage.INFORM);
+        claim.addReceiver(ownerCoordinatorOf(taskId));
+        codec.write(claim, taskClaim.claim(taskId, machineId, from));
+        send(claim);
+    }
+
+    // Shard qui tient la propriété de la tâche pour tout le site (le coordinateur du site s'il n'est pas découpé)
+    private AID ownerCoordinatorOf(String taskId) {
+        return siteRing != null ? siteShardAIDs[siteRing.shardOf(taskId)] : siteCoordinatorAID;
+    }
+
+    // Doublon : la copie locale est retirée de la file, ou interrompue si elle a déjà démarré
+    private void handleClaimRejected(ACLMessage msg) {
+        try {
+            codec.read(msg, taskClaim);
+        } catch (ProtocolException e) {
+            Logger.warn(machineId + " - Trame TASK_CLAIM_REJECTED invalide: " + e.getMessage());
+            return;
+        }
+        String taskId = taskClaim.getTaskId();
+        if (reclaimedTasks.remove(taskId) && machineId.equals(taskClaim.getMachineId())) {
+            return; // reprise après un transfert sans accusé : la cible ne l'a jamais eue
+        }
+        if (localQueue.remove(taskId)) {
+            duplicatesDropped++;
+            Logger.log("🪪 " + machineId + " - doublon " + taskId + " retiré de la file (détenue par " +
+                    taskClaim.getMachineId() + ")");
+            advertiseCredits(true);
+            return;
+        }
+        for (int slot = 0; slot < processingSlots; slot++) {
+            if (taskId.equals(slotTasks[slot])) {
+                completionWheel.cancel(slotTimeouts[slot]);
+                slotBusyMs[slot] += System.currentTimeMillis() - slotStartedAt[slot];
+                slotTasks[slot] = null;
+                busySlots--;
+                load = 100.0 * busySlots / processingSlots;
+                duplicatesAborted++;
+                Logger.log("🪪 " + machineId + " - doublon " + taskId + " interrompu (détenue par " +
+                        taskClaim.getMachineId() + ")");
+                fillSlots();
+                advertiseCredits(true);
+                return;
+            }
+        }
+        duplicatesTooLate++;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static TimerWheel.Timeout<Integer>[] newTimeouts(int count) {
+        return (TimerWheel.Timeout<Integer>[]) new TimerWheel.Timeout[count];
+    }
+
+    // Débits d'admission diffusés par le coordinateur (directives THROTTLE / REDUCE_LOAD du superviseur)
+    private void handleAdmissionControl(ACLMessage msg) {
+        try {
+            codec.read(msg, admissionControl);
+        } catch (ProtocolException e) {
+            Logger.warn(machineId + " - Trame ADMISSION_CONTROL invalide: " + e.getMessage());
+            return;
+        }
+        if (admission.update(admissionControl, System.currentTimeMillis())) {
+            Logger.log("🚦 " + machineId + " - Admission " + (admission.isLimited() ? "limitée: " : "libre: ") +
+                    admissionControl);
+            advertiseCredits(true); // les crédits suivent les jetons
+        }
+    }
+
     /**
-     * Traitement des tâches
+     * Traitement des tâches : chaque créneau libre prend la tâche la plus prioritaire de la file
      */
-    private void processNextTask() {
-        if (!localQueue.isEmpty()) {
-            String taskId = localQueue.poll();
-            load = Math.min(100, load + (100.0 / capacity));
+    private void fillSlots() {
+        if (!operational) {
+            return;
+        }
+        for (int slot = 0; slot < processingSlots && !localQueue.isEmpty(); slot++) {
+            if (slotTasks[slot] != null) continue;
+
+            long now = System.currentTimeMillis();
+            String taskId = localQueue.poll(now);
+            slotTasks[slot] = taskId;
+            slotStartedAt[slot] = now;
+            slotCreatedAt[slot] = localQueue.getLastCreatedAt();
+            slotQueueWait[slot] = localQueue.getLastWait();
+            slotPriority[slot] = localQueue.getLastPriority();
+            slotDeadline[slot] = localQueue.getLastDeadline();
+            busySlots++;
+            load = 100.0 * busySlots / processingSlots;
 
-            System.out.println("⚡ " + machineId + " charge AVANT: " + load +
-                    ", APRÈS: " + load + " (incrément: " + (100.0/capacity) + ")");
             Logger.log("⚙️ " + machineId + " traite " + taskId +
-                    " (charge: " + String.format("%.1f", load) + "%)");
-            // Simuler le traitement
-            addBehaviour(new jade.core.behaviours.WakerBehaviour(this, (int)(cycleTime * 1000)) {
-                protected void onWake() {
-                    completeTask(taskId);
-                }
-            });
+                    " (créneau " + (slot + 1) + "/" + processingSlots +
+                    ", priorité: " + localQueue.getLastPriority() +
+                    ", attente: " + localQueue.getLastWait() + " ms" +
+                    ", charge: " + String.format("%.1f", load) + "%)");
+            // Simuler le traitement (fin signalée par la roue temporelle)
+            slotTimeouts[slot] = completionWheel.schedule(slot, cycleTime * 1000L, now);
         }
     }
-    private void completeTask(String taskId) {
-        load = Math.max(0, load - (100.0 / capacity));
+
+    // Fin de traitement : le créneau est libéré et reprend aussitôt la file
+    private void releaseSlot(int slot) {
+        String taskId = slotTasks[slot];
+        long now = System.currentTimeMillis();
+        long serviceMs = now - slotStartedAt[slot];
+        slotBusyMs[slot] += serviceMs;
+        slotCompleted[slot]++;
+        slotTasks[slot] = null;
+        busySlots--;
+        load = 100.0 * busySlots / processingSlots;
+
+        long deadline = slotDeadline[slot];
+        if (deadline != TaskQueue.NO_DEADLINE) {
+            deadlineTasks++;
+            long lateness = now - deadline;
+            if (lateness > 0) {
+                deadlineMisses++;
+                totalLatenessMs += lateness;
+                maxLatenessMs = Math.max(maxLatenessMs, lateness);
+                Logger.log("⌛ " + machineId + " - " + taskId + " terminée " + lateness + " ms après son échéance");
+            }
+        }
+        completeTask(taskId, slotPriority[slot], slotCreatedAt[slot], slotQueueWait[slot], serviceMs,
+                wireDeadline(deadline));
+        fillSlots();
+    }
+
+    private void completeTask(String taskId, int priority, long createdAt, long queueWaitMs, long serviceMs,
+                              long deadline) {
         tasksCompleted++;
 
         Logger.log("✨ " + machineId + " termine " + taskId);
+        reclaimedTasks.remove(taskId);
 
-        // Notifier le coordinateur
+        // Notifier le coordinateur, avec les durées pour ses histogrammes de latence
         ACLMessage notification = new ACLMessage(ACLMessage.INFORM);
         notification.addReceiver(siteCoordinatorAID);
-        notification.setContent("TASK_COMPLETED:" + taskId + ":" + machineId);
+        if (siteRing != null && siteRing.shardOf(taskId) != siteShard) {
+            notification.addReceiver(ownerCoordinatorOf(taskId)); // libère la propriété plus tôt
+        }
+        codec.write(notification, new TaskCompletedMessage().set(taskId, machineId)
+                .withTimings(priority, createdAt, queueWaitMs, serviceMs).withDeadline(deadline));
         send(notification);
     }
 
@@ -426,19 +961,274 @@ public class AutonomousMachineAgent extends Agent {
         // Demander au coordinateur de site
         ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
         request.addReceiver(siteCoordinatorAID);
-        request.setContent("LOAD_BALANCING:" + machineId + ":" + load + ":" + localQueue.size());
+        codec.write(request, new LoadBalancingMessage().set(machineId, load, localQueue.size()));
         send(request);
     }
 
-    private void offerHelpToNeighbors() {
-        // Proposer de l'aide aux machines voisines
-        for (String neighbor : neighborMachines) {
-            ACLMessage offer = new ACLMessage(ACLMessage.PROPOSE);
-            offer.addReceiver(new AID(neighbor, AID.ISLOCALNAME));
-            offer.setContent("HELP_OFFER:" + machineId + ":CAPACITY:" +
-                    (capacity - localQueue.size()));
-            send(offer);
+    /**
+     * Vol de travail : demander des tâches à la voisine du site dont la file est la plus longue
+     */
+    private void stealWorkFromNeighbor() {
+        long now = System.currentTimeMillis();
+        if (stealPendingFrom != null) {
+            if (now - stealRequestedAt < STEAL_REPLY_TIMEOUT_MS) {
+                return; // une seule demande en vol
+            }
+            stealCooldownUntil.put(stealPendingFrom, now + STEAL_VICTIM_COOLDOWN_MS);
+            stealPendingFrom = null;
+        }
+        if (now - lastStealExchange < STEAL_SETTLE_MS) {
+            return;
+        }
+
+        String victim = null;
+        int longestQueue = STEAL_MIN_BACKLOG - 1;
+        for (int slot = 0; slot < siteView.size(); slot++) {
+            String candidate = siteView.getMachineId(slot);
+            if (candidate == null || candidate.equals(machineId) || !siteView.isOperational(slot)) continue;
+            Long until = stealCooldownUntil.get(candidate);
+            if (until != null && now < until) continue;
+            if (siteView.getQueueSize(slot) > longestQueue) {
+                longestQueue = siteView.getQueueSize(slot);
+                victim = candidate;
+            }
+        }
+        if (victim == null) {
+            return;
+        }
+
+        int wanted = Math.min(STEAL_MAX_TASKS, processingSlots - busySlots);
+        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+        request.addReceiver(new AID(victim, AID.ISLOCALNAME));
+        codec.write(request, stealRequest.set(machineId, machineType, wanted));
+        send(request);
+
+        stealPendingFrom = victim;
+        stealRequestedAt = now;
+        stealRequestsSent++;
+        Logger.log("🦝 " + machineId + " demande " + wanted + " tâche(s) à " + victim +
+                " (file: " + longestQueue + ")");
+    }
+
+    // Côté victime : céder la queue de la file (moitié au plus) en une seule réponse
+    private void handleStealRequest(ACLMessage msg) {
+        try {
+            codec.read(msg, stealRequest);
+        } catch (ProtocolException e) {
+            Logger.warn(machineId + " - Trame STEAL_REQUEST invalide: " + e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // Le voleur doit couvrir toutes les capacités de la victime (ses tâches en exigent une)
+        long thiefMask = Capability.maskOf(stealRequest.getMachineType());
+        boolean typeOk = capabilityMask != 0 && (thiefMask & capabilityMask) == capabilityMask;
+
+        if (!typeOk) {
+            stealGrant.begin(machineId, StealGrantMessage.INCOMPATIBLE);
+        } else if (!operational || now - lastStealExchange < STEAL_SETTLE_MS
+                || localQueue.size() < STEAL_MIN_BACKLOG) {
+            stealGrant.begin(machineId, StealGrantMessage.NOTHING_TO_GIVE);
+        } else {
+            // Garder au moins la moitié de la file : le voleur ne doit pas devenir la nouvelle victime
+            int give = Math.min(Math.min(stealRequest.getWanted(), STEAL_MAX_TASKS), localQueue.size() / 2);
+            int removed = localQueue.removeTail(give, stealTaskIds, stealPriorities, stealCreatedAt, stealDeadlines,
+                    stealCapabilities);
+            stealGrant.begin(machineId, removed > 0 ? StealGrantMessage.GRANTED : StealGrantMessage.NOTHING_TO_GIVE);
+            for (int i = 0; i < removed; i++) {
+                stealGrant.add(stealTaskIds[i], stealPriorities[i], stealCreatedAt[i], wireDeadline(stealDeadlines[i]),
+                        stealCapabilities[i]);
+            }
+            if (removed > 0) {
+                tasksGivenAway += removed;
+                lastStealExchange = now;
+            }
+        }
+
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(ACLMessage.INFORM);
+        codec.write(reply, stealGrant);
+        send(reply);
+
+        if (stealGrant.size() > 0) {
+            Logger.log("🤲 " + machineId + " cède " + stealGrant.size() + " tâche(s) à " +
+                    stealRequest.getThiefId() + " (file restante: " + localQueue.size() + ")");
+            advertiseCredits(true); // des places se sont libérées
+        }
+    }
+
+    // Source d'un transfert : céder la queue de la file en un seul lot, gardé jusqu'à l'accusé
+    private void handleTransferOrder(ACLMessage msg) {
+        try {
+            codec.read(msg, transferTasks);
+        } catch (ProtocolException e) {
+            Logger.warn(machineId + " - Trame TRANSFER_TASKS invalide: " + e.getMessage());
+            return;
+        }
+        // Le dernier plan remplace les mouvements pas encore commencés
+        moveCount = 0;
+        nextMove = 0;
+        for (int i = 0; i < transferTasks.size() && moveCount < TRANSFER_MAX_MOVES; i++) {
+            String source = transferTasks.getSourceId(i);
+            String target = transferTasks.getTargetId(i);
+            if ((source == null || source.equals(machineId)) && !target.equals(machineId)) {
+                moveTargets[moveCount] = target;
+                moveCounts[moveCount] = transferTasks.getCount(i);
+                moveCount++;
+            }
         }
+        if (transferPendingTo != null) {
+            Logger.log("🔄 " + machineId + " - " + moveCount + " mouvement(s) en attente (lot en vol vers " +
+                    transferPendingTo + ")");
+            return;
+        }
+        startNextTransfer();
+    }
+
+    // Mouvement suivant du plan : un seul lot en vol à la fois
+    private void startNextTransfer() {
+        while (nextMove < moveCount && transferPendingTo == null) {
+            String target = moveTargets[nextMove];
+            int wanted = moveCounts[nextMove];
+            nextMove++;
+            if (operational) {
+                sendTransferBatch(target, wanted);
+            }
+        }
+    }
+
+    private void sendTransferBatch(String target, int wanted) {
+        int count = Math.min(Math.min(wanted, TRANSFER_MAX_TASKS), localQueue.size());
+        int removed = localQueue.removeTail(count, transferTaskIds, transferPriorities,
+                transferCreatedAt, transferDeadlines, transferCapabilities);
+        if (removed == 0) {
+            return;
+        }
+
+        transferBatch.begin("TRANSFER-" + machineId + "-" + (++transferSequence), false).withTransferFrom(machineId);
+        for (int i = 0; i < removed; i++) {
+            // Pas d'échéance ferme : la cible ne doit pas refuser une tâche déjà admise pour son échéance
+            transferBatch.add(transferTaskIds[i], transferPriorities[i], transferCapabilities[i], transferCreatedAt[i])
+                    .withDeadline(wireDeadline(transferDeadlines[i]), false);
+        }
+        ACLMessage batch = new ACLMessage(ACLMessage.REQUEST);
+        batch.addReceiver(new AID(target, AID.ISLOCALNAME));
+        batch.setConversationId(transferBatch.getBatchId());
+        codec.write(batch, transferBatch);
+        send(batch);
+
+        transferPendingTo = target;
+        transferSentAt = System.currentTimeMillis();
+        Logger.log("🔄 " + machineId + " transfère " + removed + " tâche(s) à " + target +
+                " (file restante: " + localQueue.size() + ")");
+        advertiseCredits(true);
+    }
+
+    // Accusé de la cible : les tâches refusées reviennent dans la file, les autres sont définitivement cédées
+    private void handleTransferAck(ACLMessage msg) {
+        if (MessageCodec.peekType(msg) != MessageType.TASK_BATCH_REPLY) {
+            Logger.log("📨 " + machineId + " - Message de " + msg.getSender().getLocalName() + ": " + msg.getContent());
+            return;
+        }
+        try {
+            codec.read(msg, taskBatchReply);
+        } catch (ProtocolException e) {
+            Logger.warn(machineId + " - Trame TASK_BATCH_REPLY invalide: " + e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String batchId = taskBatchReply.getBatchId();
+
+        if (transferPendingTo == null || !batchId.equals(transferBatch.getBatchId())) {
+            // Accusé arrivé après la reprise du lot : la cible exécute les tâches acceptées
+            int dropped = 0;
+            for (int i = 0; i < taskBatchReply.size(); i++) {
+                if (taskBatchReply.isAccepted(i) && localQueue.remove(taskBatchReply.getTaskId(i))) {
+                    dropped++;
+                }
+            }
+            Logger.log("🔄 " + machineId + " - accusé tardif " + batchId + ": " + dropped + " tâche(s) retirée(s)");
+            return;
+        }
+
+        int returned = 0;
+        for (int i = 0; i < transferBatch.size(); i++) {
+            if (taskBatchReply.isAccepted(i)) {
+                tasksTransferredOut++;
+            } else {
+                localQueue.offer(transferBatch.getTaskId(i), transferBatch.getPriority(i),
+                        queueDeadline(transferBatch.getDeadline(i)), now, transferBatch.getCreatedAt(i),
+                        transferBatch.getCapability(i));
+                returned++;
+            }
+        }
+        Logger.log("🔄 " + machineId + " - " + transferPendingTo + " accepte " +
+                (transferBatch.size() - returned) + "/" + transferBatch.size() + " tâche(s) transférée(s)");
+        transferPendingTo = null;
+        lastStealExchange = now; // même anti-oscillation qu'un vol
+        if (returned > 0) {
+            fillSlots();
+            advertiseCredits(true);
+        }
+        startNextTransfer();
+    }
+
+    // Sans accusé : reprendre le lot et le revendiquer à nouveau (le registre refuse si la cible l'a)
+    private void checkTransferTimeout(long now) {
+        if (transferPendingTo == null || now - transferSentAt < TRANSFER_ACK_TIMEOUT_MS) {
+            return;
+        }
+        for (int i = 0; i < transferBatch.size(); i++) {
+            String taskId = transferBatch.getTaskId(i);
+            if (localQueue.offer(taskId, transferBatch.getPriority(i),
+                    queueDeadline(transferBatch.getDeadline(i)), now, transferBatch.getCreatedAt(i),
+                    transferBatch.getCapability(i))) {
+                reclaimedTasks.add(taskId);
+                claimTask(taskId, null);
+            }
+        }
+        Logger.warn(machineId + " - pas d'accusé de " + transferPendingTo + " pour " +
+                transferBatch.getBatchId() + ", " + transferBatch.size() + " tâche(s) reprise(s)");
+        transfersTimedOut++;
+        transferPendingTo = null;
+        moveCount = 0; // cible muette : le reste du plan est abandonné, le prochain plan en tiendra compte
+        fillSlots();
+        advertiseCredits(true);
+    }
+
+    // Côté voleur : les tâches reçues entrent directement dans la file locale
+    private void handleStealGrant(ACLMessage msg) {
+        try {
+            codec.read(msg, stealGrant);
+        } catch (ProtocolException e) {
+            Logger.warn(machineId + " - Trame STEAL_GRANT invalide: " + e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String victim = stealGrant.getVictimId();
+        if (victim.equals(stealPendingFrom)) {
+            stealPendingFrom = null;
+        }
+
+        if (stealGrant.size() == 0) {
+            stealRequestsDenied++;
+            long cooldown = stealGrant.getStatus() == StealGrantMessage.INCOMPATIBLE
+                    ? STEAL_INCOMPATIBLE_COOLDOWN_MS : STEAL_VICTIM_COOLDOWN_MS;
+            stealCooldownUntil.put(victim, now + cooldown);
+            return;
+        }
+
+        // Tâches déjà retirées chez la victime : les accepter même si l'état a changé depuis
+        for (int i = 0; i < stealGrant.size(); i++) {
+            if (localQueue.offer(stealGrant.getTaskId(i), stealGrant.getPriority(i),
+                    queueDeadline(stealGrant.getDeadline(i)), now, stealGrant.getCreatedAt(i),
+                    stealGrant.getCapability(i))) {
+                claimTask(stealGrant.getTaskId(i), victim); // cession : la propriété suit la tâche
+            }
+        }
+        tasksStolen += stealGrant.size();
+        lastStealExchange = now;
+        Logger.log("🦝 " + machineId + " récupère " + stealGrant.size() + " tâche(s) de " + victim);
+        fillSlots();
     }
 
     /**
@@ -453,8 +1243,8 @@ public class AutonomousMachineAgent extends Agent {
                 notifyFailure();
             }
 
-            // Surveiller les performances
-            if (load > 95) {
+            // Surveiller les performances (tous les créneaux pris et file pleine)
+            if (load > 95 && localQueue.size() >= capacity) {
                 Logger.warn(machineId + " en surcharge critique!");
                 notifyOverload();
             }
@@ -463,15 +1253,22 @@ public class AutonomousMachineAgent extends Agent {
 
     private void notifyFailure() {
         ACLMessage alert = new ACLMessage(ACLMessage.INFORM);
-        alert.addReceiver(siteCoordinatorAID);
-        alert.setContent("FAILURE:" + machineId + ":SELF_DETECTED:CRITICAL");
+        if (siteRing != null) {
+            for (AID shard : siteShardAIDs) {
+                alert.addReceiver(shard); // chaque shard libère les tâches qu'elle détenait
+            }
+        } else {
+            alert.addReceiver(siteCoordinatorAID);
+        }
+        codec.write(alert, new FailureMessage().set(machineId, "SELF_DETECTED", "CRITICAL")
+                .withSequence(++stateSequence));
         send(alert);
     }
 
     private void notifyOverload() {
         ACLMessage alert = new ACLMessage(ACLMessage.INFORM);
         alert.addReceiver(siteCoordinatorAID);
-        alert.setContent("OVERLOAD:" + machineId + ":" + load);
+        codec.write(alert, new OverloadMessage().set(machineId, load));
         send(alert);
     }
 
@@ -480,11 +1277,12 @@ public class AutonomousMachineAgent extends Agent {
         if (Math.random() < 0.15) { // 15% de chance
             operational = true;
             Logger.log("🔧 " + machineId + " s'est auto-réparé!");
+            fillSlots();
 
-            ACLMessage recovery = new ACLMessage(ACLMessage.INFORM);
-            recovery.addReceiver(siteCoordinatorAID);
-            recovery.setContent("RECOVERY:" + machineId + ":SELF_REPAIRED");
-            send(recovery);
+            // Reprise annoncée par un état numéroté, forcé même si l'état opérationnel déjà signalé
+            // est identique : une panne survenue avant son traitement portera un numéro plus récent
+            stateReported = false;
+            reportStateIfChanged();
         }
     }
 
@@ -512,11 +1310,63 @@ public class AutonomousMachineAgent extends Agent {
         Logger.log("🔧 " + machineId + " ajuste ses paramètres (charge élevée)");
     }
 
+    // Secondes avant la fin d'une tâche placée en queue de file
     private int estimateCompletionTime() {
-        return cycleTime * (localQueue.size() + 1);
+        long now = System.currentTimeMillis();
+        return (int) ((predictFinish(1, TaskQueue.NO_DEADLINE, now, 0) - now + 999) / 1000);
+    }
+
+    /**
+     * Fin prévue d'une nouvelle tâche sous EDF. Chaque tâche occupe un créneau pendant un cycle :
+     * les créneaux se libèrent dans l'ordre de leurs fins en cours, la k-ième tâche servie démarre
+     * donc à {@code libre[k % créneaux] + (k / créneaux) * cycle}.
+     * @param extraAhead tâches supplémentaires supposées servies avant (simulation d'un lot)
+     */
+    private long predictFinish(int priority, long deadline, long now, int extraAhead) {
+        int ahead = localQueue.countAhead(priority, deadline, now) + extraAhead;
+        long cycleMs = cycleTime * 1000L;
+        for (int slot = 0; slot < processingSlots; slot++) {
+            slotFreeAt[slot] = slotTasks[slot] != null ? Math.max(now, slotStartedAt[slot] + cycleMs) : now;
+        }
+        Arrays.sort(slotFreeAt);
+        return slotFreeAt[ahead % processingSlots] + (long) (ahead / processingSlots) * cycleMs + cycleMs;
+    }
+
+    /**
+     * Seule l'échéance de la nouvelle tâche est vérifiée : une tâche déjà admise peut glisser
+     * d'un rang derrière elle (retard mesuré à la fin).
+     */
+    private boolean meetsDeadline(int priority, long deadline, long now, int extraAhead) {
+        return deadline == TaskQueue.NO_DEADLINE || predictFinish(priority, deadline, now, extraAhead) <= deadline;
+    }
+
+    // Échéance sur le réseau : 0 si aucune ; dans la file : TaskQueue.NO_DEADLINE
+    private static long queueDeadline(long wireDeadline) {
+        return wireDeadline > 0 ? wireDeadline : TaskQueue.NO_DEADLINE;
+    }
+
+    private static long wireDeadline(long queueDeadline) {
+        return queueDeadline != TaskQueue.NO_DEADLINE ? queueDeadline : 0;
     }
 
     protected void takeDown() {
         Logger.log("🛑 Machine Autonome " + machineId + " arrêtée");
+        localQueue.printStatistics(machineId);
+        Logger.log("🦝 Vol de travail - " + machineId + ": " + tasksStolen + " tâches volées, " +
+                tasksGivenAway + " cédées, " + stealRequestsDenied + "/" + stealRequestsSent + " demandes sans tâche");
+        Logger.log("🚦 Admission - " + machineId + ": " + admission);
+        Logger.log("🪪 Doublons - " + machineId + ": " + duplicatesDropped + " retirés de la file, " +
+                duplicatesAborted + " interrompus, " + duplicatesTooLate + " déjà terminés");
+        Logger.log("🔄 Transferts - " + machineId + ": " + tasksTransferredOut + " tâches cédées, " +
+                tasksTransferredIn + " reçues, " + transfersTimedOut + " lot(s) sans accusé");
+        Logger.log(String.format("⌛ Échéances - %s: %d/%d manquées (%.1f%%), retard moy: %.0f ms, max: %d ms, " +
+                        "%d refus pour échéance intenable", machineId, deadlineMisses, deadlineTasks,
+                deadlineTasks > 0 ? 100.0 * deadlineMisses / deadlineTasks : 0.0,
+                deadlineMisses > 0 ? (double) totalLatenessMs / deadlineMisses : 0.0, maxLatenessMs, deadlineRefusals));
+        withSlotStatus(heartbeat);
+        for (int i = 0; i < processingSlots; i++) {
+            Logger.log(String.format("   Créneau %d: utilisation %.1f%% | %d tâches terminées",
+                    i + 1, heartbeat.getSlotUtilization(i), heartbeat.getSlotCompleted(i)));
+        }
     }
 }
\ No newline at end of file
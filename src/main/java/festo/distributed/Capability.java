@@ -0,0 +1,58 @@
+package festo.distributed;
+
+/**
+ * Capacités de fabrication qu'une tâche peut exiger.
+ * L'ordinal sert de numéro de bit (masques) et de code dans les trames binaires.
+ */
+public enum Capability {
+    DISTRIBUTION,
+    MACHINING,
+    ASSEMBLY,
+    QUALITY_CONTROL;
+
+    /** Code binaire d'une tâche sans exigence. */
+    public static final int ANY = -1;
+
+    private static final Capability[] VALUES = values();
+
+    public long bit() {
+        return 1L << ordinal();
+    }
+
+    public static long mask(Capability... capabilities) {
+        long mask = 0;
+        for (Capability capability : capabilities) {
+            mask |= capability.bit();
+        }
+        return mask;
+    }
+
+    /** Masque des capacités d'un type de machine : sa seule capacité, aucune pour un type inconnu. */
+    public static long maskOf(String machineType) {
+        Capability capability = fromName(machineType);
+        return capability != null ? capability.bit() : 0;
+    }
+
+    /** @return la capacité, ou null si le nom est inconnu */
+    public static Capability fromName(String name) {
+        for (Capability capability : VALUES) {
+            if (capability.name().equals(name)) {
+                return capability;
+            }
+        }
+        return null;
+    }
+
+    /** @return la capacité, ou null pour {@link #ANY} ou un code inconnu */
+    public static Capability fromCode(int code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+
+    public static int codeOf(Capability capability) {
+        return capability != null ? capability.ordinal() : ANY;
+    }
+
+    public static int count() {
+        return VALUES.length;
+    }
+}
@@ -0,0 +1,168 @@
+package festo.distributed;
+
+import java.util.*;
+
+/**
+ * Index des capacités : un ensemble de bits par capacité sur un index dense de machines,
+ * plus un ensemble des machines disponibles.
+ *
+ * Les recherches (routage, remplacement, destinataires d'un CFP) sont des intersections
+ * mot à mot (64 machines par mot) au lieu de parcours de maps, ce qui tient
+ * des milliers de machines. L'index d'une machine est attribué à sa première inscription
+ * et ne change plus.
+ */
+public class CapabilityIndex {
+
+    private final Map<String, Integer> indexById = new HashMap<>();
+    private String[] machineIds = new String[64];
+    private long[] masks = new long[64];
+    private int size;
+
+    private final long[][] byCapability = new long[Capability.count()][1];
+    private long[] available = new long[1];
+
+    public CapabilityIndex() {
+    }
+
+    /** Index pré-rempli dans l'ordre donné (mêmes index que CreditLedger / LoadSnapshot). */
+    public CapabilityIndex(List<String> machineIds) {
+        for (String machineId : machineIds) {
+            register(machineId, 0);
+        }
+    }
+
+    /**
+     * Inscrit une machine ou met à jour ses capacités ; elle est marquée disponible.
+     * @return son index dense
+     */
+    public int register(String machineId, long capabilityMask) {
+        Integer existing = indexById.get(machineId);
+        int index;
+        if (existing != null) {
+            index = existing;
+        } else {
+            index = size++;
+            ensureCapacity(size);
+            machineIds[index] = machineId;
+            indexById.put(machineId, index);
+        }
+        masks[index] = capabilityMask;
+        for (int c = 0; c < byCapability.length; c++) {
+            assign(byCapability[c], index, (capabilityMask & (1L << c)) != 0);
+        }
+        assign(available, index, true);
+        return index;
+    }
+
+    /** Panne / reprise : la machine garde ses capacités mais sort des recherches. */
+    public void setAvailable(int index, boolean isAvailable) {
+        assign(available, index, isAvailable);
+    }
+
+    /**
+     * Machines disponibles qui ont toutes les capacités du masque (0 = toutes les machines disponibles).
+     * @param into ensemble résultat, réutilisé s'il est assez grand
+     */
+    public long[] matchAll(long capabilityMask, long[] into) {
+        int words = words();
+        long[] result = into != null && into.length >= words ? into : new long[words];
+        System.arraycopy(available, 0, result, 0, words);
+        Arrays.fill(result, words, result.length, 0);
+        for (int c = 0; c < byCapability.length; c++) {
+            if ((capabilityMask & (1L << c)) == 0) continue;
+            long[] bits = byCapability[c];
+            for (int w = 0; w < words; w++) {
+                result[w] &= bits[w];
+            }
+        }
+        return result;
+    }
+
+    /** Machines disponibles ayant la capacité (null = sans exigence). */
+    public long[] match(Capability capability, long[] into) {
+        return matchAll(capability != null ? capability.bit() : 0, into);
+    }
+
+    /** Prochain index présent dans l'ensemble à partir de {@code from}, -1 sinon. */
+    public static int nextSetBit(long[] set, int from) {
+        int w = from >>> 6;
+        if (w >= set.length) {
+            return -1;
+        }
+        long word = set[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == set.length) {
+                return -1;
+            }
+            word = set[w];
+        }
+    }
+
+    public static boolean contains(long[] set, int index) {
+        int w = index >>> 6;
+        return w < set.length && (set[w] & (1L << index)) != 0;
+    }
+
+    public static int count(long[] set) {
+        int count = 0;
+        for (long word : set) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public Integer indexOf(String machineId) {
+        return indexById.get(machineId);
+    }
+
+    public String machineAt(int index) {
+        return machineIds[index];
+    }
+
+    public long maskAt(int index) {
+        return masks[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int words() {
+        return available.length;
+    }
+
+    private static void assign(long[] set, int index, boolean value) {
+        if (value) {
+            set[index >>> 6] |= 1L << index;
+        } else {
+            set[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > machineIds.length) {
+            machineIds = Arrays.copyOf(machineIds, machineIds.length * 2);
+            masks = Arrays.copyOf(masks, masks.length * 2);
+        }
+        int words = (capacity + 63) >>> 6;
+        if (words > available.length) {
+            available = Arrays.copyOf(available, words);
+            for (int c = 0; c < byCapability.length; c++) {
+                byCapability[c] = Arrays.copyOf(byCapability[c], words);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        long[] all = matchAll(0, null);
+        StringBuilder sb = new StringBuilder(size + " machines, " + count(all) + " disponibles |");
+        for (Capability capability : Capability.values()) {
+            sb.append(' ').append(capability).append(": ").append(count(byCapability[capability.ordinal()]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package festo.distributed;
+
+import java.util.Arrays;
+
+/**
+ * Anneau de hachage cohérent : répartit des clés (identifiants de machine, de tâche) entre N shards.
+ *
+ * Chaque shard occupe plusieurs points virtuels de l'anneau ; une clé appartient au premier point
+ * rencontré à partir de son empreinte (recherche dichotomique). Passer de N à N+1 shards
+ * ne déplace qu'environ 1/(N+1) des clés, et les points virtuels lissent la répartition.
+ */
+public class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    private final int shardCount;
+    private final long[] points; // triés
+    private final int[] owners;  // shard de chaque point
+
+    public ConsistentHashRing(int shardCount) {
+        this(shardCount, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("Anneau invalide: " + shardCount + " shards, " +
+                    virtualNodes + " points virtuels");
+        }
+        this.shardCount = shardCount;
+        int size = shardCount * virtualNodes;
+        long[] keys = new long[size];
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                keys[shard * virtualNodes + v] = TaskRegistry.fingerprint("shard-" + shard + "#" + v);
+            }
+        }
+        Arrays.sort(keys);
+        points = keys;
+        owners = new int[size];
+        // Propriétaire de chaque point une fois triés (empreintes 64 bits : pas de collision en pratique)
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                long point = TaskRegistry.fingerprint("shard-" + shard + "#" + v);
+                owners[Arrays.binarySearch(points, point)] = shard;
+            }
+        }
+    }
+
+    /** Shard propriétaire d'une clé, dans [0, shardCount). */
+    public int shardOf(String key) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(points, TaskRegistry.fingerprint(key));
+        if (index < 0) {
+            index = -index - 1;      // premier point au-delà de l'empreinte
+            if (index == points.length) {
+                index = 0;           // l'anneau se referme
+            }
+        }
+        return owners[index];
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+}
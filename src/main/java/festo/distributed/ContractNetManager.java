@@ -0,0 +1,216 @@
+package festo.distributed;
+
+import festo.utils.TimerWheel;
+import jade.lang.acl.ACLMessage;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Gestionnaire Contract Net du générateur (tâches complexes).
+ *
+ * Pour chaque conversation ("negotiation-<tâche>") : fenêtre de collecte des offres,
+ * puis une seule attribution à la meilleure offre ; les autres soumissionnaires sont rejetés.
+ * La fenêtre se ferme à l'échéance (roue temporelle) ou dès que tous les invités ont répondu.
+ *
+ * Classement des offres : SCORE le plus haut, puis ETA la plus courte, puis ENERGY la plus faible.
+ * Métriques : latence des offres (CFP → PROPOSE) et délai d'attribution (CFP → award).
+ */
+public class ContractNetManager {
+
+    private static final double SCORE_TIE = 0.01;
+
+    /** Offre reçue d'une machine. */
+    public static class Bid {
+        final String bidder;
+        final double score;
+        final int eta;
+        final double energy;
+        final ACLMessage proposal; // pour répondre dans la même conversation
+
+        Bid(String bidder, double score, int eta, double energy, ACLMessage proposal) {
+            this.bidder = bidder;
+            this.score = score;
+            this.eta = eta;
+            this.energy = energy;
+            this.proposal = proposal;
+        }
+
+        // Meilleure que other ?
+        boolean beats(Bid other) {
+            if (Math.abs(score - other.score) > SCORE_TIE) {
+                return score > other.score;
+            }
+            if (eta != other.eta) {
+                return eta < other.eta;
+            }
+            return energy < other.energy;
+        }
+    }
+
+    /** Négociation en cours pour une tâche. */
+    public static class Negotiation {
+        final String conversationId;
+        final String taskId;
+        final int priority;
+        final Capability capability;
+        final int invited;
+        final long openedAt;
+        final List<Bid> bids = new ArrayList<>();
+        int declined;
+        TimerWheel.Timeout<Negotiation> timeout;
+
+        Negotiation(String conversationId, String taskId, int priority, Capability capability,
+                    int invited, long openedAt) {
+            this.conversationId = conversationId;
+            this.taskId = taskId;
+            this.priority = priority;
+            this.capability = capability;
+            this.invited = invited;
+            this.openedAt = openedAt;
+        }
+
+        /** Meilleure offre, null si aucune. */
+        Bid best() {
+            Bid best = null;
+            for (Bid bid : bids) {
+                if (best == null || bid.beats(best)) {
+                    best = bid;
+                }
+            }
+            return best;
+        }
+    }
+
+    private final Map<String, Negotiation> open = new HashMap<>();
+    private final TimerWheel<Negotiation> wheel;
+    private final long bidWindowMs;
+
+    // Métriques
+    private long opened = 0;
+    private long awarded = 0;
+    private long withoutBid = 0;
+    private long bidsReceived = 0;
+    private long ignoredBids = 0;   // tardives ou illisibles
+    private long totalBidLatency = 0;
+    private long maxBidLatency = 0;
+    private long totalAwardTime = 0;
+    private long maxAwardTime = 0;
+
+    public ContractNetManager(long bidWindowMs, long tickMs, long now) {
+        this.bidWindowMs = bidWindowMs;
+        int slots = Integer.highestOneBit((int) Math.max(1, bidWindowMs / tickMs)) * 2;
+        this.wheel = new TimerWheel<>(tickMs, slots, now);
+    }
+
+    /** Ouvre la fenêtre de collecte après l'envoi du CFP à {@code invited} machines. */
+    public void open(String conversationId, String taskId, int priority, Capability capability,
+                     int invited, long now) {
+        Negotiation negotiation = new Negotiation(conversationId, taskId, priority, capability, invited, now);
+        negotiation.timeout = wheel.schedule(negotiation, bidWindowMs, now);
+        open.put(conversationId, negotiation);
+        opened++;
+    }
+
+    /**
+     * Enregistre une offre "PROPOSAL:<tâche>:SCORE:<s>:ETA:<e>:ENERGY:<j>".
+     * @return la négociation si tous les invités ont répondu (à clore tout de suite),
+     *         sinon null ; une offre tardive ou illisible est comptée et ignorée (voir isOpen)
+     */
+    public Negotiation onProposal(ACLMessage proposal, long now) {
+        Negotiation negotiation = open.get(proposal.getConversationId());
+        Bid bid = negotiation != null ? parseBid(proposal) : null;
+        if (bid == null) {
+            ignoredBids++;
+            return null;
+        }
+        long latency = now - negotiation.openedAt;
+        bidsReceived++;
+        totalBidLatency += latency;
+        maxBidLatency = Math.max(maxBidLatency, latency);
+
+        negotiation.bids.add(bid);
+        return complete(negotiation);
+    }
+
+    /** Un invité ne soumissionne pas (REFUSE). */
+    public Negotiation onDecline(String conversationId) {
+        Negotiation negotiation = open.get(conversationId);
+        if (negotiation == null) {
+            return null;
+        }
+        negotiation.declined++;
+        return complete(negotiation);
+    }
+
+    /** Ferme les fenêtres échues et les passe à onClose. */
+    public int expire(long now, Consumer<Negotiation> onClose) {
+        return wheel.advance(now, negotiation -> {
+            open.remove(negotiation.conversationId);
+            onClose.accept(negotiation);
+        });
+    }
+
+    /**
+     * Clôt la négociation : retourne la meilleure offre (null si aucune) et met à jour les métriques.
+     * La négociation doit avoir été retirée (onProposal / onDecline complets ou expire()).
+     */
+    public Bid award(Negotiation negotiation, long now) {
+        Bid best = negotiation.best();
+        if (best == null) {
+            withoutBid++;
+            return null;
+        }
+        long awardTime = now - negotiation.openedAt;
+        awarded++;
+        totalAwardTime += awardTime;
+        maxAwardTime = Math.max(maxAwardTime, awardTime);
+        return best;
+    }
+
+    public boolean isOpen(String conversationId) {
+        return conversationId != null && open.containsKey(conversationId);
+    }
+
+    public int openCount() {
+        return open.size();
+    }
+
+    // Tous les invités ont répondu : fermeture anticipée
+    private Negotiation complete(Negotiation negotiation) {
+        if (negotiation.bids.size() + negotiation.declined < negotiation.invited) {
+            return null;
+        }
+        open.remove(negotiation.conversationId);
+        wheel.cancel(negotiation.timeout);
+        return negotiation;
+    }
+
+    private static Bid parseBid(ACLMessage proposal) {
+        String content = proposal.getContent();
+        if (content == null || !content.startsWith("PROPOSAL:")) {
+            return null;
+        }
+        String[] parts = content.split(":");
+        if (parts.length < 8) {
+            return null;
+        }
+        try {
+            return new Bid(proposal.getSender().getLocalName(),
+                    Double.parseDouble(parts[3]),
+                    Integer.parseInt(parts[5]),
+                    Double.parseDouble(parts[7]),
+                    proposal);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ouvertes: %d | attribuées: %d/%d | sans offre: %d | offres: %d (ignorées: %d) | " +
+                        "latence offre moy: %.1f ms, max: %d ms | attribution moy: %.1f ms, max: %d ms",
+                open.size(), awarded, opened, withoutBid, bidsReceived, ignoredBids,
+                bidsReceived > 0 ? (double) totalBidLatency / bidsReceived : 0, maxBidLatency,
+                awarded > 0 ? (double) totalAwardTime / awarded : 0, maxAwardTime);
+    }
+}
@@ -0,0 +1,126 @@
+package festo.distributed;
+
+import festo.utils.TimerWheel;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Table de corrélation requête/réponse du générateur de tâches.
+ *
+ * Chaque tâche envoyée est suivie par son identifiant de conversation ("task-<id>")
+ * jusqu'à la réponse de la machine. Les échéances sont portées par une seule
+ * {@link TimerWheel} : une tâche sans réponse dans le délai expire et peut être réémise.
+ *
+ * Statistiques : tâches en vol, taux d'expiration, latence requête → réponse.
+ */
+public class CorrelationTable {
+
+    /** Requête en attente de réponse. */
+    public static class PendingRequest {
+        final String conversationId;
+        final String taskId;
+        final String machineId;
+        final int priority;
+        final Capability capability; // null = sans exigence
+        final int attempt;       // 1 = premier envoi
+        final long createdAt;    // création de la tâche, conservée pour les réémissions
+        final long deadline;     // échéance absolue, 0 si aucune
+        final long sentAt;
+        TimerWheel.Timeout<PendingRequest> timeout;
+
+        PendingRequest(String conversationId, String taskId, String machineId,
+                       int priority, Capability capability, int attempt, long createdAt, long deadline,
+                       long sentAt) {
+            this.conversationId = conversationId;
+            this.taskId = taskId;
+            this.machineId = machineId;
+            this.priority = priority;
+            this.capability = capability;
+            this.attempt = attempt;
+            this.createdAt = createdAt;
+            this.deadline = deadline;
+            this.sentAt = sentAt;
+        }
+    }
+
+    private final Map<String, PendingRequest> inFlight = new HashMap<>();
+    private final TimerWheel<PendingRequest> wheel;
+    private final long timeoutMs;
+
+    // Statistiques
+    private long requests = 0;
+    private long replies = 0;
+    private long timeouts = 0;
+    private long lateReplies = 0;   // réponse arrivée après expiration
+    private long totalLatency = 0;
+    private long maxLatency = 0;
+
+    public CorrelationTable(long timeoutMs, long tickMs, long now) {
+        this.timeoutMs = timeoutMs;
+        // Un tour de roue couvre au moins le délai : une seule passe par échéance
+        int slots = Integer.highestOneBit((int) Math.max(1, timeoutMs / tickMs)) * 2;
+        this.wheel = new TimerWheel<>(tickMs, slots, now);
+    }
+
+    /** Enregistre une tâche envoyée et arme son échéance. */
+    public void register(String conversationId, String taskId, String machineId,
+                         int priority, Capability capability, int attempt, long createdAt, long deadline,
+                         long now) {
+        PendingRequest request = new PendingRequest(conversationId, taskId, machineId,
+                priority, capability, attempt, createdAt, deadline, now);
+        PendingRequest previous = inFlight.put(conversationId, request);
+        if (previous != null) {
+            wheel.cancel(previous.timeout);
+        }
+        request.timeout = wheel.schedule(request, timeoutMs, now);
+        requests++;
+    }
+
+    /**
+     * Réponse reçue : retire la requête et mesure sa latence.
+     * @return la requête, ou null si inconnue ou déjà expirée
+     */
+    public PendingRequest complete(String conversationId, long now) {
+        PendingRequest request = conversationId != null ? inFlight.remove(conversationId) : null;
+        if (request == null) {
+            lateReplies++;
+            return null;
+        }
+        wheel.cancel(request.timeout);
+
+        long latency = now - request.sentAt;
+        replies++;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+        return request;
+    }
+
+    /** Fait avancer la roue et passe chaque requête expirée à onTimeout. */
+    public int expire(long now, Consumer<PendingRequest> onTimeout) {
+        return wheel.advance(now, request -> {
+            inFlight.remove(request.conversationId);
+            timeouts++;
+            onTimeout.accept(request);
+        });
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    public double timeoutRate() {
+        return requests > 0 ? (double) timeouts / requests * 100 : 0;
+    }
+
+    public double averageLatency() {
+        return replies > 0 ? (double) totalLatency / replies : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("en vol: %d | envoyées: %d | réponses: %d | expirées: %d (%.1f%%) | " +
+                        "tardives: %d | latence moy: %.1f ms, max: %d ms",
+                inFlight.size(), requests, replies, timeouts, timeoutRate(),
+                lateReplies, averageLatency(), maxLatency);
+    }
+}
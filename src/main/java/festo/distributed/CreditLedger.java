@@ -0,0 +1,86 @@
+package festo.distributed;
+
+import java.util.*;
+
+/**
+ * Registre des crédits du générateur de tâches (contrôle de flux).
+ *
+ * Pour chaque machine :
+ * - advertised : places libres annoncées par la machine (valeur absolue) ;
+ * - inFlight   : tâches envoyées dont la réponse n'est pas encore arrivée.
+ * Crédits disponibles = advertised - inFlight. Le générateur n'envoie que s'il en a.
+ */
+public class CreditLedger {
+
+    private final Map<String, Integer> indexById = new HashMap<>();
+    private final String[] machineIds;
+    private final int[] advertised;
+    private final int[] inFlight;
+
+    public CreditLedger(List<String> machineIds) {
+        this.machineIds = machineIds.toArray(new String[0]);
+        this.advertised = new int[this.machineIds.length];
+        this.inFlight = new int[this.machineIds.length];
+        for (int i = 0; i < this.machineIds.length; i++) {
+            indexById.put(this.machineIds[i], i);
+        }
+    }
+
+    /** Nouvelle annonce de places libres (déjà déduites des tâches acceptées). */
+    public void advertise(String machineId, int freeSlots) {
+        Integer index = indexById.get(machineId);
+        if (index != null) {
+            advertised[index] = Math.max(0, freeSlots);
+        }
+    }
+
+    /** Consomme un crédit avant l'envoi d'une tâche. */
+    public boolean consume(String machineId) {
+        Integer index = indexById.get(machineId);
+        if (index == null || available(index) <= 0) {
+            return false;
+        }
+        inFlight[index]++;
+        return true;
+    }
+
+    /** Réponse reçue (acceptée ou refusée) : la tâche n'est plus en vol. */
+    public void release(String machineId) {
+        Integer index = indexById.get(machineId);
+        if (index != null && inFlight[index] > 0) {
+            inFlight[index]--;
+        }
+    }
+
+    public int available(int index) {
+        return Math.max(0, advertised[index] - inFlight[index]);
+    }
+
+    public int available(String machineId) {
+        Integer index = indexById.get(machineId);
+        return index != null ? available(index) : 0;
+    }
+
+    public int totalAvailable() {
+        int total = 0;
+        for (int i = 0; i < machineIds.length; i++) {
+            total += available(i);
+        }
+        return total;
+    }
+
+    public int size() {
+        return machineIds.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < machineIds.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(machineIds[i]).append('=').append(available(i))
+                    .append(" (en vol: ").append(inFlight[i]).append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package festo.distributed;
+
+import java.util.Random;
+
+/**
+ * Politique de choix de la machine cible d'une tâche dans le générateur.
+ *
+ * Seules les machines de l'ensemble {@code eligible} (capacité exigée, voir {@link CapabilityIndex})
+ * sont parcourues. Une machine n'est candidate que si elle a des crédits (contrôle de flux),
+ * est opérationnelle d'après la {@link LoadSnapshot} et n'est pas la machine à éviter
+ * (celle qui vient de refuser ou de ne pas répondre).
+ */
+public interface DispatchPolicy {
+
+    /**
+     * @param eligible ensemble de bits des machines qui ont la capacité exigée
+     * @param avoid index de la machine à éviter, -1 si aucune
+     * @return index de la machine choisie, -1 si aucune candidate
+     */
+    int select(LoadSnapshot snapshot, CreditLedger credits, long[] eligible, int avoid);
+
+    String name();
+
+    /** Politique par nom ("P2C", "LEAST_QUEUE", "WRR") ; P2C par défaut. */
+    static DispatchPolicy forName(String name, Random random) {
+        if ("LEAST_QUEUE".equalsIgnoreCase(name)) {
+            return new LeastQueue();
+        }
+        if ("WRR".equalsIgnoreCase(name)) {
+            return new WeightedRoundRobin();
+        }
+        return new PowerOfTwoChoices(random);
+    }
+
+    static boolean isCandidate(LoadSnapshot snapshot, CreditLedger credits, int index, int avoid) {
+        return index != avoid && credits.available(index) > 0 && snapshot.isOperational(index);
+    }
+
+    /** Pression d'une machine : charge (%) + occupation de la file (%). */
+    static double pressure(LoadSnapshot snapshot, int index) {
+        int capacity = snapshot.getCapacity(index);
+        double occupancy = capacity > 0
+                ? 100.0 * snapshot.getQueueSize(index) / capacity
+                : 10.0 * snapshot.getQueueSize(index); // capacité pas encore connue
+        return snapshot.getLoad(index) + occupancy;
+    }
+
+    /**
+     * Deux candidates tirées au hasard, la moins pressée gagne :
+     * presque aussi bon que le minimum global, sans troupeau sur une photo périmée.
+     */
+    class PowerOfTwoChoices implements DispatchPolicy {
+        private final Random random;
+        private int[] candidates = new int[0];
+
+        public PowerOfTwoChoices(Random random) {
+            this.random = random;
+        }
+
+        public int select(LoadSnapshot snapshot, CreditLedger credits, long[] eligible, int avoid) {
+            if (candidates.length < snapshot.size()) {
+                candidates = new int[snapshot.size()];
+            }
+            int count = 0;
+            for (int i = CapabilityIndex.nextSetBit(eligible, 0); i >= 0 && i < snapshot.size();
+                 i = CapabilityIndex.nextSetBit(eligible, i + 1)) {
+                if (isCandidate(snapshot, credits, i, avoid)) {
+                    candidates[count++] = i;
+                }
+            }
+            if (count <= 1) {
+                return count == 1 ? candidates[0] : -1;
+            }
+
+            // Tirage sans remise de deux candidates distinctes
+            int a = random.nextInt(count);
+            int b = random.nextInt(count - 1);
+            if (b >= a) b++;
+            int first = candidates[a];
+            int second = candidates[b];
+            return pressure(snapshot, first) <= pressure(snapshot, second) ? first : second;
+        }
+
+        public String name() {
+            return "power-of-two-choices";
+        }
+    }
+
+    /** File la plus courte, puis charge la plus faible ; départ tournant pour les égalités. */
+    class LeastQueue implements DispatchPolicy {
+        private int start;
+
+        public int select(LoadSnapshot snapshot, CreditLedger credits, long[] eligible, int avoid) {
+            int n = snapshot.size();
+            int best = -1;
+            // Parcours circulaire des seules machines éligibles : [start, n) puis [0, start)
+            for (int pass = 0; pass < 2; pass++) {
+                int from = pass == 0 ? start : 0;
+                int to = pass == 0 ? n : start;
+                for (int i = CapabilityIndex.nextSetBit(eligible, from); i >= 0 && i < to;
+                     i = CapabilityIndex.nextSetBit(eligible, i + 1)) {
+                    if (!isCandidate(snapshot, credits, i, avoid)) continue;
+                    if (best < 0
+                            || snapshot.getQueueSize(i) < snapshot.getQueueSize(best)
+                            || (snapshot.getQueueSize(i) == snapshot.getQueueSize(best)
+                                && snapshot.getLoad(i) < snapshot.getLoad(best))) {
+                        best = i;
+                    }
+                }
+            }
+            start = (start + 1) % Math.max(1, n);
+            return best;
+        }
+
+        public String name() {
+            return "least-queue";
+        }
+    }
+
+    /**
+     * Tourniquet pondéré par la capacité (variante "lisse" : les envois vers
+     * une grosse machine sont intercalés au lieu d'arriver en rafale).
+     */
+    class WeightedRoundRobin implements DispatchPolicy {
+        private int[] currentWeights = new int[0];
+
+        public int select(LoadSnapshot snapshot, CreditLedger credits, long[] eligible, int avoid) {
+            if (currentWeights.length < snapshot.size()) {
+                currentWeights = new int[snapshot.size()];
+            }
+            int best = -1;
+            int totalWeight = 0;
+            for (int i = CapabilityIndex.nextSetBit(eligible, 0); i >= 0 && i < snapshot.size();
+                 i = CapabilityIndex.nextSetBit(eligible, i + 1)) {
+                if (!isCandidate(snapshot, credits, i, avoid)) continue;
+                int weight = Math.max(1, snapshot.getCapacity(i));
+                currentWeights[i] += weight;
+                totalWeight += weight;
+                if (best < 0 || currentWeights[i] > currentWeights[best]) {
+                    best = i;
+                }
+            }
+            if (best >= 0) {
+                currentWeights[best] -= totalWeight;
+            }
+            return best;
+        }
+
+        public String name() {
+            return "weighted-round-robin";
+        }
+    }
+}
@@ -10,6 +10,9 @@ import jade.wrapper.StaleProxyException;
 import festo.utils.Logger;
 public class DistributedSystemLauncher {
 
+    // Shards de coordination par site (-Dfesto.site.shards=N) ; 1 = un coordinateur par site
+    private static final int SITE_SHARDS = Math.max(1, Integer.getInteger("festo.site.shards", 1));
+
     public static void main(String[] args) {
         try {
             System.out.println("🚀 ===== DÉMARRAGE SYSTÈME DISTRIBUÉ =====");
@@ -54,7 +57,7 @@ public class DistributedSystemLauncher {
 
             // CRÉER LE GÉNÉRATEUR DE TÂCHES
             System.out.println("\n🎯 === GÉNÉRATEUR DE TÂCHES ===");
-            createTaskGenerator(mainContainer);
+            createTaskGenerator(mainContainer, args);
 
 
             //CRÉER LE MONITEUR
@@ -99,31 +102,51 @@ public class DistributedSystemLauncher {
     private static void createSiteCoordinators(AgentContainer container)
             throws StaleProxyException {
         // Site A
-        AgentController coordA = container.createNewAgent(
-                "SiteCoordinator_A",
-                "festo.distributed.SiteCoordinatorAgent",
-                new Object[] { "A" }
-        );
-        coordA.start();
-        System.out.println("✅ Coordinateur Site A créé");
+        createSiteCoordinator(container, "A");
 
         // Site B
-        AgentController coordB = container.createNewAgent(
-                "SiteCoordinator_B",
-                "festo.distributed.SiteCoordinatorAgent",
-                new Object[] { "B" }
+        createSiteCoordinator(container, "B");
+    }
+
+    // Un coordinateur, ou un agrégateur (sous le même nom) et ses shards
+    private static void createSiteCoordinator(AgentContainer container, String siteId)
+            throws StaleProxyException {
+        if (SITE_SHARDS == 1) {
+            AgentController coordinator = container.createNewAgent(
+                    SiteAggregatorAgent.coordinatorName(siteId, -1),
+                    "festo.distributed.SiteCoordinatorAgent",
+                    new Object[] { siteId }
+            );
+            coordinator.start();
+            System.out.println("✅ Coordinateur Site " + siteId + " créé");
+            return;
+        }
+
+        AgentController aggregator = container.createNewAgent(
+                SiteAggregatorAgent.coordinatorName(siteId, -1),
+                "festo.distributed.SiteAggregatorAgent",
+                new Object[] { siteId, SITE_SHARDS }
         );
-        coordB.start();
-        System.out.println("✅ Coordinateur Site B créé");
+        aggregator.start();
+        for (int shard = 0; shard < SITE_SHARDS; shard++) {
+            AgentController coordinator = container.createNewAgent(
+                    SiteAggregatorAgent.coordinatorName(siteId, shard),
+                    "festo.distributed.SiteCoordinatorAgent",
+                    new Object[] { siteId, shard, SITE_SHARDS }
+            );
+            coordinator.start();
+        }
+        System.out.println("✅ Agrégateur Site " + siteId + " créé (" + SITE_SHARDS + " shards)");
     }
 
+    // Arguments : id, type, site, capacité de file, temps de cycle (s), énergie, créneaux parallèles, shards du site
     private static void createAutonomousMachines(AgentContainer container)
             throws StaleProxyException {
         // M1 - Distributeur (Site A)
         AgentController m1 = container.createNewAgent(
                 "M1",
                 "festo.distributed.AutonomousMachineAgent",
-                new Object[] { "M1", "DISTRIBUTION", "A", 10, 2, 50.0 }
+                new Object[] { "M1", "DISTRIBUTION", "A", 10, 2, 50.0, 3, SITE_SHARDS }
         );
         m1.start();
         System.out.println("✅ M1 (Distributeur - Site A)");
@@ -132,7 +155,7 @@ public class DistributedSystemLauncher {
         AgentController m2 = container.createNewAgent(
                 "M2",
                 "festo.distributed.AutonomousMachineAgent",
-                new Object[] { "M2", "MACHINING", "A", 8, 5, 100.0 }
+                new Object[] { "M2", "MACHINING", "A", 8, 5, 100.0, 2, SITE_SHARDS }
         );
         m2.start();
         System.out.println("✅ M2 (Usinage - Site A)");
@@ -141,7 +164,7 @@ public class DistributedSystemLauncher {
         AgentController m3 = container.createNewAgent(
                 "M3",
                 "festo.distributed.AutonomousMachineAgent",
-                new Object[] { "M3", "ASSEMBLY", "B", 12, 3, 80.0 }
+                new Object[] { "M3", "ASSEMBLY", "B", 12, 3, 80.0, 4, SITE_SHARDS }
         );
         m3.start();
         System.out.println("✅ M3 (Assembleur - Site B)");
@@ -150,7 +173,7 @@ public class DistributedSystemLauncher {
         AgentController m4 = container.createNewAgent(
                 "M4",
                 "festo.distributed.AutonomousMachineAgent",
-                new Object[] { "M4", "QUALITY_CONTROL", "B", 15, 2, 60.0 }
+                new Object[] { "M4", "QUALITY_CONTROL", "B", 15, 2, 60.0, 3, SITE_SHARDS }
         );
         m4.start();
         System.out.println("✅ M4 (Contrôle Qualité - Site B)");
@@ -169,13 +192,15 @@ public class DistributedSystemLauncher {
 
     /**
      *  NOUVEAU: Créer le générateur de tâches
+     *  Arguments du lanceur transmis tels quels : [politique] [BATCH] [charge]
+     *  ex. P2C BATCH "STEP:start=2,step=2,every=20000,max=40,seed=7"
      */
-    private static void createTaskGenerator(AgentContainer container)
+    private static void createTaskGenerator(AgentContainer container, String[] args)
             throws StaleProxyException {
         AgentController generator = container.createNewAgent(
                 "TaskGenerator",
                 "festo.distributed.TaskGeneratorAgent",
-                new Object[0]
+                args.clone()
         );
         generator.start();
         System.out.println("✅ Générateur de Tâches créé");
@@ -6,7 +6,9 @@ import jade.core.AID;
 import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.lang.acl.ACLMessage;
+import festo.utils.LatencyHistogram;
 import festo.utils.Logger;
+import festo.protocol.*;
 import java.util.*;
 
 /**
@@ -34,6 +36,18 @@ public class GlobalSupervisorAgent extends Agent {
 
     private Map<String, Integer> sitePerformanceScores; // Score de performance de chaque site
 
+    // Protocole binaire (instances réutilisées pour le décodage)
+    private final MessageCodec codec = new MessageCodec();
+    private final SiteStatusMessage siteStatus = new SiteStatusMessage();
+
+    // Latences globales : fusion des histogrammes cumulés de chaque site au moment du rapport
+    private final LatencyHistogram globalEndToEnd = new LatencyHistogram();
+    private final LatencyHistogram globalQueueWait = new LatencyHistogram();
+    private final LatencyHistogram globalService = new LatencyHistogram();
+    private final EscalationMessage escalation = new EscalationMessage();
+    private MessageDispatcher dispatcher;
+    private PriorityMailbox mailbox; // escalades avant rapports de site
+
     protected void setup() {
         sites = new HashMap<>();
         interSiteConflicts = new LinkedList<>();
@@ -49,14 +63,16 @@ public class GlobalSupervisorAgent extends Agent {
 
         // Initialiser les ressources globales
         initializeGlobalResources();
+        registerHandlers();
+        mailbox = new PriorityMailbox(this, "Superviseur global");
 
         // Comportement 1 : Recevoir les messages (BOUCLE INFINIE)
 
         addBehaviour(new CyclicBehaviour(this) {
             public void action() {
-                ACLMessage msg = receive();
+                ACLMessage msg = mailbox.next(); // voie critique d'abord
                 if (msg != null) {
-                    handleMessage(msg);
+                    dispatcher.dispatch(msg);
                 } else {
                     block();
                 }
@@ -104,22 +120,18 @@ public class GlobalSupervisorAgent extends Agent {
         Logger.log("📦 Ressources globales initialisées");
     }
 
-    private void handleMessage(ACLMessage msg) {
-        String content = msg.getContent();
-        String sender = msg.getSender().getLocalName();
+    // Table de routage : un handler par type de message
+    private void registerHandlers() {
+        dispatcher = new MessageDispatcher("Superviseur global");
 
-        if (content.startsWith("REGISTER_SITE:")) {
-            handleSiteRegistration(msg);  // Un site s'enregistre
-        } else if (content.startsWith("SITE_STATUS:")) {
-            handleSiteStatusUpdate(msg); // Rapport d'un site
-        } else if (content.startsWith("ESCALATION:")) {
-            handleEscalation(msg); // Problème remonté par un site
-        } else if (content.startsWith("INTER_SITE_RESOURCE:")) {
-            handleInterSiteResourceRequest(msg); // Demande de ressource
-        } else if (content.startsWith("CONFLICT_INTER_SITE:")) {
-            handleInterSiteConflict(msg); // Conflit entre sites
+        dispatcher.on(MessageType.SITE_STATUS,
+                msg -> handleSiteStatusUpdate(codec.read(msg, siteStatus))); // Rapport d'un site
+        dispatcher.on(MessageType.ESCALATION,
+                msg -> handleEscalation(codec.read(msg, escalation))); // Problème remonté par un site
 
-        }
+        dispatcher.onKeyword("REGISTER_SITE", this::handleSiteRegistration);  // Un site s'enregistre
+        dispatcher.onKeyword("INTER_SITE_RESOURCE", this::handleInterSiteResourceRequest); // Demande de ressource
+        dispatcher.onKeyword("CONFLICT_INTER_SITE", this::handleInterSiteConflict); // Conflit entre sites
     }
 
     /**
@@ -146,32 +158,36 @@ public class GlobalSupervisorAgent extends Agent {
     }
 
     // Mise à jour du statut des sites
-    private void handleSiteStatusUpdate(ACLMessage msg) {
-        // Format: SITE_STATUS:SITE_ID:LOAD:X:MACHINES:Y:OPERATIONAL:Z:FAILURES:F:TASKS:T
-        String[] parts = msg.getContent().split(":");
-
-        if (parts.length >= 12) {
-            String siteId = parts[1];
-            double load = Double.parseDouble(parts[3].replace(",", "."));
-
-            int totalMachines = Integer.parseInt(parts[5]);
-            int operationalMachines = Integer.parseInt(parts[7]);
-            int failures = Integer.parseInt(parts[9]);
-            int tasks = Integer.parseInt(parts[11]);
-
-             // les infos sur site
-            SiteStatus status = sites.get(siteId);
-            if (status != null) {
-                status.load = load;
-                status.totalMachines = totalMachines;
-                status.operationalMachines = operationalMachines;
-                status.failures = failures;
-                status.tasksCompleted = tasks;
-                status.lastUpdate = System.currentTimeMillis();
-
-                // Mettre à jour le score de performance
-                updateSitePerformanceScore(siteId, status);
+    private void handleSiteStatusUpdate(SiteStatusMessage msg) {
+        String siteId = msg.getSiteId();
+        double load = msg.getLoad();
+
+        int totalMachines = msg.getTotalMachines();
+        int operationalMachines = msg.getOperationalMachines();
+        int failures = msg.getFailures();
+        int tasks = msg.getTasksCompleted();
+
+         // les infos sur site
+        SiteStatus status = sites.get(siteId);
+        if (status != null) {
+            status.load = load;
+            status.totalMachines = totalMachines;
+            status.operationalMachines = operationalMachines;
+            status.failures = failures;
+            status.tasksCompleted = tasks;
+            status.lastUpdate = System.currentTimeMillis();
+            if (msg.getEndToEnd() != null) {
+                // Cumulés depuis le démarrage du site : on remplace, on n'additionne pas
+                copy(msg.getEndToEnd(), status.endToEnd);
+                copy(msg.getQueueWait(), status.queueWait);
+                copy(msg.getService(), status.service);
             }
+            status.deadlineTasks = msg.getDeadlineTasks();
+            status.deadlineMisses = msg.getDeadlineMisses();
+            status.totalLatenessMs = msg.getTotalLatenessMs();
+
+            // Mettre à jour le score de performance
+            updateSitePerformanceScore(siteId, status);
         }
     }
 
@@ -190,14 +206,12 @@ public class GlobalSupervisorAgent extends Agent {
     }
 
     // Gestion des escalades
-    private void handleEscalation(ACLMessage msg) {
-        String[] parts = msg.getContent().split(":");
-        // "ESCALATION:Paris:FAILURE:M2:CRITICAL"
-
-        String siteId = parts[1];
-        String issue = parts[2]; // "FAILURE"
-        String machineId = parts[3];
-        String severity = parts[4]; // "CRITICAL"
+    private void handleEscalation(EscalationMessage msg) {
+        // Paris, FAILURE, M2, CRITICAL
+        String siteId = msg.getSiteId();
+        String issue = msg.getIssue(); // "FAILURE"
+        String machineId = msg.getMachineId();
+        String severity = msg.getSeverity(); // "CRITICAL"
 
         Logger.log("⚠️ ESCALATION reçue de " + siteId + ": " + issue +
                 " (" + machineId + " - " + severity + ")");
@@ -305,6 +319,8 @@ public class GlobalSupervisorAgent extends Agent {
             distributeLoadAcrossSites(siteId, availableSites);
         } else {
             decision.action = "THROTTLE";
+            decision.siteId = siteId;
+            decision.targetSite = siteId; // limiter le site surchargé, pas tous les sites
             decision.description = "Limitation temporaire des nouvelles tâches";
             Logger.log("🚦 Décision: Throttling activé");
         }
@@ -336,8 +352,8 @@ public class GlobalSupervisorAgent extends Agent {
             }
         }
 
-        directive.setContent("SUPERVISOR_DIRECTIVE:" + decision.action + ":" +
-                decision.machineId + ":" + decision.description);
+        codec.write(directive, new SupervisorDirectiveMessage().set(
+                decision.action, decision.machineId, decision.description));
         send(directive);
 
         conflictsResolved++; // Compter les conflits résolus
@@ -691,7 +707,8 @@ public class GlobalSupervisorAgent extends Agent {
         for (String siteId : sites.keySet()) {
             ACLMessage directive = new ACLMessage(ACLMessage.REQUEST);
             directive.addReceiver(new AID("SiteCoordinator_" + siteId, AID.ISLOCALNAME));
-            directive.setContent("SUPERVISOR_DIRECTIVE:REDUCE_LOAD:THROTTLE_NEW_TASKS");
+            codec.write(directive, new SupervisorDirectiveMessage().set(
+                    "REDUCE_LOAD", null, "THROTTLE_NEW_TASKS"));
             send(directive);
         }
     }
@@ -741,9 +758,55 @@ public class GlobalSupervisorAgent extends Agent {
             Logger.log("   " + entry.getKey() + ": " + entry.getValue() + "/100");
         }
 
+        printLatencyReport();
+
+        dispatcher.printStatistics();
+        mailbox.printStatistics();
+
         Logger.log("============================");
     }
 
+    // Percentiles par site puis globaux (fusion des seaux, pas moyenne des percentiles)
+    private void printLatencyReport() {
+        globalEndToEnd.reset();
+        globalQueueWait.reset();
+        globalService.reset();
+        long deadlineTasks = 0;
+        long deadlineMisses = 0;
+        Logger.log("⏱️ Latences de bout en bout par site:");
+        for (SiteStatus status : sites.values()) {
+            if (status.service.getCount() == 0) continue;
+            Logger.log("   " + status.siteId + ": " + status.endToEnd +
+                    " | attente p99=" + status.queueWait.percentile(99) +
+                    " ms | traitement p99=" + status.service.percentile(99) + " ms");
+            if (status.deadlineTasks > 0) {
+                Logger.log(String.format("   %s échéances: %d/%d manquées (%.1f%%), retard moy: %.0f ms",
+                        status.siteId, status.deadlineMisses, status.deadlineTasks,
+                        100.0 * status.deadlineMisses / status.deadlineTasks,
+                        status.deadlineMisses > 0 ? (double) status.totalLatenessMs / status.deadlineMisses : 0.0));
+            }
+            deadlineTasks += status.deadlineTasks;
+            deadlineMisses += status.deadlineMisses;
+            globalEndToEnd.add(status.endToEnd);
+            globalQueueWait.add(status.queueWait);
+            globalService.add(status.service);
+        }
+        if (globalService.getCount() > 0) {
+            Logger.log("🌐 Bout en bout global: " + globalEndToEnd);
+            Logger.log("🌐 Attente globale:     " + globalQueueWait);
+            Logger.log("🌐 Traitement global:   " + globalService);
+        }
+        if (deadlineTasks > 0) {
+            Logger.log(String.format("🌐 Échéances manquées: %d/%d (%.1f%%)",
+                    deadlineMisses, deadlineTasks, 100.0 * deadlineMisses / deadlineTasks));
+        }
+    }
+
+    private static void copy(LatencyHistogram from, LatencyHistogram into) {
+        into.reset();
+        into.add(from);
+    }
+
 
 
 
@@ -769,6 +832,12 @@ public class GlobalSupervisorAgent extends Agent {
         int failures;
         int tasksCompleted;
         long lastUpdate;
+        final LatencyHistogram endToEnd = new LatencyHistogram();
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        long deadlineTasks;
+        long deadlineMisses;
+        long totalLatenessMs;
 
         SiteStatus(String siteId) {
             this.siteId = siteId;
@@ -0,0 +1,209 @@
+package festo.distributed;
+
+import java.util.Arrays;
+
+/**
+ * Sélection de la machine la moins chargée sans parcourir tout le site.
+ *
+ * Les machines sont regroupées par ensemble de capacités (type de machine) ; chaque groupe
+ * est un arbre de segments dont chaque nœud garde la position de la plus petite charge
+ * de son intervalle. Une machine hors service a une charge infinie et n'est jamais choisie.
+ * Mise à jour en O(log n) ; « moins chargée compatible, sauf X » en O(g log n) pour g groupes
+ * compatibles (une poignée de types par site).
+ */
+public class LeastLoadIndex {
+
+    private static final double OUT_OF_SERVICE = Double.POSITIVE_INFINITY;
+
+    private Group[] groups = new Group[4];
+    private int groupCount;
+
+    // Par slot : groupe et position dans l'arbre du groupe, -1 si non inscrit
+    private int[] groupOf = new int[16];
+    private int[] positionOf = new int[16];
+    private double[] hiddenKeys = new double[8]; // charges écartées pendant une recherche des k moins chargées
+
+    public LeastLoadIndex() {
+        Arrays.fill(groupOf, -1);
+    }
+
+    /** Inscrit une machine (hors service tant qu'aucune charge n'est connue) ; sans effet si déjà inscrite avec ces capacités. */
+    public void register(int slot, long capabilityMask) {
+        ensureSlots(slot + 1);
+        if (groupOf[slot] >= 0) {
+            if (groups[groupOf[slot]].mask == capabilityMask) {
+                return;
+            }
+            // Capacités changées : la feuille quitte l'ancien groupe (la dernière prend sa place)
+            int moved = groups[groupOf[slot]].remove(positionOf[slot]);
+            if (moved >= 0) {
+                positionOf[moved] = positionOf[slot];
+            }
+        }
+        int g = groupFor(capabilityMask);
+        groupOf[slot] = g;
+        positionOf[slot] = groups[g].add(slot);
+    }
+
+    public void update(int slot, double load, boolean operational) {
+        if (slot < groupOf.length && groupOf[slot] >= 0) {
+            groups[groupOf[slot]].set(positionOf[slot], operational ? load : OUT_OF_SERVICE);
+        }
+    }
+
+    /**
+     * Machine opérationnelle la moins chargée couvrant toutes les capacités demandées.
+     * @param neededMask capacités exigées (0 = n'importe quelle machine)
+     * @param excludeSlot machine à écarter (la source d'un équilibrage), -1 sinon
+     * @return son slot, -1 si aucune
+     */
+    public int leastLoaded(long neededMask, int excludeSlot) {
+        double hidden = hide(excludeSlot);
+        int best = -1;
+        double bestLoad = OUT_OF_SERVICE;
+        for (int g = 0; g < groupCount; g++) {
+            Group group = groups[g];
+            if ((group.mask & neededMask) != neededMask) continue;
+            int position = group.min();
+            if (position >= 0 && group.keys[position] < bestLoad) {
+                bestLoad = group.keys[position];
+                best = group.slots[position];
+            }
+        }
+        unhide(excludeSlot, hidden);
+        return best;
+    }
+
+    /**
+     * Les k machines compatibles les moins chargées, par charge croissante.
+     * @return nombre de slots écrits dans {@code into} (au plus k)
+     */
+    public int leastLoaded(long neededMask, int excludeSlot, int k, int[] into) {
+        int count = 0;
+        int limit = Math.min(k, into.length);
+        if (hiddenKeys.length < limit) {
+            hiddenKeys = new double[limit];
+        }
+        for (; count < limit; count++) {
+            int slot = leastLoaded(neededMask, excludeSlot);
+            if (slot < 0) break;
+            into[count] = slot;
+            hiddenKeys[count] = hide(slot); // écartée pour trouver la suivante
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            unhide(into[i], hiddenKeys[i]);
+        }
+        return count;
+    }
+
+    private double hide(int slot) {
+        if (slot < 0 || slot >= groupOf.length || groupOf[slot] < 0) {
+            return OUT_OF_SERVICE;
+        }
+        Group group = groups[groupOf[slot]];
+        double key = group.keys[positionOf[slot]];
+        group.set(positionOf[slot], OUT_OF_SERVICE);
+        return key;
+    }
+
+    private void unhide(int slot, double key) {
+        if (slot >= 0 && slot < groupOf.length && groupOf[slot] >= 0) {
+            groups[groupOf[slot]].set(positionOf[slot], key);
+        }
+    }
+
+    private int groupFor(long mask) {
+        for (int g = 0; g < groupCount; g++) {
+            if (groups[g].mask == mask) return g;
+        }
+        if (groupCount == groups.length) {
+            groups = Arrays.copyOf(groups, groupCount * 2);
+        }
+        groups[groupCount] = new Group(mask);
+        return groupCount++;
+    }
+
+    private void ensureSlots(int capacity) {
+        if (capacity > groupOf.length) {
+            int oldLength = groupOf.length;
+            int newLength = Math.max(capacity, oldLength * 2);
+            groupOf = Arrays.copyOf(groupOf, newLength);
+            positionOf = Arrays.copyOf(positionOf, newLength);
+            Arrays.fill(groupOf, oldLength, newLength, -1);
+        }
+    }
+
+    /** Arbre de segments d'un groupe : tree[n] = position de la plus petite charge sous n, -1 si aucune. */
+    private static final class Group {
+        final long mask;
+        int size;
+        int capacity = 8;
+        int[] slots = new int[capacity];
+        double[] keys = new double[capacity];
+        int[] tree = new int[2 * capacity];
+
+        Group(long mask) {
+            this.mask = mask;
+            Arrays.fill(tree, -1);
+        }
+
+        int add(int slot) {
+            if (size == capacity) {
+                grow();
+            }
+            slots[size] = slot;
+            set(size, OUT_OF_SERVICE);
+            return size++;
+        }
+
+        /**
+         * Retire la feuille : la dernière prend sa place.
+         * @return slot de la feuille déplacée, -1 si c'était la dernière
+         */
+        int remove(int position) {
+            int last = size - 1;
+            int moved = -1;
+            if (position != last) {
+                moved = slots[last];
+                slots[position] = moved;
+                set(position, keys[last]);
+            }
+            set(last, OUT_OF_SERVICE);
+            size--;
+            return moved;
+        }
+
+        void set(int position, double key) {
+            keys[position] = key;
+            int node = capacity + position;
+            tree[node] = key < OUT_OF_SERVICE ? position : -1;
+            for (node >>= 1; node >= 1; node >>= 1) {
+                tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        int min() {
+            return tree[1];
+        }
+
+        private int better(int a, int b) {
+            if (a < 0) return b;
+            if (b < 0) return a;
+            return keys[b] < keys[a] ? b : a;
+        }
+
+        private void grow() {
+            capacity *= 2;
+            slots = Arrays.copyOf(slots, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            tree = new int[2 * capacity];
+            Arrays.fill(tree, -1);
+            for (int i = 0; i < size; i++) {
+                tree[capacity + i] = keys[i] < OUT_OF_SERVICE ? i : -1;
+            }
+            for (int node = capacity - 1; node >= 1; node--) {
+                tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+    }
+}
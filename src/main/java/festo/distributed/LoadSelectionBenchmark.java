@@ -0,0 +1,133 @@
+package festo.distributed;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Banc d'essai : choix de la machine la moins chargée d'un site (5 000 machines par défaut).
+ *
+ * Chaque opération applique un état de machine (charge, parfois panne / reprise) puis demande
+ * « la moins chargée compatible avec la machine X, sauf X », comme une demande d'équilibrage.
+ * Phase 1 : parcours de la HashMap des machines (ancienne version de SiteCoordinatorAgent).
+ * Phase 2 : {@link LeastLoadIndex} (version actuelle).
+ *
+ * Les deux phases rejouent la même suite d'opérations ; les sommes de contrôle doivent être égales.
+ *
+ * Lancement : java festo.distributed.LoadSelectionBenchmark [nombreDeMachines] [opérations]
+ */
+public class LoadSelectionBenchmark {
+
+    private static final String[] TYPES = { "DISTRIBUTION", "MACHINING", "ASSEMBLY", "QUALITY_CONTROL" };
+    private static final double FAILURE_TOGGLE_RATE = 0.02;
+    private static final int ROUNDS = 5; // la première sert de chauffe
+
+    public static void main(String[] args) {
+        int machines = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        // Même suite d'opérations pour les deux phases
+        Random random = new Random(42);
+        String[] types = new String[machines];
+        for (int i = 0; i < machines; i++) {
+            types[i] = TYPES[random.nextInt(TYPES.length)];
+        }
+        int[] target = new int[operations];
+        double[] loads = new double[operations];
+        boolean[] toggle = new boolean[operations];
+        int[] requester = new int[operations];
+        for (int i = 0; i < operations; i++) {
+            target[i] = random.nextInt(machines);
+            loads[i] = random.nextInt(1000) / 10.0;
+            toggle[i] = random.nextDouble() < FAILURE_TOGGLE_RATE;
+            requester[i] = random.nextInt(machines);
+        }
+
+        System.out.println("⚖️ Banc d'essai choix de la moins chargée - " + machines + " machines, " +
+                operations + " opérations");
+        System.out.printf("%-22s %12s %14s%n", "Sélection", "ns / op", "contrôle");
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+            runScan(types, target, loads, toggle, requester, report);
+            runIndex(types, target, loads, toggle, requester, report);
+        }
+    }
+
+    // Phase 1 : parcours complet à chaque demande
+    private static void runScan(String[] types, int[] target, double[] loads, boolean[] toggle,
+                                int[] requester, boolean report) {
+        Map<String, ScannedMachine> machines = new HashMap<>();
+        String[] ids = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            ids[i] = "M" + i;
+            ScannedMachine machine = new ScannedMachine();
+            machine.machineType = types[i];
+            machine.operational = true;
+            machines.put(ids[i], machine);
+        }
+
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int op = 0; op < target.length; op++) {
+            ScannedMachine updated = machines.get(ids[target[op]]);
+            updated.load = loads[op];
+            if (toggle[op]) updated.operational = !updated.operational;
+
+            String exclude = ids[requester[op]];
+            long needed = Capability.maskOf(machines.get(exclude).machineType);
+            String bestMachine = null;
+            double minLoad = Double.MAX_VALUE;
+            for (Map.Entry<String, ScannedMachine> entry : machines.entrySet()) {
+                ScannedMachine candidate = entry.getValue();
+                if (!entry.getKey().equals(exclude) && candidate.operational
+                        && (Capability.maskOf(candidate.machineType) & needed) == needed
+                        && candidate.load < minLoad) {
+                    minLoad = candidate.load;
+                    bestMachine = entry.getKey();
+                }
+            }
+            checksum += bestMachine != null ? Math.round(minLoad * 10) : -1;
+        }
+        print("Parcours HashMap", start, target.length, checksum, report);
+    }
+
+    // Phase 2 : arbres de segments par type de machine
+    private static void runIndex(String[] types, int[] target, double[] loads, boolean[] toggle,
+                                 int[] requester, boolean report) {
+        LeastLoadIndex index = new LeastLoadIndex();
+        double[] load = new double[types.length];
+        boolean[] operational = new boolean[types.length];
+        long[] masks = new long[types.length];
+        for (int slot = 0; slot < types.length; slot++) {
+            masks[slot] = Capability.maskOf(types[slot]);
+            index.register(slot, masks[slot]);
+            operational[slot] = true;
+            index.update(slot, 0.0, true);
+        }
+
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int op = 0; op < target.length; op++) {
+            int slot = target[op];
+            load[slot] = loads[op];
+            if (toggle[op]) operational[slot] = !operational[slot];
+            index.update(slot, load[slot], operational[slot]);
+
+            int best = index.leastLoaded(masks[requester[op]], requester[op]);
+            checksum += best >= 0 ? Math.round(load[best] * 10) : -1;
+        }
+        print("LeastLoadIndex", start, target.length, checksum, report);
+    }
+
+    private static void print(String name, long start, int operations, long checksum, boolean report) {
+        if (report) {
+            System.out.printf("%-22s %12.1f %14d%n", name, (System.nanoTime() - start) / (double) operations, checksum);
+        }
+    }
+
+    private static class ScannedMachine {
+        String machineType;
+        boolean operational;
+        double load;
+    }
+}
@@ -0,0 +1,87 @@
+package festo.distributed;
+
+import festo.protocol.SiteDigestView;
+import java.util.*;
+
+/**
+ * Photo de la charge des machines côté générateur, indexée comme le {@link CreditLedger}.
+ *
+ * Alimentée par les SITE_DIGEST des coordinateurs et par les réponses des machines.
+ * Entre deux digests, chaque envoi incrémente la file estimée de la machine choisie :
+ * les politiques ne se ruent pas toutes sur la même machine avec une photo périmée.
+ */
+public class LoadSnapshot {
+
+    private final Map<String, Integer> indexById = new HashMap<>();
+    private final String[] machineIds;
+    private final double[] loads;
+    private final int[] queueSizes;
+    private final int[] capacities;      // file + places libres, connue après le premier digest
+    private final boolean[] operational;
+    private final long[] updatedAt;
+
+    public LoadSnapshot(List<String> machineIds) {
+        this.machineIds = machineIds.toArray(new String[0]);
+        int n = this.machineIds.length;
+        this.loads = new double[n];
+        this.queueSizes = new int[n];
+        this.capacities = new int[n];
+        this.operational = new boolean[n];
+        this.updatedAt = new long[n];
+        for (int i = 0; i < n; i++) {
+            indexById.put(this.machineIds[i], i);
+            operational[i] = true; // inconnue = supposée disponible
+        }
+    }
+
+    /** Recopie l'état des machines d'un site après application d'un digest. */
+    public void update(SiteDigestView view, long now) {
+        for (int slot = 0; slot < view.size(); slot++) {
+            Integer index = indexOf(view.getMachineId(slot));
+            if (index == null) continue;
+
+            loads[index] = view.getLoad(slot);
+            queueSizes[index] = view.getQueueSize(slot);
+            capacities[index] = view.getQueueSize(slot) + view.getFreeCapacity(slot);
+            operational[index] = view.isOperational(slot);
+            updatedAt[index] = now;
+        }
+    }
+
+    /** Charge remontée par un refus de tâche. */
+    public void updateLoad(String machineId, double load, long now) {
+        Integer index = indexOf(machineId);
+        if (index != null) {
+            loads[index] = load;
+            updatedAt[index] = now;
+        }
+    }
+
+    /** Tâche envoyée : file estimée +1 jusqu'au prochain digest. */
+    public void onDispatch(int index) {
+        queueSizes[index]++;
+    }
+
+    public Integer indexOf(String machineId) {
+        return machineId != null ? indexById.get(machineId) : null;
+    }
+
+    public int size() { return machineIds.length; }
+    public String getMachineId(int index) { return machineIds[index]; }
+    public double getLoad(int index) { return loads[index]; }
+    public int getQueueSize(int index) { return queueSizes[index]; }
+    public int getCapacity(int index) { return capacities[index]; }
+    public boolean isOperational(int index) { return operational[index]; }
+    public long getUpdatedAt(int index) { return updatedAt[index]; }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < machineIds.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(String.format("%s=%.0f%%/%d", machineIds[i], loads[i], queueSizes[i]));
+            if (!operational[i]) sb.append("❌");
+        }
+        return sb.toString();
+    }
+}
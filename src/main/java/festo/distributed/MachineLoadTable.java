@@ -0,0 +1,259 @@
+package festo.distributed;
+
+import java.util.Arrays;
+
+/**
+ * Table de charge vivante des machines d'un site, alimentée par leurs MACHINE_STATE.
+ *
+ * Une colonne par grandeur (charge, file, places libres, état) sur le même index dense
+ * que {@link CapabilityIndex} ; l'état opérationnel est un ensemble de bits.
+ * Chaque entrée garde le numéro de séquence du dernier état accepté : un état plus ancien
+ * (doublé par un autre dans la boîte aux lettres) est ignoré au lieu d'écraser le plus récent.
+ * Un {@link LeastLoadIndex} suit chaque mise à jour pour les choix de placement.
+ *
+ * Les agrégats du site (somme des charges, total des files, machines opérationnelles, par capacité)
+ * sont tenus à jour en O(1) à chaque événement ; {@link #audit()} les recompare à un recomptage complet.
+ */
+public class MachineLoadTable {
+
+    /** Séquence des machines d'avant la v8 : toujours acceptée. */
+    public static final int NO_SEQUENCE = 0;
+
+    private double[] load = new double[16];
+    private int[] queue = new int[16];
+    private int[] freeCapacity = new int[16];
+    private int[] version = new int[16];      // séquence du dernier état accepté
+    private long[] updatedAt = new long[16];  // réception du dernier état accepté, 0 si jamais
+    private long[] operational = new long[1];
+    private long[] registered = new long[1];
+    private long[] masks = new long[16];
+    private int size;
+
+    // Agrégats courants
+    private double loadSum;
+    private long queueTotal;
+    private int registeredCount;
+    private int operationalCount;
+    private final int[] operationalByCapability = new int[Capability.count()];
+    private long audits;
+    private long driftsFound;
+    private final LeastLoadIndex leastLoad = new LeastLoadIndex();
+
+    private long updates;
+    private long staleReadings;
+
+    /**
+     * (Ré)inscription d'une machine : l'entrée repart de zéro, la séquence aussi
+     * (une machine redémarrée recommence sa numérotation).
+     */
+    public void reset(int slot, long capabilityMask, int capacity, boolean isOperational) {
+        ensureCapacity(slot + 1);
+        if (CapabilityIndex.contains(registered, slot)) {
+            setOperational(slot, false); // retire l'ancienne entrée des agrégats
+            loadSum -= load[slot];
+            queueTotal -= queue[slot];
+        } else {
+            registered[slot >>> 6] |= 1L << slot;
+            registeredCount++;
+        }
+        masks[slot] = capabilityMask;
+        leastLoad.register(slot, capabilityMask);
+        load[slot] = 0.0;
+        queue[slot] = 0;
+        freeCapacity[slot] = capacity;
+        version[slot] = NO_SEQUENCE;
+        updatedAt[slot] = 0;
+        setOperational(slot, isOperational);
+    }
+
+    /**
+     * Applique un état reçu en O(1).
+     * @param sequence numéro croissant de l'état côté machine, NO_SEQUENCE si inconnu
+     * @return false si l'état est plus ancien que celui déjà en table (ignoré)
+     */
+    public boolean update(int slot, int sequence, double machineLoad, int queueSize, int free,
+                          boolean isOperational, long now) {
+        if (slot >= size) {
+            return false; // machine pas encore inscrite
+        }
+        if (sequence != NO_SEQUENCE && version[slot] != NO_SEQUENCE && sequence - version[slot] <= 0) {
+            staleReadings++;
+            return false;
+        }
+        loadSum += machineLoad - load[slot];
+        queueTotal += queueSize - queue[slot];
+        load[slot] = machineLoad;
+        queue[slot] = queueSize;
+        freeCapacity[slot] = free;
+        version[slot] = sequence;
+        updatedAt[slot] = now;
+        setOperational(slot, isOperational);
+        updates++;
+        return true;
+    }
+
+    /**
+     * Panne signalée par la machine : sa séquence devient celle de l'entrée, de sorte qu'un état
+     * envoyé avant la panne mais traité après (voie télémétrie derrière la voie critique)
+     * soit ignoré au lieu de la remettre en service.
+     * @param sequence séquence de la panne, NO_SEQUENCE si inconnue (machine d'avant la v11)
+     */
+    public void markFailed(int slot, int sequence) {
+        if (slot >= size) {
+            return;
+        }
+        if (sequence != NO_SEQUENCE && (version[slot] == NO_SEQUENCE || sequence - version[slot] > 0)) {
+            version[slot] = sequence;
+        }
+        setOperational(slot, false);
+    }
+
+    /** Panne ou reprise connue du coordinateur sans état de la machine. */
+    public void setOperational(int slot, boolean isOperational) {
+        if (isOperational != isOperational(slot)) {
+            int delta = isOperational ? 1 : -1;
+            operationalCount += delta;
+            for (int c = 0; c < operationalByCapability.length; c++) {
+                if ((masks[slot] & (1L << c)) != 0) operationalByCapability[c] += delta;
+            }
+        }
+        if (isOperational) {
+            operational[slot >>> 6] |= 1L << slot;
+        } else {
+            operational[slot >>> 6] &= ~(1L << slot);
+        }
+        leastLoad.update(slot, load[slot], isOperational);
+    }
+
+    /** Machine opérationnelle la moins chargée couvrant {@code neededMask}, hors {@code excludeSlot} ; -1 si aucune. */
+    public int leastLoaded(long neededMask, int excludeSlot) {
+        return leastLoad.leastLoaded(neededMask, excludeSlot);
+    }
+
+    /** Les k moins chargées (voir {@link LeastLoadIndex#leastLoaded(long, int, int, int[])}). */
+    public int leastLoaded(long neededMask, int excludeSlot, int k, int[] into) {
+        return leastLoad.leastLoaded(neededMask, excludeSlot, k, into);
+    }
+
+    public double load(int slot) { return load[slot]; }
+    public int queue(int slot) { return queue[slot]; }
+    public int freeCapacity(int slot) { return freeCapacity[slot]; }
+    public int version(int slot) { return version[slot]; }
+    public boolean isOperational(int slot) { return CapabilityIndex.contains(operational, slot); }
+
+    /** Âge du dernier état accepté, -1 si aucun reçu depuis l'inscription. */
+    public long ageMs(int slot, long now) {
+        return updatedAt[slot] != 0 ? now - updatedAt[slot] : -1;
+    }
+
+    /** Machines opérationnelles (ensemble de bits, à parcourir avec {@link CapabilityIndex#nextSetBit}). */
+    public long[] operationalSet() {
+        return operational;
+    }
+
+    public int operationalCount() {
+        return operationalCount;
+    }
+
+    /** Machines opérationnelles qui couvrent une capacité. */
+    public int operationalCount(Capability capability) {
+        return operationalByCapability[capability.ordinal()];
+    }
+
+    /** Charge moyenne de toutes les machines inscrites. */
+    public double averageLoad() {
+        return registeredCount > 0 ? loadSum / registeredCount : 0;
+    }
+
+    public int totalQueue() {
+        return (int) queueTotal;
+    }
+
+    public int registeredCount() { return registeredCount; }
+
+    /**
+     * Recompte tous les agrégats et les compare aux valeurs courantes ; en cas d'écart,
+     * les valeurs recomptées remplacent les courantes.
+     * @return description des écarts, null si aucun
+     */
+    public String audit() {
+        audits++;
+        double recountLoad = 0;
+        long recountQueue = 0;
+        int recountRegistered = 0;
+        int[] recountByCapability = new int[operationalByCapability.length];
+        for (int slot = CapabilityIndex.nextSetBit(registered, 0); slot >= 0;
+             slot = CapabilityIndex.nextSetBit(registered, slot + 1)) {
+            recountRegistered++;
+            recountLoad += load[slot];
+            recountQueue += queue[slot];
+            if (isOperational(slot)) {
+                for (int c = 0; c < recountByCapability.length; c++) {
+                    if ((masks[slot] & (1L << c)) != 0) recountByCapability[c]++;
+                }
+            }
+        }
+        int recountOperational = CapabilityIndex.count(operational);
+
+        StringBuilder drift = new StringBuilder();
+        if (Math.abs(recountLoad - loadSum) > 1e-6 * Math.max(1.0, recountLoad)) {
+            drift.append(String.format(" somme des charges %.3f≠%.3f", loadSum, recountLoad));
+        }
+        if (recountQueue != queueTotal) {
+            drift.append(" files ").append(queueTotal).append("≠").append(recountQueue);
+        }
+        if (recountRegistered != registeredCount) {
+            drift.append(" inscrites ").append(registeredCount).append("≠").append(recountRegistered);
+        }
+        if (recountOperational != operationalCount) {
+            drift.append(" opérationnelles ").append(operationalCount).append("≠").append(recountOperational);
+        }
+        for (int c = 0; c < recountByCapability.length; c++) {
+            if (recountByCapability[c] != operationalByCapability[c]) {
+                drift.append(' ').append(Capability.values()[c]).append(' ')
+                        .append(operationalByCapability[c]).append("≠").append(recountByCapability[c]);
+            }
+        }
+
+        // Resynchronisation (les arrondis de la somme des charges s'effacent aussi)
+        loadSum = recountLoad;
+        queueTotal = recountQueue;
+        registeredCount = recountRegistered;
+        operationalCount = recountOperational;
+        System.arraycopy(recountByCapability, 0, operationalByCapability, 0, recountByCapability.length);
+        if (drift.length() == 0) {
+            return null;
+        }
+        driftsFound++;
+        return drift.toString().trim();
+    }
+
+    public int size() { return size; }
+    public long getUpdates() { return updates; }
+    public long getStaleReadings() { return staleReadings; }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > load.length) {
+            int newLength = Math.max(capacity, load.length * 2);
+            load = Arrays.copyOf(load, newLength);
+            queue = Arrays.copyOf(queue, newLength);
+            freeCapacity = Arrays.copyOf(freeCapacity, newLength);
+            version = Arrays.copyOf(version, newLength);
+            updatedAt = Arrays.copyOf(updatedAt, newLength);
+            masks = Arrays.copyOf(masks, newLength);
+        }
+        int words = (capacity + 63) >>> 6;
+        if (words > operational.length) {
+            operational = Arrays.copyOf(operational, words);
+            registered = Arrays.copyOf(registered, words);
+        }
+        size = Math.max(size, capacity);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d machines, %d opérationnelles, charge moy %.1f%%, file %d | %d états, " +
+                        "%d périmés ignorés | %d audits, %d écarts", registeredCount, operationalCount, averageLoad(),
+                totalQueue(), updates, staleReadings, audits, driftsFound);
+    }
+}
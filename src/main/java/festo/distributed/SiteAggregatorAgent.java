@@ -0,0 +1,316 @@
+package festo.distributed;
+
+import jade.core.Agent;
+import jade.core.AID;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.lang.acl.ACLMessage;
+import festo.protocol.*;
+import festo.utils.LatencyHistogram;
+
+/**
+ * Agrégateur d'un grand site - Niveau 2
+ * Les machines du site sont réparties entre N coordinateurs (shards) par hachage cohérent
+ * de leur identifiant. L'agrégateur porte le nom du coordinateur du site : le superviseur
+ * et le générateur continuent de voir un seul site logique.
+ * Il fusionne les SITE_STATUS des shards, relaie directives et escalades,
+ * et équilibre entre shards à partir des candidates qu'ils lui signalent.
+ */
+public class SiteAggregatorAgent extends Agent {
+
+    private static final long SHARD_STATUS_TTL_MS = 20000; // shard muet depuis : machines comptées hors service
+
+    private String siteId;
+    private int shardCount;
+    private ConsistentHashRing ring;
+    private AID globalSupervisorAID;
+    private AID[] shardAIDs;
+
+    // Dernier rapport de chaque shard (une instance par shard : les histogrammes lus y sont conservés)
+    private SiteStatusMessage[] shardReports;
+    private long[] shardReportedAt;
+    private boolean[] candidatesPlanned; // candidates déjà utilisées par un plan, en attente du rapport suivant
+
+    // Rapport fusionné
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private final LatencyHistogram queueWaitLatency = new LatencyHistogram();
+    private final LatencyHistogram serviceLatency = new LatencyHistogram();
+
+    // Équilibrage entre shards
+    private final TransferPlanner planner = new TransferPlanner();
+    private final TransferTasksMessage transferPlan = new TransferTasksMessage();
+    private int transferPlanSequence;
+    private int tasksMoved;
+
+    private final MessageCodec codec = new MessageCodec();
+    private MessageDispatcher dispatcher;
+    private PriorityMailbox mailbox;
+    private int relayed;
+
+    /*
+     * Noms et répartition (partagés par le lanceur, les coordinateurs et les machines)
+     */
+
+    /** Nom d'agent du coordinateur : "SiteCoordinator_A" (site ou agrégateur), "SiteCoordinator_A_1" (shard). */
+    public static String coordinatorName(String siteId, int shard) {
+        return shard >= 0 ? "SiteCoordinator_" + siteId + "_" + shard : "SiteCoordinator_" + siteId;
+    }
+
+    /** Identifiant d'un shard dans les digests et rapports : "A", ou "A#1". */
+    public static String shardLabel(String siteId, int shard) {
+        return shard >= 0 ? siteId + "#" + shard : siteId;
+    }
+
+    protected void setup() {
+        // Arguments : { site, nombre de shards }
+        Object[] args = getArguments();
+        if (args != null && args.length >= 2) {
+            siteId = (String) args[0];
+            shardCount = (Integer) args[1];
+        }
+        ring = new ConsistentHashRing(shardCount);
+        globalSupervisorAID = new AID("GlobalSupervisor", AID.ISLOCALNAME);
+        shardAIDs = new AID[shardCount];
+        shardReports = new SiteStatusMessage[shardCount];
+        shardReportedAt = new long[shardCount];
+        candidatesPlanned = new boolean[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardAIDs[i] = new AID(coordinatorName(siteId, i), AID.ISLOCALNAME);
+            shardReports[i] = new SiteStatusMessage();
+        }
+
+        System.out.println("🏢 Agrégateur Site " + siteId + " démarré (" + shardCount + " shards)");
+
+        registerWithSupervisor();
+        registerHandlers();
+        mailbox = new PriorityMailbox(this, "Agrégateur " + siteId);
+
+        // Comportement 1 : recevoir les messages (voie critique d'abord)
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                ACLMessage msg = mailbox.next();
+                if (msg != null) {
+                    dispatcher.dispatch(msg);
+                } else {
+                    block();
+                }
+            }
+        });
+
+        // Comportement 2 : Rapport fusionné au superviseur toutes les 7 secondes
+        addBehaviour(new TickerBehaviour(this, 7000) {
+            protected void onTick() {
+                reportToSupervisor();
+            }
+        });
+
+        // Comportement 3 : Équilibrage entre shards toutes les 6 secondes
+        addBehaviour(new TickerBehaviour(this, 6000) {
+            protected void onTick() {
+                balanceAcrossShards();
+            }
+        });
+    }
+
+    // Le site est inscrit une seule fois, sous son nom habituel
+    private void registerWithSupervisor() {
+        ACLMessage register = new ACLMessage(ACLMessage.SUBSCRIBE);
+        register.addReceiver(globalSupervisorAID);
+        register.setContent("REGISTER_SITE:" + siteId);
+        send(register);
+        System.out.println("📝 Site " + siteId + " enregistré auprès du superviseur");
+    }
+
+    private void registerHandlers() {
+        dispatcher = new MessageDispatcher("Agrégateur " + siteId);
+
+        // Montée : rapports des shards, escalades relayées au superviseur
+        dispatcher.on(MessageType.SITE_STATUS, this::handleShardStatus);
+        dispatcher.on(MessageType.ESCALATION, msg -> relay(msg, globalSupervisorAID));
+
+        // Descente : directives pour tout le site, tâches inter-sites vers un seul shard
+        dispatcher.on(MessageType.SUPERVISOR_DIRECTIVE, msg -> relay(msg, shardAIDs));
+        dispatcher.onKeyword("INTER_SITE_TASK", this::handleInterSiteTask);
+
+        dispatcher.onDefault(msg -> {
+            if (msg.getPerformative() == ACLMessage.CONFIRM) {
+                System.out.println("✅ Confirmation superviseur: " + msg.getContent());
+            } else if (globalSupervisorAID.getLocalName().equals(msg.getSender().getLocalName())) {
+                relay(msg, shardAIDs); // autre ordre du superviseur : tous les shards
+            }
+        });
+    }
+
+    private void handleShardStatus(ACLMessage msg) {
+        int shard = shardIndexOf(msg.getSender().getLocalName());
+        if (shard < 0) {
+            System.out.println("⚠️ Agrégateur " + siteId + " - rapport d'un inconnu: " +
+                    msg.getSender().getLocalName());
+            return;
+        }
+        codec.read(msg, shardReports[shard]);
+        shardReportedAt[shard] = System.currentTimeMillis();
+        candidatesPlanned[shard] = false;
+    }
+
+    // "INTER_SITE_TASK:T99:..." : le shard propriétaire de la tâche sur l'anneau
+    private void handleInterSiteTask(ACLMessage msg) {
+        String[] parts = msg.getContent().split(":");
+        if (parts.length >= 2) {
+            relay(msg, shardAIDs[ring.shardOf(parts[1])]);
+        }
+    }
+
+    /**
+     * Rapport fusionné : sommes des shards, charge moyenne pondérée par le nombre de machines,
+     * histogrammes additionnés (cumulés depuis le démarrage, comme ceux d'un site unique).
+     */
+    private void reportToSupervisor() {
+        long now = System.currentTimeMillis();
+        int reporting = 0;
+        int totalMachines = 0;
+        int operationalMachines = 0;
+        int failures = 0;
+        int tasksCompleted = 0;
+        double loadSum = 0;
+        long deadlineTasks = 0;
+        long deadlineMisses = 0;
+        long totalLatenessMs = 0;
+        boolean latency = false;
+        endToEndLatency.reset();
+        queueWaitLatency.reset();
+        serviceLatency.reset();
+
+        for (int i = 0; i < shardCount; i++) {
+            if (shardReportedAt[i] == 0) continue;
+            SiteStatusMessage report = shardReports[i];
+            reporting++;
+            totalMachines += report.getTotalMachines();
+            if (now - shardReportedAt[i] <= SHARD_STATUS_TTL_MS) {
+                operationalMachines += report.getOperationalMachines();
+            }
+            failures += report.getFailures();
+            tasksCompleted += report.getTasksCompleted();
+            loadSum += report.getLoad() * report.getTotalMachines();
+            deadlineTasks += report.getDeadlineTasks();
+            deadlineMisses += report.getDeadlineMisses();
+            totalLatenessMs += report.getTotalLatenessMs();
+            if (report.getEndToEnd() != null) {
+                endToEndLatency.add(report.getEndToEnd());
+                queueWaitLatency.add(report.getQueueWait());
+                serviceLatency.add(report.getService());
+                latency = true;
+            }
+        }
+        if (reporting == 0) {
+            return;
+        }
+
+        SiteStatusMessage status = new SiteStatusMessage().set(
+                siteId, totalMachines > 0 ? loadSum / totalMachines : 0, totalMachines,
+                operationalMachines, failures, tasksCompleted)
+                .withDeadlines(deadlineTasks, deadlineMisses, totalLatenessMs);
+        if (latency) {
+            status.withLatency(endToEndLatency, queueWaitLatency, serviceLatency);
+        }
+        ACLMessage report = new ACLMessage(ACLMessage.INFORM);
+        report.addReceiver(globalSupervisorAID);
+        codec.write(report, status);
+        send(report);
+    }
+
+    /**
+     * Équilibrage entre shards : les sources restées surchargées après le plan de leur shard
+     * sont appariées aux receveuses des autres shards. Le plan part directement aux sources.
+     */
+    private void balanceAcrossShards() {
+        long now = System.currentTimeMillis();
+        planner.clear();
+        int donors = 0;
+        for (int i = 0; i < shardCount; i++) {
+            if (shardReportedAt[i] == 0 || candidatesPlanned[i] || now - shardReportedAt[i] > SHARD_STATUS_TTL_MS) {
+                continue;
+            }
+            SiteStatusMessage report = shardReports[i];
+            for (int c = 0; c < report.getCandidateCount(); c++) {
+                boolean donor = report.isCandidateDonor(c);
+                planner.add(report.getCandidateId(c), report.getCandidateMask(c), report.getCandidateQueue(c),
+                        report.getCandidateFree(c), donor ? TransferPlanner.DONOR : TransferPlanner.RECEIVER);
+                if (donor) donors++;
+            }
+        }
+        if (donors == 0) {
+            return;
+        }
+
+        transferPlan.begin(siteId, transferPlanSequence + 1);
+        if (planner.plan(transferPlan) == 0) {
+            return;
+        }
+        transferPlanSequence++;
+        tasksMoved += transferPlan.totalCount();
+        // Shards touchés par le plan : attendre leur rapport frais avant de replanifier leurs machines
+        for (int i = 0; i < transferPlan.size(); i++) {
+            candidatesPlanned[ring.shardOf(transferPlan.getSourceId(i))] = true;
+            candidatesPlanned[ring.shardOf(transferPlan.getTargetId(i))] = true;
+        }
+
+        ACLMessage plan = new ACLMessage(ACLMessage.REQUEST);
+        for (int i = 0; i < transferPlan.size(); i++) {
+            boolean seen = false;
+            for (int j = 0; j < i && !seen; j++) {
+                seen = transferPlan.getSourceId(j).equals(transferPlan.getSourceId(i));
+            }
+            if (!seen) {
+                plan.addReceiver(new AID(transferPlan.getSourceId(i), AID.ISLOCALNAME));
+            }
+        }
+        codec.write(plan, transferPlan);
+        send(plan);
+
+        System.out.println("⚖️ Équilibrage entre shards du site " + siteId + " - plan " + transferPlanSequence +
+                ": " + transferPlan.totalCount() + " tâche(s) en " + transferPlan.size() + " mouvement(s)");
+        for (int i = 0; i < transferPlan.size(); i++) {
+            System.out.println("   " + transferPlan.getSourceId(i) + " → " + transferPlan.getTargetId(i) +
+                    " : " + transferPlan.getCount(i));
+        }
+    }
+
+    // Copie d'un message vers d'autres destinataires (contenu binaire ou texte inchangé)
+    private void relay(ACLMessage msg, AID... receivers) {
+        ACLMessage copy = new ACLMessage(msg.getPerformative());
+        for (AID receiver : receivers) {
+            copy.addReceiver(receiver);
+        }
+        if (msg.hasByteSequenceContent()) {
+            copy.setByteSequenceContent(msg.getByteSequenceContent());
+        } else {
+            copy.setContent(msg.getContent());
+        }
+        copy.setConversationId(msg.getConversationId());
+        send(copy);
+        relayed++;
+    }
+
+    // "SiteCoordinator_A_2" -> 2 ; -1 si ce n'est pas un shard de ce site
+    private int shardIndexOf(String localName) {
+        String prefix = coordinatorName(siteId, -1) + "_";
+        if (!localName.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            int shard = Integer.parseInt(localName.substring(prefix.length()));
+            return shard >= 0 && shard < shardCount ? shard : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    protected void takeDown() {
+        dispatcher.printStatistics();
+        mailbox.printStatistics();
+        System.out.println("📊 Agrégateur Site " + siteId + " - " + relayed + " messages relayés, " +
+                transferPlanSequence + " plans entre shards (" + tasksMoved + " tâches)");
+        System.out.println("🛑 Agrégateur Site " + siteId + " arrêté");
+    }
+}
@@ -5,11 +5,16 @@ import jade.core.AID;
 import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.lang.acl.ACLMessage;
+import festo.protocol.*;
+import festo.utils.LatencyHistogram;
 import java.util.*;
 
 /**
  * Coordinateur de Site - Niveau 2
- * Gère les machines locales et communique avec le superviseur global
+ * Gère les machines locales et communique avec le superviseur global.
+ * Sur un grand site, plusieurs coordinateurs (shards) se partagent les machines ;
+ * ils rendent alors compte à l'agrégateur du site ({@link SiteAggregatorAgent}) au lieu du superviseur,
+ * et chaque shard tient la propriété des tâches que lui désigne leur identifiant, pour tout le site.
  */
 public class SiteCoordinatorAgent extends Agent {
 
@@ -17,6 +22,9 @@ public class SiteCoordinatorAgent extends Agent {
     private Map<String, MachineInfo> machines; // Liste de TOUTES les machines du site + infos
     private Queue<String> pendingTasks;  // Tâches en attente
     private AID globalSupervisorAID;  // Adresse du grand patron
+    private AID upstreamAID;          // Destinataire des rapports et escalades : superviseur, ou agrégateur si shard
+    private int shardIndex = -1;      // -1 : coordinateur unique du site
+    private String siteLabel;         // "A", ou "A#1" pour un shard (digest, rapports)
 
     // Métriques du site
     private double siteLoadAverage; // Charge moyenne
@@ -26,6 +34,78 @@ public class SiteCoordinatorAgent extends Agent {
     private int tasksCompleted;// Tâches terminées
     private int conflictsResolved; // Conflits résolus
 
+    // Latences des tâches terminées (ms) : bout en bout = création au générateur -> fin de traitement
+    private static final int MAX_PRIORITY = 10;
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private final LatencyHistogram queueWaitLatency = new LatencyHistogram();
+    private final LatencyHistogram serviceLatency = new LatencyHistogram();
+    private final LatencyHistogram[] endToEndByPriority = new LatencyHistogram[MAX_PRIORITY + 1];
+    private final LatencyHistogram[] queueWaitByPriority = new LatencyHistogram[MAX_PRIORITY + 1];
+
+    // Échéances du site (tâches terminées qui en avaient une)
+    private long deadlineTasks;
+    private long deadlineMisses;
+    private long totalLatenessMs;
+    private final LatencyHistogram latenessLatency = new LatencyHistogram(); // retard des tâches manquées
+
+    /*
+     * Contrôle d'admission du site (AIMD) : chaque directive THROTTLE / REDUCE_LOAD réduit
+     * le facteur d'admission (fraction du débit nominal des machines) ; sans nouvelle directive
+     * et avec une charge redescendue, il remonte par paliers jusqu'à l'admission libre.
+     * Les classes basses sont freinées plus fort que les classes hautes.
+     */
+    private static final double[] ADMISSION_CLASS_WEIGHTS = {0.5, 1.0, 2.0}; // basse, normale, haute
+    private static final double THROTTLE_DECREASE = 0.75;
+    private static final double REDUCE_LOAD_DECREASE = 0.5;
+    private static final double ADMISSION_MIN_FACTOR = 0.1;
+    private static final double ADMISSION_RECOVERY_STEP = 0.1;   // par tick de surveillance
+    private static final long ADMISSION_HOLD_MS = 15000;         // pas de reprise juste après une directive
+    private static final double ADMISSION_RECOVERY_LOAD = 70.0;
+    private double admissionFactor = 1.0; // >= 1 : admission libre
+    private long lastAdmissionDirective;
+    private int admissionSequence;
+    private int admissionDirectives;
+    private final AdmissionControlMessage admissionControl = new AdmissionControlMessage();
+
+    // Protocole binaire (instances réutilisées pour le décodage)
+    private final MessageCodec codec = new MessageCodec();
+    private final TaskCompletedMessage taskCompleted = new TaskCompletedMessage();
+    private final FailureMessage failure = new FailureMessage();
+    private final OverloadMessage overload = new OverloadMessage();
+    private final LoadBalancingMessage loadBalancing = new LoadBalancingMessage();
+    private final SupervisorDirectiveMessage directive = new SupervisorDirectiveMessage();
+    private final TaskClaimMessage taskClaim = new TaskClaimMessage();
+    private MessageDispatcher dispatcher;
+    private PriorityMailbox mailbox; // pannes avant équilibrage avant télémétrie
+
+    // Heartbeat agrégé : machines indexées par slot dense, digest delta périodique
+    private static final int DIGEST_KEYFRAME_INTERVAL = 4; // 1 digest complet sur 4
+    private final List<MachineInfo> machinesBySlot = new ArrayList<>();
+
+    // Capacités des machines du site, indexées par le même slot dense
+    private final CapabilityIndex capabilityIndex = new CapabilityIndex();
+    // Charge, file et état opérationnel vivants, indexés par le même slot (MACHINE_STATE)
+    private final MachineLoadTable loadTable = new MachineLoadTable();
+    private final HeartbeatMessage machineState = new HeartbeatMessage();
+    private final SiteDigestMessage digest = new SiteDigestMessage();
+    private int digestSequence;
+
+    // Propriété des tâches admises (une seule machine du site par tâche)
+    private static final long CLAIM_TTL_MS = 120000;     // tâche admise, pas encore terminée
+    private static final long COMPLETED_TTL_MS = 30000;  // tâche terminée : bloque encore les réémissions tardives
+    private TaskRegistry taskRegistry;
+    // Propriétaires du registre : numéro dense par machine, y compris celles des autres shards du site
+    // (un grand site range chaque tâche dans le shard que désigne son identifiant)
+    private final Map<String, Integer> claimOwnerIds = new HashMap<>();
+    private final List<String> claimOwners = new ArrayList<>();
+
+    // Rééquilibrage périodique : plan de transferts des machines surchargées vers les peu chargées
+    private static final double OVERLOAD_LOAD = 80;
+    private static final double UNDERLOAD_LOAD = 30;
+    private final TransferTasksMessage transferPlan = new TransferTasksMessage();
+    private int transferPlanSequence;
+    private final TransferPlanner planner = new TransferPlanner(); // garde le dernier plan (candidates des shards)
+
     protected void setup() {
 
         // 1️. RÉCUPÉRER LE NOM DU SITE
@@ -33,29 +113,40 @@ public class SiteCoordinatorAgent extends Agent {
         if (args != null && args.length >= 1) {
             siteId = (String) args[0];
         }
+        // Shard d'un grand site : { site, index, nombre de shards }
+        if (args != null && args.length >= 3 && (Integer) args[2] > 1) {
+            shardIndex = (Integer) args[1];
+        }
+        siteLabel = SiteAggregatorAgent.shardLabel(siteId, shardIndex);
 
         // 2. INITIALISER LES STRUCTURES
         machines = new HashMap<>();
         pendingTasks = new LinkedList<>();
         globalSupervisorAID = new AID("GlobalSupervisor", AID.ISLOCALNAME);
+        upstreamAID = shardIndex >= 0
+                ? new AID(SiteAggregatorAgent.coordinatorName(siteId, -1), AID.ISLOCALNAME)
+                : globalSupervisorAID;
         totalMachines = 0;
         operationalMachines = 0;
         siteFailures = 0;
         tasksCompleted = 0;
+        taskRegistry = new TaskRegistry(1024, System.currentTimeMillis());
         conflictsResolved = 0;
 
-        System.out.println("🏢 Coordinateur Site " + siteId + " démarré");
+        System.out.println("🏢 Coordinateur Site " + siteLabel + " démarré");
 
         //3. S'enregistrer auprès du superviseur global
         registerWithSupervisor();
+        registerHandlers();
+        mailbox = new PriorityMailbox(this, "Site " + siteLabel);
 
         // 4️.  LANCER LES COMPORTEMENTS AUTOMATIQUES
-        // Comportement 1  pour recevoir les messages
+        // Comportement 1  pour recevoir les messages (voie critique d'abord)
         addBehaviour(new CyclicBehaviour(this) {
             public void action() {
-                ACLMessage msg = receive(); // Attendre un message
+                ACLMessage msg = mailbox.next(); // Attendre un message
                 if (msg != null) {
-                    handleMessage(msg); // Traiter le message
+                    dispatcher.dispatch(msg); // Traiter le message
                 } else {
                     block();
                 }
@@ -77,15 +168,41 @@ public class SiteCoordinatorAgent extends Agent {
             }
         });
 
-        //  Comportement 4 :Résoudre les conflits toutes les 6 secondes
+        // Comportement 4 : Publier le digest du site toutes les 3 secondes
+        addBehaviour(new TickerBehaviour(this, 3000) {
+            protected void onTick() {
+                publishSiteDigest();
+            }
+        });
+
+        //  Comportement 5 :Résoudre les conflits toutes les 6 secondes
         addBehaviour(new TickerBehaviour(this, 6000) {
             protected void onTick() {
                 resolveLocalConflicts();
             }
         });
+
+        // Comportement 6 : Percentiles de latence toutes les 30 secondes
+        addBehaviour(new TickerBehaviour(this, 30000) {
+            protected void onTick() {
+                printLatencyReport();
+            }
+        });
+
+        // Comportement 7 : Audit des agrégats du site toutes les 60 secondes
+        addBehaviour(new TickerBehaviour(this, 60000) {
+            protected void onTick() {
+                auditSiteAggregates();
+            }
+        });
     }
 
     private void registerWithSupervisor() {
+        if (shardIndex >= 0) {
+            // L'agrégateur inscrit le site une seule fois pour tous ses shards
+            System.out.println("📝 Shard " + siteLabel + " rattaché à l'agrégateur du site " + siteId);
+            return;
+        }
         //1. Créer un message
         ACLMessage register = new ACLMessage(ACLMessage.SUBSCRIBE);
         // 2️. Destinataire : GlobalSupervisor
@@ -99,28 +216,34 @@ public class SiteCoordinatorAgent extends Agent {
 
 
 
-    private void handleMessage(ACLMessage msg) {
-        String content = msg.getContent(); // Ex: "REGISTER:M1:Assemblage:10:true"
-        int performative = msg.getPerformative(); // Type de message
-
-        //route les messages selon leur contenu.
-        if (content.startsWith("REGISTER:")) {
-            handleMachineRegistration(msg);  // Une machine s'enregistre
-        } else if (content.startsWith("TASK_COMPLETED:")) {
-            handleTaskCompletion(msg); // Une tâche est terminée
-        } else if (content.startsWith("FAILURE:")) {
-            handleMachineFailure(msg); // Une machine est en panne
-        } else if (content.startsWith("OVERLOAD:")) {
-            handleMachineOverload(msg); // Une machine est surchargée
-        } else if (content.startsWith("LOAD_BALANCING:")) {
-            handleLoadBalancingRequest(msg); // Demande d'équilibrage
-        } else if (content.startsWith("SUPERVISOR_DIRECTIVE:")) {
-            handleSupervisorDirective(msg); // Ordre du patron
-        } else if (content.startsWith("INTER_SITE_TASK:")) {
-            handleInterSiteTask(msg);  // Tâche d'un autre site
-        } else if (performative == ACLMessage.CONFIRM) {
-            System.out.println("✅ Confirmation superviseur: " + content);
-        }
+    // Table de routage : un handler par type de message
+    private void registerHandlers() {
+        dispatcher = new MessageDispatcher("Site " + siteLabel);
+
+        // Messages binaires
+        dispatcher.on(MessageType.TASK_COMPLETED,
+                msg -> handleTaskCompletion(codec.read(msg, taskCompleted))); // Une tâche est terminée
+        dispatcher.on(MessageType.FAILURE,
+                msg -> handleMachineFailure(codec.read(msg, failure))); // Une machine est en panne
+        dispatcher.on(MessageType.OVERLOAD,
+                msg -> handleMachineOverload(codec.read(msg, overload))); // Une machine est surchargée
+        dispatcher.on(MessageType.LOAD_BALANCING,
+                msg -> handleLoadBalancingRequest(codec.read(msg, loadBalancing))); // Demande d'équilibrage
+        dispatcher.on(MessageType.MACHINE_STATE,
+                msg -> handleMachineState(codec.read(msg, machineState))); // Heartbeat d'une machine
+        dispatcher.on(MessageType.SUPERVISOR_DIRECTIVE,
+                msg -> handleSupervisorDirective(codec.read(msg, directive))); // Ordre du patron
+        dispatcher.on(MessageType.TASK_CLAIM, this::handleTaskClaim); // Une machine a admis une tâche
+
+        // Messages texte ("REGISTER:M1:Assemblage:10:true")
+        dispatcher.onKeyword("REGISTER", this::handleMachineRegistration);  // Une machine s'enregistre
+        dispatcher.onKeyword("INTER_SITE_TASK", this::handleInterSiteTask);  // Tâche d'un autre site
+
+        dispatcher.onDefault(msg -> {
+            if (msg.getPerformative() == ACLMessage.CONFIRM) {
+                System.out.println("✅ Confirmation superviseur: " + msg.getContent());
+            }
+        });
     }
 
     /**
@@ -142,16 +265,20 @@ public class SiteCoordinatorAgent extends Agent {
             info.machineId = machineId;
             info.machineType = machineType;
             info.capacity = capacity;
-            info.operational = operational;
-            info.load = 0.0;
             info.aid = msg.getSender();
+            info.dirty = true;
 
-            // 3️. AJOUTER À L'ANNUAIRE
+            // 3️. AJOUTER À L'ANNUAIRE (une ré-inscription garde son slot)
             machines.put(machineId, info);
-            totalMachines++;
-            if (operational) {
-                operationalMachines++;
+            info.slot = capabilityIndex.register(machineId, Capability.maskOf(machineType));
+            capabilityIndex.setAvailable(info.slot, operational);
+            loadTable.reset(info.slot, Capability.maskOf(machineType), capacity, operational);
+            if (info.slot < machinesBySlot.size()) {
+                machinesBySlot.set(info.slot, info);
+            } else {
+                machinesBySlot.add(info);
             }
+            refreshSiteAggregates();
 
             System.out.println("✅ Machine enregistrée: " + machineId +
                     " (Type: " + machineType + ", Site: " + siteId + ")");
@@ -161,6 +288,14 @@ public class SiteCoordinatorAgent extends Agent {
             reply.setPerformative(ACLMessage.CONFIRM);
             reply.setContent("REGISTERED:" + machineId + ":SITE:" + siteId);
             send(reply);
+
+            // Machine arrivée pendant une limitation : lui transmettre les débits en vigueur
+            if (admissionFactor < 1.0) {
+                ACLMessage admissionMsg = new ACLMessage(ACLMessage.INFORM);
+                admissionMsg.addReceiver(info.aid);
+                codec.write(admissionMsg, admissionControl);
+                send(admissionMsg);
+            }
         }
     }
     /**
@@ -176,58 +311,256 @@ public class SiteCoordinatorAgent extends Agent {
     /**
      * Gestion des tâches complétées
      */
-    private void handleTaskCompletion(ACLMessage msg) {
+    private void handleTaskCompletion(TaskCompletedMessage msg) {
 
-        // 1️. DÉCOUPER LE MESSAGE
-        String[] parts = msg.getContent().split(":");
-        // "TASK_COMPLETED:T1:M1" → ["TASK_COMPLETED", "T1", "M1"]
-        if (parts.length >= 3) {
-            String taskId = parts[1]; // "T1"
-            String machineId = parts[2];  // "M1"
+        // 1️. LIRE LE MESSAGE
+        String taskId = msg.getTaskId(); // "T1"
+        String machineId = msg.getMachineId();  // "M1"
+
+        // Machine d'un autre shard : ce shard détient seulement la propriété de la tâche
+        MachineInfo machine = machines.get(machineId);
+        taskRegistry.expireAfter(taskId, System.currentTimeMillis(), COMPLETED_TTL_MS);
+        if (machine == null && shardIndex >= 0) {
+            return;
+        }
+
+        // 2️. INCRÉMENTER LES COMPTEURS
+        tasksCompleted++;
+        if (machine != null) {
+            machine.tasksCompleted++; // Compteur de M? ++
+        }
+
+        // 3. LATENCES ET ÉCHÉANCES (horloge commune : agents sur la même plateforme)
+        recordLatency(msg);
+        recordDeadline(msg, machine);
+
+        System.out.println("✅ Site " + siteId + " - Tâche complétée: " +
+                taskId + " par " + machineId);
+    }
+
+    /**
+     * Revendication d'une tâche admise par une machine. Si une autre machine (ou la même,
+     * sur réémission) la détient déjà, la copie est refusée : la machine la retire de sa file.
+     */
+    private void handleTaskClaim(ACLMessage msg) {
+        codec.read(msg, taskClaim);
+        String taskId = taskClaim.getTaskId();
+        int claimant = claimOwnerOf(taskClaim.getMachineId());
+        int from = taskClaim.getFromId() != null ? claimOwnerOf(taskClaim.getFromId()) : TaskRegistry.NO_OWNER;
+
+        long now = System.currentTimeMillis();
+        int result = taskRegistry.claim(taskId, claimant, from, now, CLAIM_TTL_MS);
+        if (result == TaskRegistry.DUPLICATE || result == TaskRegistry.REPEATED) {
+            // Propriétaire lu au même instant que la revendication ; absent = revendication libre
+            int owner = result == TaskRegistry.REPEATED ? claimant : taskRegistry.ownerOf(taskId, now);
+            if (owner == TaskRegistry.NO_OWNER) {
+                return;
+            }
+            String ownerId = claimOwners.get(owner);
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.INFORM);
+            codec.write(reply, taskClaim.rejected(taskId, ownerId));
+            send(reply);
+            System.out.println("🚫 Site " + siteId + " - " + taskId + " déjà détenue par " + ownerId +
+                    ", copie de " + taskClaim.getMachineId() + " refusée");
+        }
+    }
 
-            // 2️. INCRÉMENTER LES COMPTEURS
-            tasksCompleted++;
+    private int claimOwnerOf(String machineId) {
+        Integer owner = claimOwnerIds.get(machineId);
+        if (owner == null) {
+            owner = claimOwners.size();
+            claimOwners.add(machineId);
+            claimOwnerIds.put(machineId, owner);
+        }
+        return owner;
+    }
+
+    private void recordLatency(TaskCompletedMessage msg) {
+        int priority = msg.getPriority();
+        if (priority < 1 || priority > MAX_PRIORITY) {
+            return; // Machine d'avant v5 : pas de mesures
+        }
+        queueWaitLatency.record(msg.getQueueWaitMs());
+        serviceLatency.record(msg.getServiceMs());
+        histogram(queueWaitByPriority, priority).record(msg.getQueueWaitMs());
+        if (msg.getCreatedAt() > 0) {
+            long endToEnd = System.currentTimeMillis() - msg.getCreatedAt();
+            endToEndLatency.record(endToEnd);
+            histogram(endToEndByPriority, priority).record(endToEnd);
+        }
+    }
 
-            MachineInfo machine = machines.get(machineId);
+    // Retard mesuré à la réception de la fin (le délai d'acheminement compte)
+    private void recordDeadline(TaskCompletedMessage msg, MachineInfo machine) {
+        if (msg.getDeadline() <= 0) {
+            return;
+        }
+        long lateness = System.currentTimeMillis() - msg.getDeadline();
+        deadlineTasks++;
+        if (machine != null) machine.deadlineTasks++;
+        if (lateness > 0) {
+            deadlineMisses++;
+            totalLatenessMs += lateness;
+            latenessLatency.record(lateness);
             if (machine != null) {
-                machine.tasksCompleted++; // Compteur de M? ++
+                machine.deadlineMisses++;
+                machine.totalLatenessMs += lateness;
             }
+        }
+    }
 
-            System.out.println("✅ Site " + siteId + " - Tâche complétée: " +
-                    taskId + " par " + machineId);
+    // Histogrammes par priorité créés à la première tâche (une dizaine d'entrées au plus)
+    private static LatencyHistogram histogram(LatencyHistogram[] byPriority, int priority) {
+        if (byPriority[priority] == null) {
+            byPriority[priority] = new LatencyHistogram();
         }
+        return byPriority[priority];
     }
 
     /**
-     * Gestion des pannes
+     * Percentiles de latence du site : bout en bout, attente en file, traitement, puis par priorité
      */
-    private void handleMachineFailure(ACLMessage msg) {
-        // 1️. DÉCOUPER
-        String[] parts = msg.getContent().split(":");
-        // "FAILURE:M2:SELF_DETECTED:CRITICAL" → ["FAILURE", "M2", ...]
+    private void printLatencyReport() {
+        if (serviceLatency.getCount() == 0) {
+            return;
+        }
+        System.out.println("⏱️ Latences - Site " + siteId);
+        System.out.println("   bout en bout: " + endToEndLatency);
+        System.out.println("   attente:      " + queueWaitLatency);
+        System.out.println("   traitement:   " + serviceLatency);
+        System.out.println(String.format("   admission: %.0f%% (%d directive(s)), file du site: %d",
+                Math.min(1.0, admissionFactor) * 100, admissionDirectives, siteQueueLength()));
+        System.out.println("   registre: " + taskRegistry);
+        System.out.println("   machines: " + loadTable);
+        if (deadlineTasks > 0) {
+            System.out.println(String.format("   échéances: %d/%d manquées (%.1f%%), retard: %s",
+                    deadlineMisses, deadlineTasks, 100.0 * deadlineMisses / deadlineTasks, latenessLatency));
+            for (MachineInfo machine : machinesBySlot) {
+                if (machine.deadlineTasks == 0) continue;
+                System.out.println(String.format("     %-4s %d/%d manquées (%.1f%%), retard moy: %.0f ms",
+                        machine.machineId, machine.deadlineMisses, machine.deadlineTasks,
+                        100.0 * machine.deadlineMisses / machine.deadlineTasks,
+                        machine.deadlineMisses > 0 ? (double) machine.totalLatenessMs / machine.deadlineMisses : 0.0));
+            }
+        }
+        for (int p = MAX_PRIORITY; p >= 1; p--) {
+            if (queueWaitByPriority[p] == null) continue;
+            System.out.println(String.format("   P%-2d bout en bout: %s | attente p99=%d ms", p,
+                    endToEndByPriority[p] != null ? endToEndByPriority[p] : "n=0",
+                    queueWaitByPriority[p].percentile(99)));
+        }
+    }
 
+    /**
+     * Heartbeat agrégé : état complet envoyé par une machine qui arrive ou qui change
+     */
+    private void handleMachineState(HeartbeatMessage msg) {
+        MachineInfo machine = machines.get(msg.getMachineId());
+        if (machine == null) {
+            return; // Pas encore enregistrée : l'état suivant suffira
+        }
+        if (!loadTable.update(machine.slot, msg.getSequence(), msg.getLoad(), msg.getQueueSize(),
+                msg.getFreeCapacity(), msg.isOperational(), System.currentTimeMillis())) {
+            return; // état plus ancien que celui en table
+        }
+        capabilityIndex.setAvailable(machine.slot, msg.isOperational());
+        machine.busySlots = msg.getBusySlots();
+        machine.slotCount = msg.getSlotCount();
+        if (machine.slotUtilization.length != machine.slotCount) {
+            machine.slotUtilization = new double[machine.slotCount];
+            machine.slotCompleted = new int[machine.slotCount];
+        }
+        for (int i = 0; i < machine.slotCount; i++) {
+            machine.slotUtilization[i] = msg.getSlotUtilization(i);
+            machine.slotCompleted[i] = msg.getSlotCompleted(i);
+        }
+        machine.dirty = true;
+    }
 
-        if (parts.length >= 2) {
-            String machineId = parts[1]; // "M2"
+    /**
+     * Utilisation et débit des créneaux de chaque machine du site
+     */
+    private void printSlotUtilization() {
+        System.out.println("🧩 Créneaux de traitement - Site " + siteId);
+        for (MachineInfo machine : machinesBySlot) {
+            StringBuilder line = new StringBuilder(String.format("   %-4s %d/%d occupés |",
+                    machine.machineId, machine.busySlots, machine.slotCount));
+            for (int i = 0; i < machine.slotCount; i++) {
+                line.append(String.format(" %.0f%% (%d)", machine.slotUtilization[i], machine.slotCompleted[i]));
+            }
+            System.out.println(line);
+        }
+    }
 
-            MachineInfo machine = machines.get(machineId);
-            if (machine != null) {
-                machine.operational = false; // M2 ne marche plus !!!!!!!
-                operationalMachines--; // 3 → 2 machines opérationnelles
-                siteFailures++; // 0 → 1 panne
+    /**
+     * Publie un seul digest pour tout le site (machines du site + moniteur),
+     * au lieu d'un PING de chaque machine vers chaque voisin.
+     */
+    private void publishSiteDigest() {
+        if (machinesBySlot.isEmpty()) {
+            return;
+        }
+        digestSequence++;
+        boolean keyframe = digestSequence % DIGEST_KEYFRAME_INTERVAL == 1;
+
+        digest.begin(siteLabel, digestSequence, keyframe);
+        for (MachineInfo machine : machinesBySlot) {
+            if (keyframe || machine.dirty) {
+                digest.add(machine.slot,
+                        keyframe || !machine.announced ? machine.machineId : null,
+                        loadTable.load(machine.slot), loadTable.queue(machine.slot),
+                        loadTable.freeCapacity(machine.slot), loadTable.isOperational(machine.slot));
+                machine.dirty = false;
+                machine.announced = true;
+            }
+        }
+        if (digest.size() == 0) {
+            digestSequence--; // Rien à publier : la séquence reste continue
+            return;
+        }
 
-                System.out.println("🔴 PANNE détectée - Site " + siteId +
-                        ", Machine: " + machineId);
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        for (MachineInfo machine : machinesBySlot) {
+            msg.addReceiver(machine.aid);
+        }
+        msg.addReceiver(new AID("SystemMonitor", AID.ISLOCALNAME));
+        msg.addReceiver(new AID("TaskGenerator", AID.ISLOCALNAME)); // photo de charge pour la répartition
+        codec.write(msg, digest);
+        send(msg);
+    }
+
+    /**
+     * Gestion des pannes
+     */
+    private void handleMachineFailure(FailureMessage msg) {
+        // 1️. LIRE
+        String machineId = msg.getMachineId(); // "M2"
+
+        // Ses tâches pourront être réadmises (grand site : aussi celles que ce shard détient pour une machine d'un autre)
+        Integer owner = claimOwnerIds.get(machineId);
+        if (owner != null) {
+            taskRegistry.releaseOwner(owner, System.currentTimeMillis());
+        }
 
-                // 3️. ESSAYER DE RÉSOUDRE LOCALEMENT
-                boolean resolved = attemptLocalResolution(machineId);
+        MachineInfo machine = machines.get(machineId);
+        if (machine != null) {
+            loadTable.markFailed(machine.slot, msg.getSequence()); // M2 ne marche plus !!!!!!!
+            capabilityIndex.setAvailable(machine.slot, false);
+            refreshSiteAggregates(); // 3 → 2 machines opérationnelles
+            siteFailures++; // 0 → 1 panne
 
-                if (!resolved) {
-                    // 4️. SI ÉCHEC →
-                    // Escalader au superviseur
+            System.out.println("🔴 PANNE détectée - Site " + siteId +
+                    ", Machine: " + machineId);
 
-                    escalateToSupervisor("FAILURE", machineId, "CRITICAL");
-                }
+            // 3️. ESSAYER DE RÉSOUDRE LOCALEMENT
+            boolean resolved = attemptLocalResolution(machineId);
+
+            if (!resolved) {
+                // 4️. SI ÉCHEC →
+                // Escalader au superviseur
+
+                escalateToSupervisor("FAILURE", machineId, "CRITICAL");
             }
         }
     }
@@ -235,93 +568,122 @@ public class SiteCoordinatorAgent extends Agent {
     /**
      * Gestion des surcharges
      */
-    private void handleMachineOverload(ACLMessage msg) {
-        // 1️. DÉCOUPER
+    private void handleMachineOverload(OverloadMessage msg) {
+        // 1️. LIRE
+        String machineId = msg.getMachineId(); // "M1"
+        double load = msg.getLoad();   // 95.0
 
-        String[] parts = msg.getContent().split(":");
-        // "OVERLOAD:M1:95.0" → ["OVERLOAD", "M1", "95.0"]
-        if (parts.length >= 3) {
-            String machineId = parts[1]; // "M1"
-            double load = Double.parseDouble(parts[2]);   // 95.0
+        System.out.println("⚠️ Surcharge détectée - Site " + siteId +
+                ", Machine: " + machineId + " (" +
+                String.format("%.1f", load) + "%)");
 
-            System.out.println("⚠️ Surcharge détectée - Site " + siteId +
-                    ", Machine: " + machineId + " (" +
-                    String.format("%.1f", load) + "%)");
+        // 2️. ESSAYER D'ÉQUILIBRER LOCALEMENT
+        boolean balanced = attemptLocalLoadBalancing(machineId);
 
-            // 2️. ESSAYER D'ÉQUILIBRER LOCALEMENT
-            boolean balanced = attemptLocalLoadBalancing(machineId);
-
-            if (!balanced) {
-                escalateToSupervisor("SITE_OVERLOAD", machineId, "HIGH");
-            }
+        if (!balanced) {
+            escalateToSupervisor("SITE_OVERLOAD", machineId, "HIGH");
         }
     }
 
     /**
      * Demandes d'équilibrage de charge => redistribuer tâches
      */
-    private void handleLoadBalancingRequest(ACLMessage msg) {
-        // 1️. DÉCOUPER
-        String[] parts = msg.getContent().split(":");
-        // "LOAD_BALANCING:M1:90.0:5" → ["LOAD_BALANCING", "M1", "90.0", "5"]
-        if (parts.length >= 4) {
-            String machineId = parts[1]; // "M1"
-            double load = Double.parseDouble(parts[2]); // 90.0%
-            int queueSize = Integer.parseInt(parts[3]); // 5 tâches en attente
+    private void handleLoadBalancingRequest(LoadBalancingMessage msg) {
+        // 1️. LIRE
+        String machineId = msg.getMachineId(); // "M1"
+        double load = msg.getLoad(); // 90.0%
+        int queueSize = msg.getQueueSize(); // 5 tâches en attente
 
-            System.out.println("⚖️ Demande équilibrage - Machine: " + machineId);
+        System.out.println("⚖️ Demande équilibrage - Machine: " + machineId);
 
-            // 2️. TROUVER UNE MACHINE LÉGÈRE
-            // Cherche dans l'annuaire une machine avec charge < 70%
-            String targetMachine = findLightlyLoadedMachine(machineId);
+        // 2️. TROUVER UNE MACHINE LÉGÈRE
+        // Cherche dans l'annuaire une machine avec charge < 70%
+        String targetMachine = findLightlyLoadedMachine(machineId);
 
-            if (targetMachine != null) {
-                // 3️. REDISTRIBUER LA MOITIÉ DES TÂCHES
-                redistributeTasks(machineId, targetMachine, queueSize / 2);
-                // M1 → M4 : 2-3 tâches
-                conflictsResolved++;
-            } else {
-                // 4️. AUCUNE MACHINE DISPONIBLE
-                System.out.println("⚠️ Aucune machine disponible pour équilibrage local");
-                escalateToSupervisor("NO_RESOURCES", machineId, "MEDIUM");
-            }
+        if (targetMachine != null) {
+            // 3️. REDISTRIBUER LA MOITIÉ DES TÂCHES
+            redistributeTasks(machineId, targetMachine, queueSize / 2);
+            // M1 → M4 : 2-3 tâches
+            conflictsResolved++;
+        } else {
+            // 4️. AUCUNE MACHINE DISPONIBLE
+            System.out.println("⚠️ Aucune machine disponible pour équilibrage local");
+            escalateToSupervisor("NO_RESOURCES", machineId, "MEDIUM");
         }
     }
 
     /**
      * Directives du superviseur => Réduisez la charge du site
      */
-    private void handleSupervisorDirective(ACLMessage msg) {
-        // 1️. DÉCOUPER
-        String[] parts = msg.getContent().split(":");
-        // "SUPERVISOR_DIRECTIVE:THROTTLE" → ["SUPERVISOR_DIRECTIVE", "THROTTLE"]
+    private void handleSupervisorDirective(SupervisorDirectiveMessage msg) {
+        // 1️. LIRE
+        String action = msg.getAction();
+
+        System.out.println("📋 Directive superviseur reçue: " + action);
+
+        // 2️. EXÉCUTER L'ORDRE
+        switch (action) {
+            case "REALLOCATE":
+                // Réallouer les tâches entre machines
+                break;
+            case "RESOURCE_TRANSFER":
+                // Transférer des ressources vers un autre site
+                break;
+            case "LOAD_DISTRIBUTION":
+                // Distribuer la charge différemment
+                break;
+            case "THROTTLE":
+                // Limiter les nouvelles tâches
+                System.out.println("🚦 Throttling activé sur site " + siteId);
+                tightenAdmission(THROTTLE_DECREASE);
+                break;
+            case "REDUCE_LOAD":
+                System.out.println("📉 Réduction de charge demandée");
+                tightenAdmission(REDUCE_LOAD_DECREASE);
+                break;
+        }
+    }
 
+    // Décroissance multiplicative du facteur d'admission
+    private void tightenAdmission(double decrease) {
+        admissionFactor = Math.max(ADMISSION_MIN_FACTOR, Math.min(1.0, admissionFactor) * decrease);
+        lastAdmissionDirective = System.currentTimeMillis();
+        admissionDirectives++;
+        broadcastAdmission();
+    }
 
-        if (parts.length >= 2) {
-            String action = parts[1];
-
-            System.out.println("📋 Directive superviseur reçue: " + action);
-
-            // 2️. EXÉCUTER L'ORDRE
-            switch (action) {
-                case "REALLOCATE":
-                    // Réallouer les tâches entre machines
-                    break;
-                case "RESOURCE_TRANSFER":
-                    // Transférer des ressources vers un autre site
-                    break;
-                case "LOAD_DISTRIBUTION":
-                    // Distribuer la charge différemment
-                    break;
-                case "THROTTLE":
-                    // Limiter les nouvelles tâches
-                    System.out.println("🚦 Throttling activé sur site " + siteId);
-                    break;
-                case "REDUCE_LOAD":
-                    System.out.println("📉 Réduction de charge demandée");
-                    break;
-            }
+    // Croissance additive après la période de maintien, si la charge du site est redescendue
+    private void relaxAdmission() {
+        if (admissionFactor >= 1.0
+                || System.currentTimeMillis() - lastAdmissionDirective < ADMISSION_HOLD_MS
+                || siteLoadAverage >= ADMISSION_RECOVERY_LOAD) {
+            return;
         }
+        admissionFactor = Math.min(1.0, admissionFactor + ADMISSION_RECOVERY_STEP);
+        broadcastAdmission();
+    }
+
+    private void broadcastAdmission() {
+        boolean limited = admissionFactor < 1.0;
+        admissionControl.set(siteId, ++admissionSequence, limited);
+        for (int c = 0; c < AdmissionControlMessage.CLASS_COUNT; c++) {
+            admissionControl.withFactor(c, admissionFactor * ADMISSION_CLASS_WEIGHTS[c]);
+        }
+
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        for (MachineInfo machine : machinesBySlot) {
+            msg.addReceiver(machine.aid);
+        }
+        codec.write(msg, admissionControl);
+        send(msg);
+
+        System.out.println("🚦 Site " + siteId + " - admission " + (limited
+                ? String.format("limitée à %.0f%% du débit nominal", admissionFactor * 100)
+                : "libre") + " (file du site: " + siteQueueLength() + ")");
+    }
+
+    private int siteQueueLength() {
+        return loadTable.totalQueue();
     }
     /**
      * expl !
@@ -350,7 +712,7 @@ public class SiteCoordinatorAgent extends Agent {
                 // 3️. ENVOYER LA TÂCHE À bestMachine
                 ACLMessage taskMsg = new ACLMessage(ACLMessage.REQUEST);
                 taskMsg.addReceiver(machines.get(bestMachine).aid);
-                taskMsg.setContent("TASK:" + taskId + ":8"); // Priorité haute
+                codec.write(taskMsg, new TaskMessage().set(taskId, 8)); // Priorité haute
                 send(taskMsg);
             }
         }
@@ -360,30 +722,31 @@ public class SiteCoordinatorAgent extends Agent {
      * Surveillance du site
      */
     private void monitorSite() {
-        // Calculer la charge moyenne du site
-        double totalLoad = 0;
-        int validMachines = 0;
-
-        for (MachineInfo machine : machines.values()) {
-            totalLoad += machine.load;
-            validMachines++;
-        }
-
-        siteLoadAverage = validMachines > 0 ? totalLoad / validMachines : 0;
-
-        // Vérifier l'état des machines
-        operationalMachines = 0;
-        for (MachineInfo machine : machines.values()) {
-            if (machine.operational) {
-                operationalMachines++;
-            }
-        }
+        // Charge moyenne et machines opérationnelles : agrégats tenus à jour par la table, en O(1)
+        refreshSiteAggregates();
 
         // Détecter les problèmes
         if (siteLoadAverage > 85) {
             System.out.println("⚠️ Site " + siteId + " en surcharge: " +
                     String.format("%.1f", siteLoadAverage) + "%");
         }
+
+        relaxAdmission();
+    }
+
+    private void refreshSiteAggregates() {
+        siteLoadAverage = loadTable.averageLoad();
+        totalMachines = loadTable.registeredCount();
+        operationalMachines = loadTable.operationalCount();
+    }
+
+    // Recomptage complet des agrégats : un écart signale un événement mal comptabilisé
+    private void auditSiteAggregates() {
+        String drift = loadTable.audit();
+        if (drift != null) {
+            System.out.println("⚠️ Site " + siteId + " - écart des agrégats corrigé: " + drift);
+        }
+        refreshSiteAggregates();
     }
 
     /**
@@ -392,16 +755,26 @@ public class SiteCoordinatorAgent extends Agent {
     private void reportToSupervisor() {
         // 1️. CRÉER LE MESSAGE
         ACLMessage report = new ACLMessage(ACLMessage.INFORM);
-        report.addReceiver(globalSupervisorAID);
-
-        // 2️. FORMATER LE RAPPORT
-        String content = String.format(
-                "SITE_STATUS:%s:LOAD:%.1f:MACHINES:%d:OPERATIONAL:%d:FAILURES:%d:TASKS:%d",
-                siteId, siteLoadAverage, totalMachines,
-                operationalMachines, siteFailures, tasksCompleted
-        ).replace(",", ".");
-
-        report.setContent(content);
+        report.addReceiver(upstreamAID);
+
+        // 2️. ENCODER LE RAPPORT (histogrammes cumulés : le superviseur remplace les précédents)
+        SiteStatusMessage status = new SiteStatusMessage().set(
+                siteLabel, siteLoadAverage, totalMachines,
+                operationalMachines, siteFailures, tasksCompleted)
+                .withLatency(endToEndLatency, queueWaitLatency, serviceLatency)
+                .withDeadlines(deadlineTasks, deadlineMisses, totalLatenessMs);
+
+        // 3. Shard : ce que le dernier plan local n'a pas pu équilibrer, pour l'équilibrage entre shards
+        if (shardIndex >= 0) {
+            for (int i = 0; i < planner.size(); i++) {
+                if (planner.getRole(i) == TransferPlanner.DONOR && planner.getSurplus(i) > 0
+                        || planner.getRole(i) == TransferPlanner.RECEIVER && planner.getFree(i) > 0) {
+                    status.addCandidate(planner.getMachineId(i), planner.getMask(i), planner.getQueue(i),
+                            planner.getFree(i), planner.getRole(i) == TransferPlanner.DONOR);
+                }
+            }
+        }
+        codec.write(report, status);
         send(report);
     }
 
@@ -409,24 +782,44 @@ public class SiteCoordinatorAgent extends Agent {
      * Résolution de conflits locaux
      */
     private void resolveLocalConflicts() {
-        //creation 2 listes
-        List<MachineInfo> overloadedMachines = new ArrayList<>(); // Machines surchargées
-        List<MachineInfo> underloadedMachines = new ArrayList<>();  // Machines vides
-        // 2️. CLASSER LES MACHINES
-        for (MachineInfo machine : machines.values()) {
-            if (machine.operational) {
-                if (machine.load > 80) {
-                    overloadedMachines.add(machine);
-                } else if (machine.load < 30) {
-                    underloadedMachines.add(machine);
-                }
-            }
+        // 1. Machines opérationnelles : surchargées = sources, peu chargées = receveuses
+        planner.clear();
+        long[] operational = loadTable.operationalSet();
+        for (int slot = CapabilityIndex.nextSetBit(operational, 0); slot >= 0;
+             slot = CapabilityIndex.nextSetBit(operational, slot + 1)) {
+            double load = loadTable.load(slot);
+            int role = load > OVERLOAD_LOAD && loadTable.queue(slot) > 0 ? TransferPlanner.DONOR
+                    : load < UNDERLOAD_LOAD ? TransferPlanner.RECEIVER : TransferPlanner.NEUTRAL;
+            planner.add(machinesBySlot.get(slot).machineId, capabilityIndex.maskAt(slot),
+                    loadTable.queue(slot), loadTable.freeCapacity(slot), role);
         }
+        transferPlan.begin(siteId, transferPlanSequence + 1);
+        planner.plan(transferPlan);
 
-        // 3️. SI DÉSÉQUILIBRE → ÉQUILIBRER
-        if (!overloadedMachines.isEmpty() && !underloadedMachines.isEmpty()) {
-            System.out.println("⚖️ Équilibrage automatique sur site " + siteId);
-            conflictsResolved++;
+        // 2. Tout le plan en un seul message, adressé à toutes les sources
+        if (transferPlan.size() == 0) {
+            return;
+        }
+        transferPlanSequence++;
+        ACLMessage plan = new ACLMessage(ACLMessage.REQUEST);
+        for (int i = 0; i < transferPlan.size(); i++) {
+            boolean seen = false;
+            for (int j = 0; j < i && !seen; j++) {
+                seen = transferPlan.getSourceId(j).equals(transferPlan.getSourceId(i));
+            }
+            if (!seen) {
+                plan.addReceiver(machines.get(transferPlan.getSourceId(i)).aid);
+            }
+        }
+        codec.write(plan, transferPlan);
+        send(plan);
+        conflictsResolved++;
+
+        System.out.println("⚖️ Équilibrage automatique sur site " + siteLabel + " - plan " + transferPlanSequence +
+                ": " + transferPlan.totalCount() + " tâche(s) en " + transferPlan.size() + " mouvement(s)");
+        for (int i = 0; i < transferPlan.size(); i++) {
+            System.out.println("   " + transferPlan.getSourceId(i) + " → " + transferPlan.getTargetId(i) +
+                    " : " + transferPlan.getCount(i));
         }
     }
 
@@ -466,10 +859,9 @@ public class SiteCoordinatorAgent extends Agent {
         System.out.println("⬆️ Escalade vers superviseur - Issue: " + issue);
         // Créer un message urgent
         ACLMessage escalation = new ACLMessage(ACLMessage.REQUEST);
-        escalation.addReceiver(globalSupervisorAID);
-        // le message :                Type     :Site :Problème:Machine:Gravité
-        escalation.setContent("ESCALATION:" + siteId + ":" + issue +
-                ":" + machineId + ":" + severity);
+        escalation.addReceiver(upstreamAID);
+        // le message : Site, Problème, Machine, Gravité
+        codec.write(escalation, new EscalationMessage().set(siteId, issue, machineId, severity));
         send(escalation);
     }
 
@@ -479,63 +871,49 @@ public class SiteCoordinatorAgent extends Agent {
 
     // TROUVER UNE MACHINE LÉGÈRE => Chercher dans l'annuaire une machine peu chargée.
     private String findLightlyLoadedMachine(String exclude) {
-        String bestMachine = null;
-        double minLoad = Double.MAX_VALUE; // Très grand nombre
-
-        // Parcourir TOUTES les machines
-        for (Map.Entry<String, MachineInfo> entry : machines.entrySet()) {
-            if (!entry.getKey().equals(exclude) && entry.getValue().operational) {
-                if (entry.getValue().load < minLoad) {
-                    minLoad = entry.getValue().load;   // Nouvelle meilleure charge
-                    bestMachine = entry.getKey(); // Nouvelle meilleure machine
-                }
-            }
-        }
+        // Les tâches de la machine exigent une de ses capacités : la cible doit toutes les couvrir
+        MachineInfo source = machines.get(exclude);
+        long needed = source != null ? Capability.maskOf(source.machineType) : 0;
+
+        // Machine opérationnelle compatible la moins chargée (index, sans parcours du site)
+        int slot = loadTable.leastLoaded(needed, source != null ? source.slot : -1);
         // Retourner seulement si charge < 70%
-        return (minLoad < 70) ? bestMachine : null;
+        return slot >= 0 && loadTable.load(slot) < 70 ? machinesBySlot.get(slot).machineId : null;
     }
     private String findReplacementMachine(String failedMachine) {
         MachineInfo failed = machines.get(failedMachine);
         if (failed == null) return null;
 
-        for (Map.Entry<String, MachineInfo> entry : machines.entrySet()) {
-            MachineInfo candidate = entry.getValue();
-            if (!entry.getKey().equals(failedMachine) &&
-                    candidate.operational &&
-                    candidate.machineType.equals(failed.machineType) &&
-                    candidate.load < 60) {
-                return entry.getKey();
-            }
-        }
-        return null;
+        // La moins chargée des machines disponibles qui couvrent toutes les capacités de la machine en panne
+        int slot = loadTable.leastLoaded(Capability.maskOf(failed.machineType), failed.slot);
+        return slot >= 0 && loadTable.load(slot) < 60 ? machinesBySlot.get(slot).machineId : null;
     }
 
     private String findBestMachine() {
-        String bestMachine = null;
-        double minLoad = Double.MAX_VALUE;
-
-        for (Map.Entry<String, MachineInfo> entry : machines.entrySet()) {
-            if (entry.getValue().operational && entry.getValue().load < minLoad) {
-                minLoad = entry.getValue().load;
-                bestMachine = entry.getKey();
-            }
-        }
-
-        return bestMachine;
+        int slot = loadTable.leastLoaded(0, -1);
+        return slot >= 0 ? machinesBySlot.get(slot).machineId : null;
     }
 //  REDISTRIBUER LES TÂCHES :Transférer des tâches d'une machine surchargée vers une machine libre.
+    // La source envoie elle-même le lot à la cible et attend son accusé
     private void redistributeTasks(String from, String to, int count) {
+        if (count <= 0) {
+            return;
+        }
         System.out.println("🔄 Redistribution: " + from + " → " + to +
                 " (" + count + " tâches)");
 
         // Notifier les machines concernées
         ACLMessage msgFrom = new ACLMessage(ACLMessage.REQUEST);
         msgFrom.addReceiver(machines.get(from).aid);
-        msgFrom.setContent("TRANSFER_TASKS:" + to + ":" + count);
+        codec.write(msgFrom, new TransferTasksMessage().begin(siteId, ++transferPlanSequence).add(from, to, count));
         send(msgFrom);
     }
 
     protected void takeDown() {
+        dispatcher.printStatistics();
+        mailbox.printStatistics();
+        printSlotUtilization();
+        printLatencyReport();
         System.out.println("🛑 Coordinateur Site " + siteId + " arrêté");
     }
 
@@ -549,9 +927,22 @@ public class SiteCoordinatorAgent extends Agent {
         String machineId;
         String machineType;
         int capacity;
-        boolean operational;
-        double load;
         int tasksCompleted;
         AID aid;
+
+        // Échéances des tâches terminées par cette machine
+        long deadlineTasks;
+        long deadlineMisses;
+        long totalLatenessMs;
+
+        // Créneaux de traitement (MACHINE_STATE v3)
+        int busySlots;
+        int slotCount;
+        double[] slotUtilization = new double[0]; // % depuis le démarrage de la machine
+        int[] slotCompleted = new int[0];
+
+        int slot;          // index dense dans le site (digest)
+        boolean dirty;     // modifiée depuis le dernier digest
+        boolean announced; // identifiant déjà publié dans un digest
     }
 }
\ No newline at end of file
@@ -3,6 +3,12 @@ package festo.distributed;
 import jade.core.Agent;
 import jade.core.behaviours.CyclicBehaviour;
 import jade.lang.acl.ACLMessage;
+import festo.protocol.HeartbeatMessage;
+import festo.protocol.MessageCodec;
+import festo.protocol.MessageType;
+import festo.protocol.ProtocolException;
+import festo.protocol.SiteDigestMessage;
+import festo.protocol.SiteDigestView;
 import java.util.*;
 
 
@@ -12,6 +18,11 @@ public class SystemMonitorAgent extends Agent {
     private Map<String, MachineStatus> statusMap = new HashMap<>();
     private long lastUpdate = 0;  // Dernier affichage
 
+    private final MessageCodec codec = new MessageCodec();
+    private final HeartbeatMessage heartbeat = new HeartbeatMessage();
+    private final SiteDigestMessage digest = new SiteDigestMessage();
+    private final Map<String, SiteDigestView> siteViews = new HashMap<>();
+
     // Classe interne pour stocker les statuts
     static class MachineStatus {
         String machineId;
@@ -87,9 +98,13 @@ public class SystemMonitorAgent extends Agent {
      */
     private void updateStatus(ACLMessage msg) {
         String sender = msg.getSender().getLocalName();
-        String content = msg.getContent();
 
-        if (content == null) return;
+        MessageType type = MessageCodec.peekType(msg);
+        if (type == MessageType.SITE_DIGEST) {
+            updateFromDigest(msg);
+            return;
+        }
+        if (type != MessageType.PING && type != MessageType.PONG) return;
 
         // 1. RÉCUPÉRER OU CRÉER LE STATUT
         MachineStatus status = statusMap.get(sender);
@@ -101,48 +116,58 @@ public class SystemMonitorAgent extends Agent {
 
         status.timestamp = System.currentTimeMillis();
 
-        // 2. PARSER LE MESSAGE
-        if (content.startsWith("PING:") || content.startsWith("PONG:")) {
-            try {
-                String[] parts = content.split(":");
-                // ["PING", "M1", "LOAD", "45.5", "QUEUE", "3", "SITE", "A"]
-                for (int i = 0; i < parts.length; i++) {
-                    switch (parts[i]) {
-                        case "LOAD":
-                            if (i + 1 < parts.length) {
-                                // Convertir avec point décimal
-                                String loadStr = parts[i + 1];
-                                status.load = Double.parseDouble(loadStr.replace(",", "."));
-                                System.out.println("🔍 " + sender + " load: " + loadStr + " → " + status.load);
-                            }
-                            break;
-                        case "QUEUE":
-                            if (i + 1 < parts.length) {
-                                status.queueSize = Integer.parseInt(parts[i + 1]);
-                            }
-                            break;
-                        case "SITE":
-                            if (i + 1 < parts.length) {
-                                status.site = parts[i + 1];
-                            }
-                            break;
-                        case "STATUS":
-                            if (i + 1 < parts.length) {
-                                status.operational = Boolean.parseBoolean(parts[i + 1]);
-                            }
-                            break;
-                    }
-                }
-            } catch (Exception e) {
-                System.out.println("⚠️ Erreur parsing [" + sender + "]: " + content + " - " + e.getMessage());
-            }
+        // 2. DÉCODER LE MESSAGE
+        try {
+            codec.read(msg, heartbeat);
+            status.load = heartbeat.getLoad();
+            status.queueSize = heartbeat.getQueueSize();
+            status.site = heartbeat.getSite();
+            status.operational = heartbeat.isOperational();
+        } catch (ProtocolException e) {
+            System.out.println("⚠️ Erreur décodage [" + sender + "]: " + e.getMessage());
+        }
+    }
+    /**
+     * Met à jour les statuts à partir du digest publié par un coordinateur de site
+     */
+    private void updateFromDigest(ACLMessage msg) {
+        try {
+            codec.read(msg, digest);
+        } catch (ProtocolException e) {
+            System.out.println("⚠️ Digest invalide [" + msg.getSender().getLocalName() + "]: " +
+                    e.getMessage());
+            return;
+        }
+
+        SiteDigestView view = siteViews.computeIfAbsent(digest.getSiteId(), SiteDigestView::new);
+        if (!view.apply(digest)) {
+            return;
         }
 
+        // Le coordinateur est vivant : toutes les machines du site sont rafraîchies
+        long now = System.currentTimeMillis();
+        for (int slot = 0; slot < view.size(); slot++) {
+            String machineId = view.getMachineId(slot);
+            if (machineId == null) continue;
+
+            MachineStatus status = statusMap.get(machineId);
+            if (status == null) {
+                status = new MachineStatus();
+                status.machineId = machineId;
+                statusMap.put(machineId, status);
+            }
+            status.site = view.getSiteId();
+            status.load = view.getLoad(slot);
+            status.queueSize = view.getQueueSize(slot);
+            status.operational = view.isOperational(slot);
+            status.timestamp = now;
+        }
     }
+
     /**
-     * Message : "PING:M1:LOAD:45.5:QUEUE:3:SITE:A"
+     * Message : PING(M1, LOAD 45.5, QUEUE 3, SITE A)
      *
-     * Après parsing :
+     * Après décodage :
      * status.machineId = "M1"
      * status.load = 45.5
      * status.queueSize = 3
@@ -4,6 +4,8 @@ import jade.core.Agent;
 import jade.core.AID;
 import jade.core.behaviours.TickerBehaviour;
 import jade.lang.acl.ACLMessage;
+import festo.protocol.*;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -21,16 +23,104 @@ public class TaskGeneratorAgent extends Agent {
     private int tasksGenerated = 0;
     private int tasksAccepted = 0;
     private int tasksRefused = 0;
+    private int tasksBuffered = 0;   // tâches mises en attente faute de crédits
+    private int tasksDropped = 0;    // tâches perdues : file d'attente pleine
+    private int tasksTimedOut = 0;   // tâches abandonnées après MAX_DISPATCH_ATTEMPTS expirations
+    private int deadlineRefusals = 0; // refus « échéance intenable »
+    private int deadlinesSoftened = 0;
+
+    // Échéances : budget selon la priorité (P10 : 10 s ... P1 : 55 s depuis la création).
+    // Une machine qui ne peut pas tenir une échéance ferme refuse ; après DEADLINE_FIRM_REFUSALS
+    // refus la tâche part avec une échéance souple (placée en EDF, retard mesuré, jamais refusée pour ça).
+    private static final long DEADLINE_BASE_MS = 10000;
+    private static final long DEADLINE_STEP_MS = 5000;
+    private static final int DEADLINE_FIRM_REFUSALS = 2;
+    private final Map<String, Integer> deadlineRefusalsByTask = new HashMap<>();
+
+    // Contrôle de flux par crédits
+    private static final int MAX_PENDING_TASKS = 200;
+    private CreditLedger credits;
+    private Deque<PendingTask> pendingTasks;
+
+    // Corrélation requête/réponse : une machine muette ne fait plus perdre la tâche
+    private static final long TASK_REPLY_TIMEOUT_MS = 5000;
+    private static final long TIMEOUT_TICK_MS = 250;
+    private static final int MAX_DISPATCH_ATTEMPTS = 3;
+    private CorrelationTable pendingReplies;
+
+    // Contract Net pour les tâches complexes : fenêtre d'offres puis une seule attribution
+    private static final long BID_WINDOW_MS = 2000;
+    private ContractNetManager contractNet;
+
+    // Choix de la machine : politique + photo de charge (digests des coordinateurs)
+    private DispatchPolicy dispatchPolicy;
+    private LoadSnapshot loadSnapshot;
+    private final Map<String, SiteDigestView> siteViews = new HashMap<>();
+
+    // Charge en boucle ouverte (troisième argument optionnel, voir WorkloadEngine) ;
+    // sans spécification : tâche toutes les 3 s, rafales et tâches complexes périodiques
+    private static final long DEFAULT_SEED = 42;
+    private static final long WORKLOAD_TICK_MS = 100;
+    private WorkloadEngine workload;
+
+    // Capacités des machines (annoncées avec les crédits), mêmes index que les crédits
+    private CapabilityIndex capabilityIndex;
+    private long[] eligible;
+
+    // Mode lot : les tâches d'une rafale sont regroupées par machine cible (TASK_BATCH)
+    private static final boolean BATCH_ALL_OR_NOTHING = false; // décision tâche par tâche
+    private boolean batchMode;
+    private boolean batching;        // regroupement en cours (entre beginBatch et flushBatches)
+    private final Map<String, TaskBatchMessage> openBatches = new LinkedHashMap<>();
+    private int batchCounter = 0;
+    private int batchesSent = 0;
+    private int tasksInBatches = 0;
+
+    // Protocole binaire
+    private final MessageCodec codec = new MessageCodec();
+    private final TaskMessage taskMessage = new TaskMessage();
+    private final TaskReplyMessage taskReply = new TaskReplyMessage();
+    private final CreditMessage creditMessage = new CreditMessage();
+    private final SiteDigestMessage digest = new SiteDigestMessage();
+    private final TaskBatchReplyMessage batchReply = new TaskBatchReplyMessage();
 
     protected void setup() {
-        random = new Random();
 
         // Liste des machines et sites disponibles
         machineIds = Arrays.asList("M1", "M2", "M3", "M4");
         siteIds = Arrays.asList("A", "B");
+        credits = new CreditLedger(machineIds);
+        pendingTasks = new ArrayDeque<>();
+        pendingReplies = new CorrelationTable(TASK_REPLY_TIMEOUT_MS, TIMEOUT_TICK_MS,
+                System.currentTimeMillis());
+        loadSnapshot = new LoadSnapshot(machineIds);
+        capabilityIndex = new CapabilityIndex(machineIds);
+        contractNet = new ContractNetManager(BID_WINDOW_MS, TIMEOUT_TICK_MS, System.currentTimeMillis());
+
+        // Politique de répartition : argument optionnel "P2C" | "LEAST_QUEUE" | "WRR"
+        // Mode d'envoi : second argument optionnel "BATCH"
+        // Charge : troisième argument optionnel, ex. "POISSON:rate=20,seed=7"
+        Object[] args = getArguments();
+        String policyName = args != null && args.length > 0 ? (String) args[0] : "P2C";
+        batchMode = args != null && args.length > 1 && "BATCH".equalsIgnoreCase((String) args[1]);
+        long seed = DEFAULT_SEED;
+        if (args != null && args.length > 2) {
+            try {
+                workload = WorkloadEngine.parse((String) args[2]);
+                seed = workload.getSeed();
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("⚠️ Charge invalide (" + args[2] + "): " + e.getMessage() +
+                        " - génération périodique par défaut");
+            }
+        }
+        random = new Random(seed);
+        dispatchPolicy = DispatchPolicy.forName(policyName, random);
 
         System.out.println("🎯 ===== GÉNÉRATEUR DE TÂCHES DÉMARRÉ =====");
         System.out.println("📦 Injection de tâches dans le système...");
+        System.out.println("🧭 Politique de répartition: " + dispatchPolicy.name() +
+                (batchMode ? " | envoi par lots" : ""));
+        System.out.println("🌊 Charge: " + (workload != null ? workload : "périodique (graine " + seed + ")"));
 
         // Attendre que le système soit prêt apres 5s (waker c'est un réveil qui attend 5 secondes)
         addBehaviour(new jade.core.behaviours.WakerBehaviour(this, 5000) {
@@ -53,6 +143,17 @@ public class TaskGeneratorAgent extends Agent {
             }
         });
 
+        // Échéances des tâches envoyées et des fenêtres d'offres (roues temporelles)
+        addBehaviour(new TickerBehaviour(this, TIMEOUT_TICK_MS) {
+            protected void onTick() {
+                long now = System.currentTimeMillis();
+                if (pendingReplies.expire(now, request -> handleTimeout(request)) > 0) {
+                    drainPendingTasks();
+                }
+                contractNet.expire(now, negotiation -> closeNegotiation(negotiation));
+            }
+        });
+
         // Statistiques périodiques
         addBehaviour(new TickerBehaviour(this, 15000) {
             protected void onTick() {
@@ -62,6 +163,11 @@ public class TaskGeneratorAgent extends Agent {
     }
 
     private void startTaskGeneration() {
+        if (workload != null) {
+            startWorkload();
+            return;
+        }
+
         // Génération continue de tâches
         addBehaviour(new TickerBehaviour(this, 3000) {
             protected void onTick() {
@@ -75,8 +181,51 @@ public class TaskGeneratorAgent extends Agent {
                 generateTaskBurst();
             }
         });
+
+        // Tâches complexes attribuées par Contract Net
+        addBehaviour(new TickerBehaviour(this, 30000) {
+            protected void onTick() {
+                generateComplexTask();
+            }
+        });
+    }
+
+
+    /**
+     * Charge en boucle ouverte : un seul TickerBehaviour émet toutes les arrivées échues,
+     * regroupées (un lot par machine en mode lot), quel que soit le débit du modèle.
+     */
+    private void startWorkload() {
+        workload.start(System.currentTimeMillis());
+        addBehaviour(new TickerBehaviour(this, WORKLOAD_TICK_MS) {
+            protected void onTick() {
+                boolean started = beginBatch();
+                workload.poll(System.currentTimeMillis(), arrival -> emitArrival(arrival));
+                if (started) flushBatches();
+
+                if (workload.isFinished()) {
+                    System.out.println("🏁 Charge terminée: " + workload);
+                    stop();
+                }
+            }
+        });
     }
 
+    private void emitArrival(WorkloadEngine.Arrival arrival) {
+        String taskId = arrival.getTaskId();
+        if (taskId == null) {
+            taskCounter++;
+            taskId = (arrival.getKind() == WorkloadEngine.Kind.COMPLEX ? "COMPLEX_TASK_" : "TASK_") + taskCounter;
+        }
+        if (arrival.getKind() == WorkloadEngine.Kind.COMPLEX) {
+            negotiateTask(taskId, arrival.getPriority(), arrival.getCapability());
+        } else {
+            // Instant d'arrivée prévu : un retard du générateur compte dans la latence
+            submitTask(taskId, arrival.getPriority(), arrival.getCapability(), 1, null, arrival.getAt(),
+                    deadlineFor(arrival.getAt(), arrival.getPriority()));
+            tasksGenerated++;
+        }
+    }
 
     //Génère une tâche simple
     private void generateTask() {
@@ -85,15 +234,11 @@ public class TaskGeneratorAgent extends Agent {
         String taskId = "TASK_" + taskCounter;  // "TASK_1"
         // 2. PRIORITÉ ALÉATOIRE (1-10)
         int priority = random.nextInt(10) + 1;  // Ex: 7
+        Capability capability = randomCapability();
 
-        // 3. Choisir une machine au hasard
-        String targetMachine = machineIds.get(random.nextInt(machineIds.size()));
-        // machineIds = ["M1", "M2", "M3", "M4"]
-        // random.nextInt(4) → 0, 1, 2 ou 3
-        // Ex: 2 → "M3"
-
-        // 4. ENVOYER LA TÂCHE
-        sendTaskToMachine(taskId, targetMachine, priority);
+        // 3. ENVOYER LA TÂCHE (ou la mettre en attente faute de crédits)
+        long now = System.currentTimeMillis();
+        submitTask(taskId, priority, capability, 1, null, now, deadlineFor(now, priority));
         tasksGenerated++;
     }
 
@@ -104,38 +249,60 @@ public class TaskGeneratorAgent extends Agent {
         // 1. NOMBRE ALÉATOIRE DE TÂCHES (5-15)
         int burstSize = 5 + random.nextInt(10); // 5-15 tâches
 
-        // 2️. CRÉER TOUTES LES TÂCHES D'UN COUP
+        // 2️. CRÉER TOUTES LES TÂCHES D'UN COUP (un lot par machine en mode lot)
+        boolean started = beginBatch();
         for (int i = 0; i < burstSize; i++) {
             taskCounter++;
             String taskId = "BURST_TASK_" + taskCounter;
             int priority = 7 + random.nextInt(3); // Priorité haute
 
-            String targetMachine = machineIds.get(random.nextInt(machineIds.size()));
-            sendTaskToMachine(taskId, targetMachine, priority);
+            long now = System.currentTimeMillis();
+            submitTask(taskId, priority, randomCapability(), 1, null, now, deadlineFor(now, priority));
             tasksGenerated++;
         }
+        if (started) flushBatches();
     }
     //Génère une tâche complexe nécessitant négociation
     private void generateComplexTask() {
         taskCounter++;
-        String taskId = "COMPLEX_TASK_" + taskCounter;
+        negotiateTask("COMPLEX_TASK_" + taskCounter, 6 + random.nextInt(5), randomCapability());
+    }
 
-        System.out.println("🎯 Génération tâche complexe: " + taskId);
+    // Contract Net : CFP aux machines qui ont la capacité, puis fenêtre d'offres
+    private void negotiateTask(String taskId, int priority, Capability capability) {
+        System.out.println("🎯 Génération tâche complexe: " + taskId + " (" + capability + ")");
 
-        // Envoyer un CFP (Call For Proposal) à toutes les machines
+        // Envoyer un CFP (Call For Proposal) aux seules machines qui ont la capacité
         ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+        eligible = capabilityIndex.match(capability, eligible);
+        int invited = 0;
 
        //  négociation entre plusieurs machines, via le protocole CFP (Call For Proposal)
-        for (String machineId : machineIds) {
-            cfp.addReceiver(new AID(machineId, AID.ISLOCALNAME));
+        for (int i = CapabilityIndex.nextSetBit(eligible, 0); i >= 0; i = CapabilityIndex.nextSetBit(eligible, i + 1)) {
+            cfp.addReceiver(new AID(capabilityIndex.machineAt(i), AID.ISLOCALNAME));
+            invited++;
+        }
+        tasksGenerated++;
+        if (invited == 0) {
+            System.out.println("🔇 Aucune machine " + capability + " connue - envoi classique");
+            long now = System.currentTimeMillis();
+            submitTask(taskId, priority, capability, 1, null, now, deadlineFor(now, priority));
+            return;
         }
 
         cfp.setContent("CFP:" + taskId + ":REQUIREMENTS:HIGH_CAPACITY");
-        cfp.setConversationId("negotiation-" + taskId); // lier tous les messages qui font partie de la même discussio
+        String conversationId = "negotiation-" + taskId;
+        cfp.setConversationId(conversationId); // lier tous les messages qui font partie de la même discussio
         send(cfp);
 
-        System.out.println("📢 CFP envoyé à " + machineIds.size() + " machines");
-        tasksGenerated++;
+        // Ouvrir la fenêtre de collecte des offres
+        contractNet.open(conversationId, taskId, priority, capability, invited, System.currentTimeMillis());
+
+        System.out.println("📢 CFP envoyé à " + invited + " machines");
+    }
+
+    private Capability randomCapability() {
+        return Capability.fromCode(random.nextInt(Capability.count()));
     }
 
     /**
@@ -158,76 +325,412 @@ public class TaskGeneratorAgent extends Agent {
         tasksGenerated++;
     }
 
+    /**
+     * Choisit la machine cible selon la politique, parmi celles qui ont la capacité et des crédits.
+     * La machine à éviter n'est reprise que si c'est la seule candidate.
+     * @return l'identifiant, ou null si aucune machine n'a de crédit
+     */
+    private String chooseMachine(Capability capability, String avoid) {
+        eligible = capabilityIndex.match(capability, eligible);
+        Integer avoidIndex = loadSnapshot.indexOf(avoid);
+        int index = dispatchPolicy.select(loadSnapshot, credits, eligible, avoidIndex != null ? avoidIndex : -1);
+        if (index < 0 && avoidIndex != null) {
+            index = dispatchPolicy.select(loadSnapshot, credits, eligible, -1);
+        }
+        return index >= 0 ? machineIds.get(index) : null;
+    }
+
+    /**
+     * Place une tâche sur une machine qui a des crédits,
+     * sinon la met dans la file bornée du générateur.
+     * @param avoid machine qui vient de refuser ou de ne pas répondre (null si premier envoi)
+     * @param createdAt création de la tâche, conservée d'une tentative à l'autre (latence de bout en bout)
+     * @param deadline échéance absolue, conservée elle aussi (0 si aucune)
+     */
+    private void submitTask(String taskId, int priority, Capability capability, int attempt, String avoid,
+                            long createdAt, long deadline) {
+        String targetMachine = pendingTasks.isEmpty() ? chooseMachine(capability, avoid) : null;
+
+        if (targetMachine != null) {
+            sendTaskToMachine(taskId, targetMachine, priority, capability, attempt, createdAt, deadline);
+        } else if (pendingTasks.size() < MAX_PENDING_TASKS) {
+            pendingTasks.addLast(new PendingTask(taskId, priority, capability, attempt, avoid, createdAt, deadline));
+            tasksBuffered++;
+            drainPendingTasks();
+        } else {
+            tasksDropped++;
+            deadlineRefusalsByTask.remove(taskId);
+            System.out.println("🚫 File du générateur pleine - tâche abandonnée: " + taskId);
+        }
+    }
+
+    /**
+     * Envoie les tâches en attente tant qu'il reste des crédits (ordre FIFO) ;
+     * une tâche dont la capacité n'a plus de crédit ne bloque pas les suivantes.
+     */
+    private void drainPendingTasks() {
+        boolean started = beginBatch();
+        Iterator<PendingTask> it = pendingTasks.iterator();
+        while (it.hasNext() && credits.totalAvailable() > 0) {
+            PendingTask task = it.next();
+            String targetMachine = chooseMachine(task.capability, task.avoid);
+            if (targetMachine == null) {
+                continue;
+            }
+            it.remove();
+            sendTaskToMachine(task.taskId, targetMachine, task.priority, task.capability, task.attempt,
+                    task.createdAt, task.deadline);
+        }
+        if (started) flushBatches();
+    }
+
     /**
      * Envoie une tâche à une machine spécifique
      */
-    private void sendTaskToMachine(String taskId, String machineId, int priority) {
-        // 1️. CRÉER LE MESSAGE
+    private void sendTaskToMachine(String taskId, String machineId, int priority,
+                                   Capability capability, int attempt, long createdAt, long deadline) {
+        // 1️. CONSOMMER UN CRÉDIT (et compter la tâche dans la file estimée)
+        credits.consume(machineId);
+        loadSnapshot.onDispatch(loadSnapshot.indexOf(machineId));
+
+        // 2. ÉCHÉANCE DE RÉPONSE (suivie par tâche, même dans un lot)
+        String conversationId = "task-" + taskId;
+        pendingReplies.register(conversationId, taskId, machineId, priority, capability, attempt,
+                createdAt, deadline, System.currentTimeMillis());
+        boolean firm = deadline > 0 && deadlineRefusalsByTask.getOrDefault(taskId, 0) < DEADLINE_FIRM_REFUSALS;
+
+        // Mode lot : la tâche attend le flushBatches() dans le lot de sa machine
+        if (batching) {
+            TaskBatchMessage batch = openBatches.computeIfAbsent(machineId, id -> new TaskBatchMessage());
+            if (batch.size() == 0) {
+                batch.begin("B" + (++batchCounter), BATCH_ALL_OR_NOTHING);
+            }
+            batch.add(taskId, priority, Capability.codeOf(capability), createdAt).withDeadline(deadline, firm);
+            return;
+        }
 
+        // 3. CRÉER LE MESSAGE
         ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
         msg.addReceiver(new AID(machineId, AID.ISLOCALNAME));
-        // 2️. CONTENU
-        msg.setContent("TASK:" + taskId + ":" + priority);
-        // 3️. ID DE CONVERSATION (pour suivre)
-        msg.setConversationId("task-" + taskId);
-        // 4. ENVOYER
+        // 4. CONTENU (binaire) + ID DE CONVERSATION (pour suivre)
+        codec.write(msg, taskMessage.set(taskId, priority, Capability.codeOf(capability))
+                .withCreatedAt(createdAt).withDeadline(deadline, firm));
+        msg.setConversationId(conversationId);
+        // 5. ENVOYER
         send(msg);
 
         System.out.println("📤 Tâche envoyée: " + taskId +
                 " → " + machineId +
-                " (priorité: " + priority + ")");
+                " (priorité: " + priority + ", " + capability + ")");
+    }
+
+    /**
+     * Ouvre un regroupement par machine (mode lot uniquement).
+     * @return true si l'appelant doit appeler flushBatches() (pas de regroupement déjà ouvert)
+     */
+    private boolean beginBatch() {
+        if (!batchMode || batching) {
+            return false;
+        }
+        batching = true;
+        return true;
+    }
+
+    /**
+     * Envoie un message par machine : TASK_BATCH, ou TASK simple si le lot n'a qu'une tâche
+     */
+    private void flushBatches() {
+        batching = false;
+        for (Map.Entry<String, TaskBatchMessage> entry : openBatches.entrySet()) {
+            TaskBatchMessage batch = entry.getValue();
+            if (batch.size() == 0) continue;
+
+            ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+            msg.addReceiver(new AID(entry.getKey(), AID.ISLOCALNAME));
+            if (batch.size() == 1) {
+                codec.write(msg, taskMessage.set(batch.getTaskId(0), batch.getPriority(0), batch.getCapability(0))
+                        .withCreatedAt(batch.getCreatedAt(0)).withDeadline(batch.getDeadline(0), batch.isFirm(0)));
+                msg.setConversationId("task-" + batch.getTaskId(0));
+            } else {
+                codec.write(msg, batch);
+                msg.setConversationId("batch-" + batch.getBatchId());
+                batchesSent++;
+                tasksInBatches += batch.size();
+            }
+            send(msg);
+
+            System.out.println("📤 Lot " + batch.getBatchId() + " envoyé → " + entry.getKey() +
+                    " (" + batch.size() + " tâche" + (batch.size() > 1 ? "s" : "") + ")");
+            batch.begin(null, BATCH_ALL_OR_NOTHING);
+        }
+    }
+
+    /**
+     * Réponse groupée à un lot : une décision par tâche, un seul message
+     */
+    private void handleBatchReply(ACLMessage msg, String sender) {
+        try {
+            codec.read(msg, batchReply);
+        } catch (ProtocolException e) {
+            System.out.println("⚠️ Réponse de lot invalide de " + sender + ": " + e.getMessage());
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<CorrelationTable.PendingRequest> refused = new ArrayList<>();
+        int accepted = 0;
+        int late = 0;
+        for (int i = 0; i < batchReply.size(); i++) {
+            CorrelationTable.PendingRequest request =
+                    pendingReplies.complete("task-" + batchReply.getTaskId(i), now);
+            if (request == null) {
+                late++; // déjà expirée et réémise
+                continue;
+            }
+            credits.release(sender);
+            if (batchReply.isAccepted(i)) {
+                accepted++;
+                deadlineRefusalsByTask.remove(request.taskId);
+            } else {
+                if (batchReply.getReason(i) == TaskReplyMessage.REASON_DEADLINE) {
+                    onDeadlineRefusal(request.taskId);
+                }
+                refused.add(request);
+            }
+        }
+        tasksAccepted += accepted;
+        tasksRefused += refused.size();
+
+        // Crédits et charge d'abord : les tâches refusées sont réessayées ailleurs
+        if (batchReply.getCredits() >= 0) {
+            credits.advertise(sender, batchReply.getCredits());
+        }
+        if (!refused.isEmpty()) {
+            loadSnapshot.updateLoad(sender, batchReply.getLoad(), now);
+        }
+        System.out.println("📬 Lot " + batchReply.getBatchId() + " de " + sender + ": " +
+                accepted + " acceptée(s), " + refused.size() + " refusée(s)" +
+                (late > 0 ? ", " + late + " tardive(s)" : ""));
+
+        boolean started = beginBatch();
+        for (CorrelationTable.PendingRequest request : refused) {
+            retryTask(request.taskId, request.capability, request.attempt, sender, request.createdAt,
+                    request.deadline);
+        }
+        drainPendingTasks();
+        if (started) flushBatches();
     }
 
     /**
      * Gère les réponses des machines
      */
     private void handleResponse(ACLMessage msg) {
-        String content = msg.getContent();
         String sender = msg.getSender().getLocalName();
+        MessageType type = MessageCodec.peekType(msg);
+
+        // 0. ANNONCE DE CRÉDITS
+        if (type == MessageType.CREDIT) {
+            try {
+                codec.read(msg, creditMessage);
+            } catch (ProtocolException e) {
+                System.out.println("⚠️ Crédit invalide de " + sender + ": " + e.getMessage());
+                return;
+            }
+            credits.advertise(creditMessage.getMachineId(), creditMessage.getCredits());
+            if (creditMessage.getCapabilities() != 0
+                    && capabilityIndex.indexOf(creditMessage.getMachineId()) != null) {
+                capabilityIndex.register(creditMessage.getMachineId(), creditMessage.getCapabilities());
+            }
+            drainPendingTasks();
+            return;
+        }
 
-        // 1️. SI ACCEPTÉE
-        if (content.startsWith("ACCEPTED:")) {
-            tasksAccepted++;
-            String taskId = content.split(":")[1];
-            System.out.println("✅ Tâche acceptée: " + taskId + " par " + sender);
+        // 0 bis. RÉPONSE GROUPÉE À UN LOT
+        if (type == MessageType.TASK_BATCH_REPLY) {
+            handleBatchReply(msg, sender);
+            return;
+        }
 
-            // 2️. SI REFUSÉE
-        } else if (content.startsWith("REFUSED:")) {
-            tasksRefused++;
-            String taskId = content.split(":")[1];
-            System.out.println("❌ Tâche refusée: " + taskId + " par " + sender);
+        // 0 ter. ÉTAT D'UN SITE (photo de charge pour la politique de répartition)
+        if (type == MessageType.SITE_DIGEST) {
+            try {
+                codec.read(msg, digest);
+            } catch (ProtocolException e) {
+                System.out.println("⚠️ Digest invalide de " + sender + ": " + e.getMessage());
+                return;
+            }
+            SiteDigestView view = siteViews.computeIfAbsent(digest.getSiteId(), SiteDigestView::new);
+            if (view.apply(digest)) {
+                loadSnapshot.update(view, System.currentTimeMillis());
+                drainPendingTasks();
+            }
+            return;
+        }
 
-            // Réessayer avec une autre machine
-            retryTask(taskId);
+        // 1️. SI ACCEPTÉE / REFUSÉE (réponse binaire)
+        if (type == MessageType.TASK_ACCEPTED || type == MessageType.TASK_REFUSED) {
+            try {
+                codec.read(msg, taskReply);
+            } catch (ProtocolException e) {
+                System.out.println("⚠️ Réponse invalide de " + sender + ": " + e.getMessage());
+                return;
+            }
+            String taskId = taskReply.getTaskId();
+
+            // Réponse après expiration : le crédit a déjà été rendu et la tâche réémise
+            CorrelationTable.PendingRequest request =
+                    pendingReplies.complete(msg.getConversationId(), System.currentTimeMillis());
+            if (request == null) {
+                System.out.println("⌛ Réponse tardive ignorée: " + taskId + " de " + sender);
+                if (taskReply.getCredits() >= 0) {
+                    credits.advertise(sender, taskReply.getCredits());
+                }
+                drainPendingTasks();
+                return;
+            }
+
+            // La tâche n'est plus en vol ; la réponse porte les nouveaux crédits
+            credits.release(sender);
+            if (taskReply.getCredits() >= 0) {
+                credits.advertise(sender, taskReply.getCredits());
+            }
+
+            if (taskReply.isAccepted()) {
+                tasksAccepted++;
+                deadlineRefusalsByTask.remove(taskId);
+                System.out.println("✅ Tâche acceptée: " + taskId + " par " + sender);
+
+                // 2️. SI REFUSÉE
+            } else {
+                tasksRefused++;
+                loadSnapshot.updateLoad(sender, taskReply.getLoad(), System.currentTimeMillis());
+                System.out.println("❌ Tâche refusée: " + taskId + " par " + sender);
+                if (taskReply.getReason() == TaskReplyMessage.REASON_DEADLINE) {
+                    onDeadlineRefusal(taskId);
+                }
+
+                // Réessayer ailleurs quand une machine aura des crédits
+                retryTask(taskId, request.capability, request.attempt, sender, request.createdAt, request.deadline);
+            }
+            drainPendingTasks();
 
             // 3️. SI PROPOSITION (NÉGOCIATION)
         } else if (msg.getPerformative() == ACLMessage.PROPOSE) {
+            String content = msg.getContent();
             // Proposition reçue dans le cadre d'une négociation
             System.out.println("💡 Proposition reçue de " + sender + ": " + content);
 
-            // Accepter la meilleure proposition (simplifié)
-            ACLMessage accept = msg.createReply();
-            accept.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
-            accept.setContent("ACCEPTED");
-            send(accept);
+            // Offre hors fenêtre : rejetée tout de suite ; sinon attendre la clôture
+            boolean open = contractNet.isOpen(msg.getConversationId());
+            ContractNetManager.Negotiation complete = contractNet.onProposal(msg, System.currentTimeMillis());
+            if (!open) {
+                ACLMessage reject = msg.createReply();
+                reject.setPerformative(ACLMessage.REJECT_PROPOSAL);
+                reject.setContent("REJECTED:EXPIRED");
+                send(reject);
+            } else if (complete != null) {
+                closeNegotiation(complete);
+            }
+
+            // 4. PAS D'OFFRE / ATTRIBUTION IMPOSSIBLE
+        } else if (msg.getPerformative() == ACLMessage.REFUSE && msg.getContent() != null
+                && msg.getContent().startsWith("NO_BID:")) {
+            ContractNetManager.Negotiation complete = contractNet.onDecline(msg.getConversationId());
+            if (complete != null) {
+                closeNegotiation(complete);
+            }
+        } else if (msg.getPerformative() == ACLMessage.FAILURE && msg.getContent() != null
+                && msg.getContent().startsWith("AWARD_FAILED:")) {
+            // "AWARD_FAILED:<tâche>:CAPABILITY:<capacité>:CREATED:<ms>:DEADLINE:<ms>"
+            String[] parts = msg.getContent().split(":");
+            String taskId = parts[1];
+            Capability capability = parts.length >= 4 ? Capability.fromName(parts[3]) : null;
+            long createdAt = parts.length >= 6 ? Long.parseLong(parts[5]) : System.currentTimeMillis();
+            long deadline = parts.length >= 8 ? Long.parseLong(parts[7]) : 0;
+            System.out.println("⚠️ " + sender + " ne peut plus exécuter " + taskId + " - envoi classique");
+            submitTask(taskId, 8, capability, 1, sender, createdAt, deadline);
         }
     }
 
     /**
-     * Réessaie d'envoyer une tâche refusée
+     * Clôture d'une négociation : une seule attribution (meilleure offre),
+     * rejet des autres soumissionnaires ; sans offre, la tâche passe par l'envoi classique.
      */
-    private void retryTask(String taskId) {
+    private void closeNegotiation(ContractNetManager.Negotiation negotiation) {
+        ContractNetManager.Bid winner = contractNet.award(negotiation, System.currentTimeMillis());
+        if (winner == null) {
+            System.out.println("🔇 Aucune offre pour " + negotiation.taskId + " - envoi classique");
+            submitTask(negotiation.taskId, negotiation.priority, negotiation.capability, 1, null,
+                    negotiation.openedAt, deadlineFor(negotiation.openedAt, negotiation.priority));
+            return;
+        }
+
+        for (ContractNetManager.Bid bid : negotiation.bids) {
+            ACLMessage reply = bid.proposal.createReply();
+            if (bid == winner) {
+                reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
+                reply.setContent("AWARD:" + negotiation.taskId + ":PRIORITY:" + negotiation.priority +
+                        ":CAPABILITY:" + negotiation.capability + ":CREATED:" + negotiation.openedAt +
+                        ":DEADLINE:" + deadlineFor(negotiation.openedAt, negotiation.priority));
+            } else {
+                reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
+                reply.setContent("REJECTED:" + negotiation.taskId);
+            }
+            send(reply);
+        }
+        System.out.println("🏆 " + negotiation.taskId + " attribuée à " + winner.bidder +
+                " (score: " + String.format("%.2f", winner.score) + ", ETA: " + winner.eta +
+                "s, " + negotiation.bids.size() + " offre(s))");
+    }
+
+    /**
+     * Réessaie une tâche refusée : elle repasse par les crédits et la politique,
+     * en évitant la machine qui vient de la refuser.
+     */
+    private void retryTask(String taskId, Capability capability, int attempt, String refusedBy,
+                           long createdAt, long deadline) {
         System.out.println("🔄 Nouvelle tentative pour: " + taskId);
 
-        // Copier la liste des machines
-        List<String> availableMachines = new ArrayList<>(machineIds);
+        int priority = 8; // Priorité augmentée pour retry (l'échéance d'origine est conservée)
+        submitTask(taskId, priority, capability, attempt, refusedBy, createdAt, deadline);
+    }
 
-        if (!availableMachines.isEmpty()) {
-            // Choisir une autre machine au hasard
-            String newTarget = availableMachines.get(random.nextInt(availableMachines.size()));
-            int priority = 8; // Priorité augmentée pour retry
+    // Échéance d'une nouvelle tâche : plus la priorité est haute, plus le budget est court
+    private static long deadlineFor(long createdAt, int priority) {
+        int p = Math.max(1, Math.min(10, priority));
+        return createdAt + DEADLINE_BASE_MS + (10 - p) * DEADLINE_STEP_MS;
+    }
+
+    // Refus « échéance intenable » : la tâche repart aussitôt ailleurs, en souple au-delà du seuil
+    private void onDeadlineRefusal(String taskId) {
+        deadlineRefusals++;
+        int refusals = deadlineRefusalsByTask.merge(taskId, 1, Integer::sum);
+        if (refusals == DEADLINE_FIRM_REFUSALS) {
+            deadlinesSoftened++;
+            System.out.println("⌛ " + taskId + " : échéance intenable sur " + refusals +
+                    " machines - envoi avec échéance souple");
+        }
+    }
 
-            sendTaskToMachine(taskId, newTarget, priority);
+    /**
+     * Pas de réponse dans le délai (machine en panne ou surchargée) :
+     * on rend le crédit, on considère la machine sans crédit jusqu'à sa prochaine annonce
+     * et on réémet la tâche ailleurs.
+     */
+    private void handleTimeout(CorrelationTable.PendingRequest request) {
+        credits.release(request.machineId);
+        credits.advertise(request.machineId, 0);
+
+        if (request.attempt < MAX_DISPATCH_ATTEMPTS) {
+            System.out.println("⏰ Pas de réponse de " + request.machineId + " pour " + request.taskId +
+                    " - réémission (tentative " + (request.attempt + 1) + "/" + MAX_DISPATCH_ATTEMPTS + ")");
+            submitTask(request.taskId, request.priority, request.capability, request.attempt + 1, request.machineId,
+                    request.createdAt, request.deadline);
+        } else {
+            tasksTimedOut++;
+            deadlineRefusalsByTask.remove(request.taskId);
+            System.out.println("💀 Tâche abandonnée après " + request.attempt + " expirations: " +
+                    request.taskId);
         }
     }
 
@@ -239,6 +742,22 @@ public class TaskGeneratorAgent extends Agent {
         System.out.println("📦 Tâches générées: " + tasksGenerated);
         System.out.println("✅ Tâches acceptées: " + tasksAccepted);
         System.out.println("❌ Tâches refusées: " + tasksRefused);
+        System.out.println("⏳ Tâches en attente de crédits: " + pendingTasks.size() +
+                " (total mises en attente: " + tasksBuffered + ", abandonnées: " + tasksDropped + ")");
+        System.out.println("🎟️ Crédits: " + credits);
+        System.out.println("🧭 Politique: " + dispatchPolicy.name() + " | Charges: " + loadSnapshot);
+        System.out.println("🧩 Capacités: " + capabilityIndex);
+        if (batchMode) {
+            System.out.println("📦 Lots envoyés: " + batchesSent + " (" + tasksInBatches + " tâches)");
+        }
+        System.out.println("🤝 Contract Net: " + contractNet);
+        if (workload != null) {
+            System.out.println("🌊 Charge: " + workload);
+        }
+        System.out.println("⌛ Refus pour échéance intenable: " + deadlineRefusals +
+                " | tâches passées en échéance souple: " + deadlinesSoftened);
+        System.out.println("⏱️ Requêtes: " + pendingReplies +
+                " | abandonnées sans réponse: " + tasksTimedOut);
 
         if (tasksGenerated > 0) {
             double acceptanceRate = (double) tasksAccepted / tasksGenerated * 100;
@@ -253,4 +772,26 @@ public class TaskGeneratorAgent extends Agent {
         System.out.println("🛑 Générateur de tâches arrêté");
         printStatistics();
     }
+
+    // Tâche en attente de crédits
+    private static class PendingTask {
+        final String taskId;
+        final int priority;
+        final Capability capability; // null = sans exigence
+        final int attempt;
+        final String avoid;
+        final long createdAt;
+        final long deadline; // 0 = sans échéance
+
+        PendingTask(String taskId, int priority, Capability capability, int attempt, String avoid,
+                    long createdAt, long deadline) {
+            this.taskId = taskId;
+            this.priority = priority;
+            this.capability = capability;
+            this.attempt = attempt;
+            this.avoid = avoid;
+            this.createdAt = createdAt;
+            this.deadline = deadline;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,332 @@
+package festo.distributed;
+
+import festo.utils.Logger;
+import java.util.*;
+
+/**
+ * File locale des tâches d'une machine : tas binaire indexé, échéance la plus proche d'abord (EDF).
+ *
+ * Une tâche sans échéance reçoit une échéance virtuelle
+ * {@code arrivée + (10 - priorité) * agingStepMs} : entre elles, l'ordre est celui de la priorité
+ * avec vieillissement (chaque {@code agingStepMs} d'attente vaut +1 de priorité, pas de famine),
+ * et elles s'intercalent avec les tâches à échéance réelle sur le même axe de temps.
+ * La clé ne dépend pas de l'instant présent : le tas reste valide sans réordonnancement.
+ *
+ * Ajout et retrait en O(log n), retrait par identifiant en O(log n) (transferts, annulations).
+ * Les données sont en tableaux primitifs ; un emplacement libéré est réutilisé.
+ */
+public class TaskQueue {
+
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int MAX_PRIORITY = 10;
+
+    private final long agingStepMs;
+
+    // Données par emplacement
+    private String[] taskIds = new String[16];
+    private int[] priorities = new int[16];
+    private long[] enqueuedAt = new long[16];
+    private long[] createdAt = new long[16];  // création chez le générateur (latence de bout en bout)
+    private long[] deadlines = new long[16];
+    private int[] capabilities = new int[16]; // capacité exigée (Capability.ANY si aucune), suit la tâche cédée
+    private long[] keys = new long[16];
+    private long[] sequences = new long[16];  // ordre d'arrivée pour départager
+    private int[] heapIndex = new int[16];    // emplacement -> position dans le tas
+
+    private int[] heap = new int[16];         // position -> emplacement
+    private int size;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int slotCount;
+    private long nextSequence;
+    private final Map<String, Integer> slotById = new HashMap<>();
+
+    // Statistiques d'attente par priorité (1..10)
+    private final long[] servedByPriority = new long[MAX_PRIORITY + 1];
+    private final long[] totalWaitByPriority = new long[MAX_PRIORITY + 1];
+    private final long[] maxWaitByPriority = new long[MAX_PRIORITY + 1];
+    private long deadlineMisses;
+
+    // Dernière tâche retirée par poll()
+    private int lastPriority;
+    private long lastWait;
+    private long lastCreatedAt;
+    private long lastDeadline;
+
+    public TaskQueue(long agingStepMs) {
+        this.agingStepMs = agingStepMs;
+    }
+
+    /**
+     * Ajoute une tâche.
+     * @return false si la tâche est déjà dans la file
+     */
+    public boolean offer(String taskId, int priority, long deadline, long now) {
+        return offer(taskId, priority, deadline, now, now);
+    }
+
+    /**
+     * Ajoute une tâche en conservant son instant de création ({@code created}, 0 si inconnu).
+     * @return false si la tâche est déjà dans la file
+     */
+    public boolean offer(String taskId, int priority, long deadline, long now, long created) {
+        return offer(taskId, priority, deadline, now, created, Capability.ANY);
+    }
+
+    /**
+     * Ajoute une tâche avec sa capacité exigée, rendue par {@link #removeTail} quand elle est cédée.
+     * @return false si la tâche est déjà dans la file
+     */
+    public boolean offer(String taskId, int priority, long deadline, long now, long created, int capability) {
+        if (slotById.containsKey(taskId)) {
+            return false;
+        }
+        int slot = allocateSlot();
+        int p = Math.max(1, Math.min(MAX_PRIORITY, priority));
+        taskIds[slot] = taskId;
+        priorities[slot] = p;
+        enqueuedAt[slot] = now;
+        createdAt[slot] = created > 0 ? created : now;
+        deadlines[slot] = deadline;
+        capabilities[slot] = capability;
+        keys[slot] = keyOf(p, deadline, now);
+        sequences[slot] = nextSequence++;
+        slotById.put(taskId, slot);
+
+        heap[size] = slot;
+        heapIndex[slot] = size;
+        size++;
+        siftUp(size - 1);
+        return true;
+    }
+
+    /**
+     * Retire la tâche la plus prioritaire (vieillissement compris) et enregistre son attente.
+     * @return l'identifiant, ou null si la file est vide
+     */
+    public String poll(long now) {
+        if (size == 0) {
+            return null;
+        }
+        int slot = heap[0];
+        String taskId = taskIds[slot];
+
+        int p = priorities[slot];
+        long wait = Math.max(0, now - enqueuedAt[slot]);
+        servedByPriority[p]++;
+        totalWaitByPriority[p] += wait;
+        maxWaitByPriority[p] = Math.max(maxWaitByPriority[p], wait);
+        if (now > deadlines[slot]) {
+            deadlineMisses++;
+        }
+        lastPriority = p;
+        lastWait = wait;
+        lastCreatedAt = createdAt[slot];
+        lastDeadline = deadlines[slot];
+
+        removeAt(0);
+        return taskId;
+    }
+
+    /**
+     * Nombre de tâches en file servies avant une nouvelle tâche de cette priorité et échéance
+     * (à clé égale, les tâches déjà en file passent d'abord).
+     */
+    public int countAhead(int priority, long deadline, long now) {
+        long key = keyOf(Math.max(1, Math.min(MAX_PRIORITY, priority)), deadline, now);
+        int ahead = 0;
+        for (int position = 0; position < size; position++) {
+            if (keys[heap[position]] >= key) {
+                ahead++;
+            }
+        }
+        return ahead;
+    }
+
+    /** Retire une tâche par identifiant (transfert, annulation). */
+    public boolean remove(String taskId) {
+        Integer slot = slotById.get(taskId);
+        if (slot == null) {
+            return false;
+        }
+        removeAt(heapIndex[slot]);
+        return true;
+    }
+
+    /**
+     * Retire jusqu'à {@code count} tâches parmi les moins prioritaires (vieillissement compris),
+     * pour les céder à une autre machine. Le minimum d'un tas est toujours parmi les feuilles.
+     * @return nombre de tâches retirées, écrites dans ids / priorities / created / taskDeadlines / taskCapabilities
+     */
+    public int removeTail(int count, String[] ids, int[] priorities, long[] created, long[] taskDeadlines,
+                          int[] taskCapabilities) {
+        int removed = 0;
+        while (removed < count && size > 0) {
+            int worst = size >>> 1; // première feuille
+            for (int position = worst + 1; position < size; position++) {
+                if (before(heap[worst], heap[position])) {
+                    worst = position;
+                }
+            }
+            int slot = heap[worst];
+            ids[removed] = taskIds[slot];
+            priorities[removed] = this.priorities[slot];
+            created[removed] = createdAt[slot];
+            taskDeadlines[removed] = deadlines[slot];
+            taskCapabilities[removed] = capabilities[slot];
+            removed++;
+            removeAt(worst);
+        }
+        return removed;
+    }
+
+    public boolean contains(String taskId) {
+        return slotById.containsKey(taskId);
+    }
+
+    /** Identifiant de la tâche en tête, sans la retirer. */
+    public String peek() {
+        return size > 0 ? taskIds[heap[0]] : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Priorité de la dernière tâche retirée par poll(). */
+    public int getLastPriority() {
+        return lastPriority;
+    }
+
+    /** Attente (ms) de la dernière tâche retirée par poll(). */
+    public long getLastWait() {
+        return lastWait;
+    }
+
+    /** Instant de création de la dernière tâche retirée par poll(). */
+    public long getLastCreatedAt() {
+        return lastCreatedAt;
+    }
+
+    /** Échéance de la dernière tâche retirée par poll() ({@link #NO_DEADLINE} si aucune). */
+    public long getLastDeadline() {
+        return lastDeadline;
+    }
+
+    /** Tâches démarrées après leur échéance. */
+    public long getDeadlineMisses() {
+        return deadlineMisses;
+    }
+
+    public double averageWait(int priority) {
+        return servedByPriority[priority] > 0
+                ? (double) totalWaitByPriority[priority] / servedByPriority[priority] : 0;
+    }
+
+    public void printStatistics(String owner) {
+        Logger.log("⏳ Attente par priorité - " + owner + " (file: " + size +
+                ", démarrées après échéance: " + deadlineMisses + ")");
+        for (int p = MAX_PRIORITY; p >= 1; p--) {
+            if (servedByPriority[p] == 0) continue;
+            Logger.log(String.format("   P%-2d %6d tâches | attente moy: %8.1f ms, max: %7d ms",
+                    p, servedByPriority[p], averageWait(p), maxWaitByPriority[p]));
+        }
+    }
+
+    /*
+     * Tas
+     */
+
+    // Clé du tas : plus grande = servie plus tôt (opposé de l'échéance, réelle ou virtuelle)
+    private long keyOf(int priority, long deadline, long now) {
+        long effective = deadline != NO_DEADLINE ? deadline : now + (MAX_PRIORITY - priority) * agingStepMs;
+        return -effective;
+    }
+
+    // a passe avant b ?
+    private boolean before(int a, int b) {
+        if (keys[a] != keys[b]) {
+            return keys[a] > keys[b];
+        }
+        if (deadlines[a] != deadlines[b]) {
+            return deadlines[a] < deadlines[b];
+        }
+        return sequences[a] < sequences[b];
+    }
+
+    private void removeAt(int position) {
+        int slot = heap[position];
+        size--;
+        if (position != size) {
+            int last = heap[size];
+            heap[position] = last;
+            heapIndex[last] = position;
+            siftDown(position);
+            siftUp(heapIndex[last]);
+        }
+        slotById.remove(taskIds[slot]);
+        taskIds[slot] = null;
+        releaseSlot(slot);
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentSlot = heap[parent];
+            if (!before(slot, parentSlot)) break;
+            heap[position] = parentSlot;
+            heapIndex[parentSlot] = position;
+            position = parent;
+        }
+        heap[position] = slot;
+        heapIndex[slot] = position;
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && before(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!before(heap[child], slot)) break;
+            heap[position] = heap[child];
+            heapIndex[heap[child]] = position;
+            position = child;
+        }
+        heap[position] = slot;
+        heapIndex[slot] = position;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == taskIds.length) {
+            int capacity = taskIds.length * 2;
+            taskIds = Arrays.copyOf(taskIds, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+            enqueuedAt = Arrays.copyOf(enqueuedAt, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            capabilities = Arrays.copyOf(capabilities, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            sequences = Arrays.copyOf(sequences, capacity);
+            heapIndex = Arrays.copyOf(heapIndex, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+        }
+        return slotCount++;
+    }
+
+    private void releaseSlot(int slot) {
+        freeSlots[freeCount++] = slot;
+    }
+}
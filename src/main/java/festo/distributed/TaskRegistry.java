@@ -0,0 +1,221 @@
+package festo.distributed;
+
+import java.util.Arrays;
+
+/**
+ * Registre de propriété des tâches d'un site : identifiant de tâche -> machine propriétaire,
+ * avec expiration. Une tâche ne peut être admise que par une machine à la fois.
+ *
+ * Table à adressage ouvert (sondage linéaire, capacité puissance de deux) de deux longs par entrée :
+ * l'empreinte 64 bits de l'identifiant (0 = case vide) et {@code expiration << 16 | propriétaire}.
+ * Aucune chaîne n'est retenue. Les entrées expirées comptent comme absentes ; elles sont
+ * purgées en réinsérant les entrées vivantes dans une seconde table déjà allouée
+ * (pas de pierres tombales), quand la table se remplit.
+ */
+public class TaskRegistry {
+
+    /** Résultat d'une revendication. */
+    public static final int CLAIMED = 0;      // tâche libre : la machine en devient propriétaire
+    public static final int TRANSFERRED = 1;  // cédée par l'ancien propriétaire (vol, transfert)
+    public static final int REPEATED = 2;     // déjà admise par cette même machine
+    public static final int DUPLICATE = 3;    // déjà admise par une autre machine
+
+    public static final int NO_OWNER = -1;
+    private static final int MAX_OWNERS = 1 << 16;
+    private static final long OWNER_MASK = MAX_OWNERS - 1;
+    private static final double MAX_FILL = 0.5;
+
+    private final long epoch; // les expirations sont relatives à la création du registre
+    private long[] fingerprints;
+    private long[] entries;
+    private long[] spareFingerprints;
+    private long[] spareEntries;
+    private int mask;
+    private int used; // cases occupées, expirées comprises
+
+    // Statistiques
+    private long claims;
+    private long transfers;
+    private long repeatsBlocked;
+    private long duplicatesBlocked;
+    private long purges;
+
+    public TaskRegistry(int expectedTasks, long now) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedTasks * 2 - 1)) << 1;
+        this.epoch = now;
+        allocate(capacity);
+    }
+
+    /**
+     * Une machine revendique une tâche qu'elle vient d'admettre.
+     * @param from ancien propriétaire qui la lui cède (vol, transfert), NO_OWNER sinon
+     * @param ttlMs durée de vie de l'entrée si la revendication aboutit
+     * @return CLAIMED, TRANSFERRED, REPEATED ou DUPLICATE
+     */
+    public int claim(String taskId, int owner, int from, long now, long ttlMs) {
+        if (owner < 0 || owner >= MAX_OWNERS) {
+            throw new IllegalArgumentException("Propriétaire hors plage: " + owner);
+        }
+        long fingerprint = fingerprint(taskId);
+        int index = find(fingerprint);
+        if (index >= 0 && !isExpired(entries[index], now)) {
+            int current = (int) (entries[index] & OWNER_MASK);
+            if (from != NO_OWNER && current == from && from != owner) {
+                entries[index] = pack(owner, now + ttlMs);
+                transfers++;
+                return TRANSFERRED;
+            }
+            if (current == owner) {
+                repeatsBlocked++;
+                return REPEATED;
+            }
+            duplicatesBlocked++;
+            return DUPLICATE;
+        }
+
+        if (index >= 0) {
+            entries[index] = pack(owner, now + ttlMs); // entrée expirée : réutilisée sur place
+        } else {
+            if (used + 1 > mask * MAX_FILL) {
+                purge(now);
+            }
+            insert(fingerprint, pack(owner, now + ttlMs));
+        }
+        claims++;
+        return CLAIMED;
+    }
+
+    /** Propriétaire actuel, NO_OWNER si inconnu ou expiré. */
+    public int ownerOf(String taskId, long now) {
+        int index = find(fingerprint(taskId));
+        if (index < 0 || isExpired(entries[index], now)) {
+            return NO_OWNER;
+        }
+        return (int) (entries[index] & OWNER_MASK);
+    }
+
+    /** Redéfinit la durée de vie restante d'une entrée (tâche terminée : garder juste de quoi bloquer les réémissions). */
+    public boolean expireAfter(String taskId, long now, long ttlMs) {
+        int index = find(fingerprint(taskId));
+        if (index < 0 || isExpired(entries[index], now)) {
+            return false;
+        }
+        entries[index] = pack((int) (entries[index] & OWNER_MASK), now + ttlMs);
+        return true;
+    }
+
+    /**
+     * Libère toutes les tâches d'un propriétaire (panne) : elles pourront être admises ailleurs.
+     * @return nombre d'entrées libérées
+     */
+    public int releaseOwner(int owner, long now) {
+        int released = 0;
+        for (int i = 0; i <= mask; i++) {
+            if (fingerprints[i] != 0 && (entries[i] & OWNER_MASK) == owner && !isExpired(entries[i], now)) {
+                entries[i] = pack(owner, now - 1);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /** Entrées vivantes (parcours complet, pour les rapports). */
+    public int liveCount(long now) {
+        int live = 0;
+        for (int i = 0; i <= mask; i++) {
+            if (fingerprints[i] != 0 && !isExpired(entries[i], now)) live++;
+        }
+        return live;
+    }
+
+    public long getDuplicatesBlocked() { return duplicatesBlocked; }
+    public long getRepeatsBlocked() { return repeatsBlocked; }
+    public long getClaims() { return claims; }
+    public long getTransfers() { return transfers; }
+
+    /*
+     * Table
+     */
+
+    private int find(long fingerprint) {
+        int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (fingerprints[index] != 0) {
+            if (fingerprints[index] == fingerprint) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long fingerprint, long entry) {
+        int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (fingerprints[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        fingerprints[index] = fingerprint;
+        entries[index] = entry;
+        used++;
+    }
+
+    // Réinsère les entrées vivantes dans la table de réserve ; double la capacité si elle reste trop pleine
+    private void purge(long now) {
+        int live = liveCount(now);
+        long[] oldFingerprints = fingerprints;
+        long[] oldEntries = entries;
+        int oldCapacity = mask + 1;
+
+        if (live + 1 > oldCapacity * MAX_FILL / 2) {
+            allocate(oldCapacity * 2);
+        } else {
+            fingerprints = spareFingerprints;
+            entries = spareEntries;
+            spareFingerprints = oldFingerprints;
+            spareEntries = oldEntries;
+            Arrays.fill(fingerprints, 0);
+        }
+        used = 0;
+        for (int i = 0; i < oldCapacity; i++) {
+            if (oldFingerprints[i] != 0 && !isExpired(oldEntries[i], now)) {
+                insert(oldFingerprints[i], oldEntries[i]);
+            }
+        }
+        purges++;
+    }
+
+    private void allocate(int capacity) {
+        fingerprints = new long[capacity];
+        entries = new long[capacity];
+        spareFingerprints = new long[capacity];
+        spareEntries = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private long pack(int owner, long expiresAt) {
+        return (Math.max(0, expiresAt - epoch) << 16) | owner;
+    }
+
+    private boolean isExpired(long entry, long now) {
+        return (entry >>> 16) <= now - epoch;
+    }
+
+    // FNV-1a 64 bits puis mélange final ; 0 est réservé aux cases vides
+    static long fingerprint(String taskId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < taskId.length(); i++) {
+            hash ^= taskId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d revendications, %d transferts, %d doublons bloqués (%d même machine), " +
+                        "capacité %d, %d purges", claims, transfers, duplicatesBlocked + repeatsBlocked,
+                repeatsBlocked, mask + 1, purges);
+    }
+}
@@ -0,0 +1,155 @@
+package festo.distributed;
+
+import festo.protocol.TransferTasksMessage;
+
+import java.util.Arrays;
+
+/**
+ * Plan de rééquilibrage : combien de tâches déplacer de quelle source vers quelle receveuse.
+ *
+ * Un groupe par ensemble de capacités des sources (leurs tâches exigent l'une d'elles).
+ * Dans un groupe, les files sont ramenées vers la moyenne des machines qui couvrent ces capacités :
+ * excédents des sources et déficits des receveuses (bornés par leurs places libres) sont triés,
+ * puis appariés par deux pointeurs, du plus gros excédent vers le plus gros déficit.
+ * Utilisé par le coordinateur de site (machines du site) et par l'agrégateur (entre shards).
+ */
+public class TransferPlanner {
+
+    public static final int NEUTRAL = 0;  // compte dans la moyenne, ne donne ni ne reçoit
+    public static final int DONOR = 1;
+    public static final int RECEIVER = 2;
+
+    private int size;
+    private String[] machineIds = new String[16];
+    private long[] masks = new long[16];
+    private int[] queues = new int[16];   // après les mouvements déjà planifiés
+    private int[] free = new int[16];
+    private int[] roles = new int[16];
+    private int[] surplus = new int[16];  // excédent restant d'une source après le plan
+
+    private long[] groupMasks = new long[4];
+    private long[] donorKeys = new long[16];
+    private long[] receiverKeys = new long[16];
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(String machineId, long capabilityMask, int queue, int freeCapacity, int role) {
+        ensureCapacity(size + 1);
+        machineIds[size] = machineId;
+        masks[size] = capabilityMask;
+        queues[size] = queue;
+        free[size] = freeCapacity;
+        roles[size] = role;
+        surplus[size] = 0;
+        size++;
+    }
+
+    /**
+     * Calcule le plan et ajoute ses mouvements à {@code into}.
+     * @return nombre de mouvements ajoutés
+     */
+    public int plan(TransferTasksMessage into) {
+        int moves = 0;
+        int groups = 0;
+        for (int i = 0; i < size; i++) {
+            if (roles[i] != DONOR) continue;
+            boolean planned = false;
+            for (int g = 0; g < groups && !planned; g++) {
+                planned = groupMasks[g] == masks[i];
+            }
+            if (planned) continue;
+            if (groups == groupMasks.length) {
+                groupMasks = Arrays.copyOf(groupMasks, groups * 2);
+            }
+            groupMasks[groups++] = masks[i];
+            moves += planGroup(masks[i], into);
+        }
+        return moves;
+    }
+
+    private int planGroup(long groupMask, TransferTasksMessage into) {
+        int members = 0;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if ((masks[i] & groupMask) == groupMask) {
+                members++;
+                total += queues[i];
+            }
+        }
+        int high = (int) ((total + members - 1) / members); // file visée, arrondie
+        int low = (int) (total / members);
+
+        // Clés triables : quantité dans les 32 bits hauts, indice dans les 32 bits bas
+        int donors = 0;
+        int receivers = 0;
+        for (int i = 0; i < size; i++) {
+            if (roles[i] == DONOR && masks[i] == groupMask && queues[i] > high) {
+                donorKeys[donors++] = (long) (queues[i] - high) << 32 | i;
+            } else if (roles[i] == RECEIVER && (masks[i] & groupMask) == groupMask) {
+                int deficit = Math.min(low - queues[i], free[i]);
+                if (deficit > 0) {
+                    receiverKeys[receivers++] = (long) deficit << 32 | i;
+                }
+            }
+        }
+        Arrays.sort(donorKeys, 0, donors);
+        Arrays.sort(receiverKeys, 0, receivers);
+
+        int moves = 0;
+        int d = donors - 1;
+        int r = receivers - 1;
+        int left = d >= 0 ? (int) (donorKeys[d] >>> 32) : 0;
+        int room = r >= 0 ? (int) (receiverKeys[r] >>> 32) : 0;
+        while (d >= 0 && r >= 0) {
+            int move = Math.min(left, room);
+            int source = (int) donorKeys[d];
+            int target = (int) receiverKeys[r];
+            into.add(machineIds[source], machineIds[target], move);
+            moves++;
+            queues[source] -= move;
+            queues[target] += move;
+            free[target] -= move;
+            left -= move;
+            room -= move;
+            if (left == 0 && --d >= 0) {
+                left = (int) (donorKeys[d] >>> 32);
+            }
+            if (room == 0 && --r >= 0) {
+                room = (int) (receiverKeys[r] >>> 32);
+            }
+        }
+        // Sources restées au-dessus de la moyenne faute de receveuse
+        if (d >= 0) {
+            surplus[(int) donorKeys[d]] = left;
+            while (--d >= 0) {
+                surplus[(int) donorKeys[d]] = (int) (donorKeys[d] >>> 32);
+            }
+        }
+        return moves;
+    }
+
+    public int size() { return size; }
+    public String getMachineId(int i) { return machineIds[i]; }
+    public long getMask(int i) { return masks[i]; }
+    public int getQueue(int i) { return queues[i]; }
+    public int getFree(int i) { return free[i]; }
+    public int getRole(int i) { return roles[i]; }
+    /** Excédent qu'aucune receveuse n'a pu absorber au dernier plan (sources seulement). */
+    public int getSurplus(int i) { return surplus[i]; }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > machineIds.length) {
+            int newLength = Math.max(capacity, machineIds.length * 2);
+            machineIds = Arrays.copyOf(machineIds, newLength);
+            masks = Arrays.copyOf(masks, newLength);
+            queues = Arrays.copyOf(queues, newLength);
+            free = Arrays.copyOf(free, newLength);
+            roles = Arrays.copyOf(roles, newLength);
+            surplus = Arrays.copyOf(surplus, newLength);
+            donorKeys = Arrays.copyOf(donorKeys, newLength);
+            receiverKeys = Arrays.copyOf(receiverKeys, newLength);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package festo.distributed;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Moteur de charge en boucle ouverte pour le générateur de tâches.
+ *
+ * Les instants d'arrivée sont tirés d'un modèle, indépendamment des réponses du système :
+ * on peut donc le pousser jusqu'à saturation. Le générateur appelle {@link #poll} depuis
+ * un seul TickerBehaviour et reçoit en une fois toutes les arrivées échues (émission par lots),
+ * quel que soit le débit ou le palier en cours.
+ *
+ * Spécification : "MODE:clé=valeur,clé=valeur" (débits en tâches/s, durées en ms)
+ * - POISSON:rate=5
+ * - DIURNAL:min=0.5,peak=8,period=600000         (journée compressée, sinusoïde)
+ * - SHIFTS:rates=6/3/1,shift=120000              (un débit constant par équipe, en boucle)
+ * - STEP:start=1,step=1,every=30000,max=20       (paliers)
+ * - RAMP:from=1,to=20,over=300000                (rampe linéaire puis plateau)
+ * - REPLAY:file=orders.csv,speed=1,loop=false    (trace "offset_ms,task_id,priorité,capacité[,COMPLEX]")
+ * Options communes : seed (42 par défaut), duration (illimitée par défaut),
+ * complex (part de tâches Contract Net, 0.02 par défaut).
+ *
+ * Deux générateurs aléatoires graine-dérivés : un pour les instants, un pour les attributs,
+ * afin qu'un changement de mélange de tâches ne décale pas les arrivées.
+ */
+public class WorkloadEngine {
+
+    public enum Kind { SIMPLE, COMPLEX }
+
+    /** Arrivée (instance réutilisée : ne pas la conserver après le rappel). */
+    public static class Arrival {
+        long at;               // instant absolu (ms)
+        String taskId;         // null : identifiant attribué par le générateur
+        int priority;          // 0 : tirée par le moteur
+        Capability capability; // null : sans exigence
+        Kind kind;
+        boolean attributesSet; // fournis par la source (rejeu) : ne pas les tirer
+
+        public long getAt() { return at; }
+        public String getTaskId() { return taskId; }
+        public int getPriority() { return priority; }
+        public Capability getCapability() { return capability; }
+        public Kind getKind() { return kind; }
+
+        void clear() {
+            taskId = null;
+            priority = 0;
+            capability = null;
+            kind = null;
+            attributesSet = false;
+        }
+    }
+
+    /** Source d'arrivées : remplit l'instant (ms écoulées) et, s'il les connaît, les attributs. */
+    interface ArrivalProcess {
+        /** @return false quand la source est épuisée */
+        boolean next(Arrival into);
+    }
+
+    /** Débit instantané (tâches/s) en fonction du temps écoulé. */
+    interface RateProfile {
+        double rate(double elapsedMs);
+        double maxRate();
+        /** Débit nul à partir de {@code elapsedMs} et jusqu'à la fin du run. */
+        boolean exhausted(double elapsedMs);
+    }
+
+    private static final int MAX_PER_POLL = 10_000; // le reste attend le tick suivant
+
+    private final String description;
+    private final long seed;
+    private final ArrivalProcess process;
+    private final Random attributes;
+    private final double complexRatio;
+    private final long durationMs;
+
+    private final Arrival next = new Arrival();
+    private boolean hasNext;
+    private long startedAt = -1;
+
+    // Statistiques
+    private long emitted;
+    private long complexEmitted;
+    private long maxLag;       // retard d'émission sur l'instant prévu
+    private long totalLag;
+    private int maxPerPoll;
+
+    WorkloadEngine(String description, ArrivalProcess process, long seed, double complexRatio, long durationMs) {
+        this.description = description;
+        this.seed = seed;
+        this.process = process;
+        this.attributes = new Random(seed ^ 0x5DEECE66DL);
+        this.complexRatio = complexRatio;
+        this.durationMs = durationMs;
+    }
+
+    /**
+     * Construit un moteur depuis sa spécification.
+     * @throws IllegalArgumentException spécification invalide
+     * @throws IOException trace illisible (REPLAY)
+     */
+    public static WorkloadEngine parse(String spec) throws IOException {
+        int colon = spec.indexOf(':');
+        String mode = (colon >= 0 ? spec.substring(0, colon) : spec).trim().toUpperCase();
+        Map<String, String> options = new HashMap<>();
+        if (colon >= 0) {
+            for (String option : spec.substring(colon + 1).split(",")) {
+                if (option.trim().isEmpty()) continue;
+                String[] kv = option.split("=", 2);
+                if (kv.length != 2) {
+                    throw new IllegalArgumentException("Option invalide: " + option);
+                }
+                options.put(kv[0].trim().toLowerCase(), kv[1].trim());
+            }
+        }
+
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "0"));
+        if (duration < 0) {
+            throw new IllegalArgumentException("Durée négative: " + duration);
+        }
+        double complex = number(options, "complex", 0.02);
+        Random arrivals = new Random(seed);
+
+        ArrivalProcess process;
+        switch (mode) {
+            case "POISSON":
+                process = poisson(constant(rate(options, "rate", 1)), arrivals, duration);
+                break;
+            case "DIURNAL":
+                process = poisson(diurnal(rate(options, "min", 0.5), rate(options, "peak", 5),
+                        interval(options, "period", 600_000)), arrivals, duration);
+                break;
+            case "SHIFTS":
+                process = poisson(shifts(options.getOrDefault("rates", "5/2/1"),
+                        interval(options, "shift", 120_000)), arrivals, duration);
+                break;
+            case "STEP":
+                // step peut être négatif (paliers descendants) ; le débit s'arrête alors à 0
+                process = poisson(step(rate(options, "start", 1), number(options, "step", 1),
+                        interval(options, "every", 30_000), rate(options, "max", 20)), arrivals, duration);
+                break;
+            case "RAMP":
+                process = poisson(ramp(rate(options, "from", 1), rate(options, "to", 20),
+                        interval(options, "over", 300_000)), arrivals, duration);
+                break;
+            case "REPLAY":
+                String file = options.get("file");
+                if (file == null) {
+                    throw new IllegalArgumentException("REPLAY sans file=");
+                }
+                process = new TraceReplay(readTrace(file), number(options, "speed", 1),
+                        Boolean.parseBoolean(options.getOrDefault("loop", "false")));
+                break;
+            default:
+                throw new IllegalArgumentException("Mode de charge inconnu: " + mode);
+        }
+        return new WorkloadEngine(spec, process, seed, complex, duration);
+    }
+
+    /** Démarre l'horloge du modèle (premier appel de poll par défaut). */
+    public void start(long now) {
+        startedAt = now;
+        hasNext = advance();
+    }
+
+    /**
+     * Émet toutes les arrivées échues à {@code now}, dans l'ordre.
+     * @return nombre d'arrivées émises
+     */
+    public int poll(long now, Consumer<Arrival> emit) {
+        if (startedAt < 0) {
+            start(now);
+        }
+        int count = 0;
+        while (hasNext && next.at <= now && count < MAX_PER_POLL) {
+            long lag = now - next.at;
+            totalLag += lag;
+            maxLag = Math.max(maxLag, lag);
+            emitted++;
+            if (next.kind == Kind.COMPLEX) complexEmitted++;
+            count++;
+            emit.accept(next);
+            hasNext = advance();
+        }
+        maxPerPoll = Math.max(maxPerPoll, count);
+        return count;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /** Plus aucune arrivée (durée écoulée ou trace terminée). */
+    public boolean isFinished() {
+        return startedAt >= 0 && !hasNext;
+    }
+
+    // Prochaine arrivée avec ses attributs (tirés si la source ne les fournit pas)
+    private boolean advance() {
+        next.clear();
+        if (!process.next(next)) {
+            return false;
+        }
+        if (durationMs > 0 && next.at >= durationMs) {
+            return false;
+        }
+        next.at += startedAt;
+        if (!next.attributesSet) {
+            next.kind = attributes.nextDouble() < complexRatio ? Kind.COMPLEX : Kind.SIMPLE;
+            next.priority = next.kind == Kind.COMPLEX ? 6 + attributes.nextInt(5) : 1 + attributes.nextInt(10);
+            next.capability = Capability.fromCode(attributes.nextInt(Capability.count()));
+        }
+        return true;
+    }
+
+    /*
+     * Processus de Poisson (non homogène par amincissement : candidats au débit maximal,
+     * chacun gardé avec la probabilité débit(t) / débit maximal).
+     * L'amincissement s'arrête quand le débit reste nul pour de bon ou que la durée est écoulée :
+     * sans cela, il tirerait des candidats sans fin et bloquerait l'agent générateur.
+     */
+
+    static ArrivalProcess poisson(RateProfile profile, Random random, long durationMs) {
+        return new ArrivalProcess() {
+            private double elapsedMs;
+
+            public boolean next(Arrival into) {
+                double max = profile.maxRate();
+                if (max <= 0) {
+                    return false;
+                }
+                do {
+                    elapsedMs += -Math.log(1 - random.nextDouble()) * 1000.0 / max;
+                    if (profile.exhausted(elapsedMs) || (durationMs > 0 && elapsedMs >= durationMs)) {
+                        return false;
+                    }
+                } while (random.nextDouble() * max > profile.rate(elapsedMs));
+                into.at = (long) elapsedMs;
+                return true;
+            }
+        };
+    }
+
+    static RateProfile constant(double rate) {
+        return profile(t -> rate, rate);
+    }
+
+    // Journée compressée : creux à min (début de période), pic à peak (mi-période)
+    static RateProfile diurnal(double min, double peak, double periodMs) {
+        return profile(t -> min + (peak - min) * 0.5 * (1 - Math.cos(2 * Math.PI * (t % periodMs) / periodMs)),
+                Math.max(min, peak));
+    }
+
+    // Équipes successives à débit constant, en boucle
+    static RateProfile shifts(String rates, double shiftMs) {
+        String[] parts = rates.split("/");
+        double[] values = new double[parts.length];
+        double max = 0;
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i]);
+            if (!(values[i] >= 0)) {
+                throw new IllegalArgumentException("Débit négatif: " + parts[i]);
+            }
+            max = Math.max(max, values[i]);
+        }
+        return profile(t -> values[(int) (t / shiftMs) % values.length], max);
+    }
+
+    // Paliers croissants plafonnés à max, ou décroissants jusqu'à 0 (step négatif)
+    static RateProfile step(double start, double step, double everyMs, double max) {
+        DoubleUnaryOperator rate = t -> Math.max(0, Math.min(max, start + step * Math.floor(t / everyMs)));
+        return profile(rate, step > 0 ? max : Math.min(start, max), t -> step <= 0 && rate.applyAsDouble(t) <= 0);
+    }
+
+    // Rampe puis plateau à to ; une rampe vers 0 termine le run
+    static RateProfile ramp(double from, double to, double overMs) {
+        return profile(t -> t >= overMs ? to : from + (to - from) * t / overMs, Math.max(from, to),
+                t -> t >= overMs && to <= 0);
+    }
+
+    private static RateProfile profile(DoubleUnaryOperator rate, double max) {
+        return profile(rate, max, t -> false);
+    }
+
+    private static RateProfile profile(DoubleUnaryOperator rate, double max, DoublePredicate exhausted) {
+        return new RateProfile() {
+            public double rate(double elapsedMs) { return rate.applyAsDouble(elapsedMs); }
+            public double maxRate() { return max; }
+            public boolean exhausted(double elapsedMs) { return exhausted.test(elapsedMs); }
+        };
+    }
+
+    /*
+     * Rejeu d'une trace de commandes
+     */
+
+    static class TraceRecord {
+        final long offsetMs;
+        final String taskId;
+        final int priority;
+        final Capability capability;
+        final Kind kind;
+
+        TraceRecord(long offsetMs, String taskId, int priority, Capability capability, Kind kind) {
+            this.offsetMs = offsetMs;
+            this.taskId = taskId;
+            this.priority = priority;
+            this.capability = capability;
+            this.kind = kind;
+        }
+    }
+
+    static class TraceReplay implements ArrivalProcess {
+        private final List<TraceRecord> records;
+        private final double speed;
+        private final boolean loop;
+        private final long traceLength;
+        private int position;
+        private int round;
+
+        TraceReplay(List<TraceRecord> records, double speed, boolean loop) {
+            this.records = records;
+            this.speed = speed > 0 ? speed : 1;
+            this.loop = loop;
+            this.traceLength = records.isEmpty() ? 0 : records.get(records.size() - 1).offsetMs + 1;
+        }
+
+        public boolean next(Arrival into) {
+            if (position == records.size()) {
+                if (!loop || records.isEmpty()) {
+                    return false;
+                }
+                position = 0;
+                round++;
+            }
+            TraceRecord record = records.get(position++);
+            into.at = (long) ((record.offsetMs + round * traceLength) / speed);
+            // Identifiants uniques d'un tour à l'autre
+            into.taskId = round == 0 ? record.taskId : record.taskId + "_R" + round;
+            into.priority = record.priority;
+            into.capability = record.capability;
+            into.kind = record.kind;
+            into.attributesSet = true;
+            return true;
+        }
+    }
+
+    /**
+     * Lit une trace CSV triée ou non ; lignes vides, commentaires (#) et en-tête ignorés.
+     * Une capacité vide ou inconnue signifie "sans exigence".
+     */
+    static List<TraceRecord> readTrace(String file) throws IOException {
+        List<TraceRecord> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || !Character.isDigit(line.charAt(0))) {
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                if (fields.length < 4) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + " - 4 champs attendus");
+                }
+                Capability capability = Capability.fromName(fields[3].trim());
+                Kind kind = fields.length > 4 && "COMPLEX".equalsIgnoreCase(fields[4].trim())
+                        ? Kind.COMPLEX : Kind.SIMPLE;
+                records.add(new TraceRecord(Long.parseLong(fields[0].trim()), fields[1].trim(),
+                        Math.max(1, Math.min(10, Integer.parseInt(fields[2].trim()))), capability, kind));
+            }
+        }
+        records.sort(Comparator.comparingLong(r -> r.offsetMs));
+        return records;
+    }
+
+    private static double number(Map<String, String> options, String key, double defaultValue) {
+        String value = options.get(key);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    // Débit en tâches/s : positif ou nul
+    private static double rate(Map<String, String> options, String key, double defaultValue) {
+        double value = number(options, key, defaultValue);
+        if (!(value >= 0)) {
+            throw new IllegalArgumentException("Débit négatif: " + key + "=" + value);
+        }
+        return value;
+    }
+
+    // Période ou durée de palier en ms : strictement positive
+    private static double interval(Map<String, String> options, String key, double defaultValue) {
+        double value = number(options, key, defaultValue);
+        if (!(value > 0)) {
+            throw new IllegalArgumentException("Durée invalide: " + key + "=" + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s | émises: %d (complexes: %d) | max par tick: %d | retard moy: %.1f ms, max: %d ms%s",
+                description, emitted, complexEmitted, maxPerPoll,
+                emitted > 0 ? (double) totalLag / emitted : 0, maxLag,
+                isFinished() ? " | terminé" : "");
+    }
+}
@@ -0,0 +1,65 @@
+package festo.protocol;
+
+/**
+ * ADMISSION_CONTROL : le coordinateur diffuse à ses machines les débits d'admission du site,
+ * en fraction du débit nominal de chaque machine, par classe de priorité (basse, normale, haute).
+ * Le numéro de séquence permet d'ignorer une diffusion plus ancienne arrivée en retard.
+ */
+public class AdmissionControlMessage extends ProtocolMessage {
+
+    public static final int CLASS_COUNT = 3;
+
+    private String siteId;
+    private int sequence;
+    private boolean limited;             // false : admission libre, facteurs ignorés
+    private final int[] factorsPerMille = new int[CLASS_COUNT];
+
+    public AdmissionControlMessage set(String siteId, int sequence, boolean limited) {
+        this.siteId = siteId;
+        this.sequence = sequence;
+        this.limited = limited;
+        return this;
+    }
+
+    public AdmissionControlMessage withFactor(int priorityClass, double factor) {
+        factorsPerMille[priorityClass] = (int) Math.round(Math.max(0, Math.min(1, factor)) * 1000);
+        return this;
+    }
+
+    public String getSiteId() { return siteId; }
+    public int getSequence() { return sequence; }
+    public boolean isLimited() { return limited; }
+    public double getFactor(int priorityClass) { return factorsPerMille[priorityClass] / 1000.0; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.ADMISSION_CONTROL;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(siteId);
+        writer.writeVarInt(sequence);
+        writer.writeBoolean(limited);
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            writer.writeShort(factorsPerMille[c]);
+        }
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        siteId = reader.readString();
+        sequence = reader.readVarInt();
+        limited = reader.readBoolean();
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            factorsPerMille[c] = reader.readUnsignedShort();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ADMISSION_CONTROL:" + siteId + ":" + sequence + ":" + (limited
+                ? factorsPerMille[0] + "/" + factorsPerMille[1] + "/" + factorsPerMille[2] + "‰"
+                : "LIBRE");
+    }
+}
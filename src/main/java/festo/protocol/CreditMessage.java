@@ -0,0 +1,52 @@
+package festo.protocol;
+
+/**
+ * CREDIT : une machine annonce au générateur le nombre de tâches qu'elle peut encore accepter.
+ * La valeur est absolue (pas un incrément) : une annonce perdue est corrigée par la suivante.
+ * Depuis v4, l'annonce porte aussi le masque des capacités de la machine (bit = ordinal).
+ */
+public class CreditMessage extends ProtocolMessage {
+
+    private String machineId;
+    private int credits;
+    private long capabilities;
+
+    public CreditMessage set(String machineId, int credits) {
+        this.machineId = machineId;
+        this.credits = credits;
+        return this;
+    }
+
+    public CreditMessage withCapabilities(long capabilities) {
+        this.capabilities = capabilities;
+        return this;
+    }
+
+    public String getMachineId() { return machineId; }
+    public int getCredits() { return credits; }
+    public long getCapabilities() { return capabilities; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.CREDIT;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(machineId);
+        writer.writeVarInt(credits);
+        writer.writeVarInt((int) capabilities);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        machineId = reader.readString();
+        credits = reader.readVarInt();
+        capabilities = version >= 4 ? reader.readVarInt() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CREDIT:" + machineId + ":" + credits;
+    }
+}
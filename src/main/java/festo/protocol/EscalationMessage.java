@@ -0,0 +1,51 @@
+package festo.protocol;
+
+/**
+ * ESCALATION : problème qu'un coordinateur ne sait pas résoudre localement.
+ */
+public class EscalationMessage extends ProtocolMessage {
+
+    private String siteId;
+    private String issue;      // FAILURE, SITE_OVERLOAD, NO_RESOURCES
+    private String machineId;
+    private String severity;
+
+    public EscalationMessage set(String siteId, String issue, String machineId, String severity) {
+        this.siteId = siteId;
+        this.issue = issue;
+        this.machineId = machineId;
+        this.severity = severity;
+        return this;
+    }
+
+    public String getSiteId() { return siteId; }
+    public String getIssue() { return issue; }
+    public String getMachineId() { return machineId; }
+    public String getSeverity() { return severity; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.ESCALATION;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(siteId);
+        writer.writeString(issue);
+        writer.writeString(machineId);
+        writer.writeString(severity);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        siteId = reader.readString();
+        issue = reader.readString();
+        machineId = reader.readString();
+        severity = reader.readString();
+    }
+
+    @Override
+    public String toString() {
+        return "ESCALATION:" + siteId + ":" + issue + ":" + machineId + ":" + severity;
+    }
+}
@@ -0,0 +1,58 @@
+package festo.protocol;
+
+/**
+ * FAILURE : panne détectée sur une machine.
+ * Depuis v11 : numéro de séquence pris dans la même suite que MACHINE_STATE ; le coordinateur
+ * ignore ensuite les états plus anciens (envoyés avant la panne, traités après elle).
+ */
+public class FailureMessage extends ProtocolMessage {
+
+    private String machineId;
+    private String cause;     // ex: SELF_DETECTED
+    private String severity;  // ex: CRITICAL
+    private int sequence;     // 0 si inconnu
+
+    public FailureMessage set(String machineId, String cause, String severity) {
+        this.machineId = machineId;
+        this.cause = cause;
+        this.severity = severity;
+        this.sequence = 0;
+        return this;
+    }
+
+    public FailureMessage withSequence(int sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
+    public String getMachineId() { return machineId; }
+    public String getCause() { return cause; }
+    public String getSeverity() { return severity; }
+    public int getSequence() { return sequence; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.FAILURE;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(machineId);
+        writer.writeString(cause);
+        writer.writeString(severity);
+        writer.writeVarInt(sequence);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        machineId = reader.readString();
+        cause = reader.readString();
+        severity = reader.readString();
+        sequence = version >= 11 ? reader.readVarInt() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FAILURE:" + machineId + ":" + cause + ":" + severity;
+    }
+}
@@ -0,0 +1,150 @@
+package festo.protocol;
+
+import java.util.Arrays;
+
+/**
+ * PING / PONG / MACHINE_STATE : état courant complet d'une machine
+ * (charge, file, capacité libre, état opérationnel).
+ * MACHINE_STATE est envoyé au coordinateur à l'arrivée et à chaque changement d'état.
+ * Depuis la v3 : créneaux de traitement (occupés / total), et par créneau
+ * l'utilisation depuis le démarrage (pour mille) et le nombre de tâches terminées.
+ */
+public class HeartbeatMessage extends ProtocolMessage {
+
+    private MessageType type = MessageType.MACHINE_STATE;
+    private String machineId;
+    private String site;
+    private double load;
+    private int queueSize;
+    private int freeCapacity;
+    private boolean operational;
+
+    private int busySlots;
+    private int slotCount;
+    private int[] slotUtilization = new int[8]; // pour mille
+    private int[] slotCompleted = new int[8];
+    private int sequence; // croissant par machine, 0 si inconnu
+
+    public HeartbeatMessage set(MessageType type, String machineId, String site, double load,
+                                int queueSize, int freeCapacity, boolean operational) {
+        if (!accepts(type)) {
+            throw new IllegalArgumentException("Type de heartbeat invalide: " + type);
+        }
+        this.type = type;
+        this.machineId = machineId;
+        this.site = site;
+        this.load = load;
+        this.queueSize = queueSize;
+        this.freeCapacity = freeCapacity;
+        this.operational = operational;
+        this.busySlots = 0;
+        this.slotCount = 0;
+        this.sequence = 0;
+        return this;
+    }
+
+    public HeartbeatMessage withSequence(int sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
+    /**
+     * Ajoute l'état des créneaux de traitement (à appeler après set()).
+     * @param utilization utilisation de chaque créneau, pour mille
+     */
+    public HeartbeatMessage withSlots(int busySlots, int slotCount, int[] utilization, int[] completed) {
+        ensureCapacity(slotCount);
+        this.busySlots = busySlots;
+        this.slotCount = slotCount;
+        System.arraycopy(utilization, 0, slotUtilization, 0, slotCount);
+        System.arraycopy(completed, 0, slotCompleted, 0, slotCount);
+        return this;
+    }
+
+    public boolean isPong() { return type == MessageType.PONG; }
+    public String getMachineId() { return machineId; }
+    public String getSite() { return site; }
+    public double getLoad() { return load; }
+    public int getQueueSize() { return queueSize; }
+    public int getFreeCapacity() { return freeCapacity; }
+    public boolean isOperational() { return operational; }
+
+    public int getBusySlots() { return busySlots; }
+    /** 0 si l'émetteur ne publie pas ses créneaux (v1/v2). */
+    public int getSlotCount() { return slotCount; }
+    /** Utilisation du créneau depuis le démarrage, en pourcent. */
+    public double getSlotUtilization(int slot) { return slotUtilization[slot] / 10.0; }
+    public int getSlotCompleted(int slot) { return slotCompleted[slot]; }
+    public int getSequence() { return sequence; }
+
+    @Override
+    public MessageType type() {
+        return type;
+    }
+
+    @Override
+    public boolean accepts(MessageType type) {
+        return type == MessageType.PING || type == MessageType.PONG
+                || type == MessageType.MACHINE_STATE;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(machineId);
+        writer.writeString(site);
+        writer.writeDouble(load);
+        writer.writeInt(queueSize);
+        writer.writeInt(freeCapacity);
+        writer.writeBoolean(operational);
+        writer.writeVarInt(busySlots);
+        writer.writeVarInt(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            writer.writeVarInt(slotUtilization[i]);
+            writer.writeVarInt(slotCompleted[i]);
+        }
+        writer.writeVarInt(sequence);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        this.type = type;
+        machineId = reader.readString();
+        site = reader.readString();
+        load = reader.readDouble();
+        queueSize = reader.readInt();
+        freeCapacity = reader.readInt();
+        operational = reader.readBoolean();
+
+        busySlots = 0;
+        slotCount = 0;
+        if (version >= 3) {
+            busySlots = reader.readVarInt();
+            int count = reader.readVarInt();
+            if (count > reader.remaining()) {
+                throw new ProtocolException("Nombre de créneaux invalide: " + count);
+            }
+            ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                slotUtilization[i] = reader.readVarInt();
+                slotCompleted[i] = reader.readVarInt();
+            }
+            slotCount = count;
+        }
+        sequence = version >= 8 ? reader.readVarInt() : 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > slotUtilization.length) {
+            int newLength = Math.max(capacity, slotUtilization.length * 2);
+            slotUtilization = Arrays.copyOf(slotUtilization, newLength);
+            slotCompleted = Arrays.copyOf(slotCompleted, newLength);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + machineId + ":LOAD:" + load + ":QUEUE:" + queueSize +
+                ":CAPACITY:" + freeCapacity + ":STATUS:" + operational + ":SITE:" + site +
+                ":SLOTS:" + busySlots + "/" + slotCount;
+    }
+}
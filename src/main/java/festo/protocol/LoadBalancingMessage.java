@@ -0,0 +1,46 @@
+package festo.protocol;
+
+/**
+ * LOAD_BALANCING : demande d'équilibrage envoyée par une machine chargée.
+ */
+public class LoadBalancingMessage extends ProtocolMessage {
+
+    private String machineId;
+    private double load;
+    private int queueSize;
+
+    public LoadBalancingMessage set(String machineId, double load, int queueSize) {
+        this.machineId = machineId;
+        this.load = load;
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    public String getMachineId() { return machineId; }
+    public double getLoad() { return load; }
+    public int getQueueSize() { return queueSize; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.LOAD_BALANCING;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(machineId);
+        writer.writeDouble(load);
+        writer.writeInt(queueSize);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        machineId = reader.readString();
+        load = reader.readDouble();
+        queueSize = reader.readInt();
+    }
+
+    @Override
+    public String toString() {
+        return "LOAD_BALANCING:" + machineId + ":" + load + ":" + queueSize;
+    }
+}
@@ -0,0 +1,84 @@
+package festo.protocol;
+
+import jade.lang.acl.ACLMessage;
+
+/**
+ * Codec binaire des messages ACL.
+ *
+ * Format d'une trame : [MAGIC][version][type] puis le corps propre au type.
+ * Une instance par agent : le tampon d'écriture et le cache de chaînes ne sont pas partagés.
+ */
+public final class MessageCodec {
+
+    public static final byte MAGIC = (byte) 0xFE;
+    // v2 : crédits de flux dans TASK_ACCEPTED / TASK_REFUSED
+    // v3 : créneaux de traitement dans PING / PONG / MACHINE_STATE
+    // v4 : capacité exigée dans TASK / TASK_BATCH, capacités de la machine dans CREDIT
+    // v5 : horodatages de tâche (TASK, TASK_BATCH, STEAL_GRANT, TASK_COMPLETED), latences dans SITE_STATUS
+    // v6 : échéances (TASK, TASK_BATCH, STEAL_GRANT, TASK_COMPLETED), motif de refus, échéances dans SITE_STATUS
+    // v7 : machine source d'un TASK_BATCH de transfert
+    // v8 : numéro de séquence dans MACHINE_STATE / PONG (états périmés détectés par le coordinateur)
+    // v9 : TRANSFER_TASKS porte un plan (plusieurs mouvements source -> cible)
+    // v10 : candidates à l'équilibrage entre shards dans SITE_STATUS
+    // v11 : numéro de séquence dans FAILURE (états d'avant la panne ignorés)
+    // v12 : capacité exigée des tâches cédées dans STEAL_GRANT
+    public static final int CURRENT_VERSION = 12;
+    static final int HEADER_SIZE = 3;
+
+    private final MessageWriter writer = new MessageWriter(128);
+    private final MessageReader reader = new MessageReader();
+
+    public byte[] encode(ProtocolMessage message) {
+        writer.reset();
+        writer.writeByte(MAGIC);
+        writer.writeByte(message.version());
+        writer.writeByte(message.type().code());
+        message.writeBody(writer);
+        return writer.toByteArray();
+    }
+
+    /** Encode le message dans le contenu binaire de l'ACLMessage. */
+    public void write(ACLMessage acl, ProtocolMessage message) {
+        acl.setByteSequenceContent(encode(message));
+    }
+
+    /**
+     * Type d'un message binaire, ou null si le contenu est textuel / inconnu.
+     */
+    public static MessageType peekType(ACLMessage acl) {
+        if (!acl.hasByteSequenceContent()) {
+            return null;
+        }
+        byte[] bytes = acl.getByteSequenceContent();
+        if (bytes == null || bytes.length < HEADER_SIZE || bytes[0] != MAGIC) {
+            return null;
+        }
+        return MessageType.fromCode(bytes[2]);
+    }
+
+    /**
+     * Décode le message dans une instance fournie (réutilisable), sans allocation
+     * pour les champs numériques et les identifiants déjà rencontrés.
+     */
+    public <T extends ProtocolMessage> T read(ACLMessage acl, T into) {
+        byte[] bytes = acl.getByteSequenceContent();
+        if (bytes == null || bytes.length < HEADER_SIZE || bytes[0] != MAGIC) {
+            throw new ProtocolException("En-tête binaire absent");
+        }
+
+        int version = bytes[1];
+        if (version < 1 || version > CURRENT_VERSION) {
+            throw new ProtocolException("Version non supportée: " + version);
+        }
+
+        MessageType type = MessageType.fromCode(bytes[2]);
+        if (type == null || !into.accepts(type)) {
+            throw new ProtocolException("Type inattendu: " + type + " pour " +
+                    into.getClass().getSimpleName());
+        }
+
+        reader.wrap(bytes, HEADER_SIZE);
+        into.readBody(reader, type, version);
+        return into;
+    }
+}
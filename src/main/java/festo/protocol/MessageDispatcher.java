@@ -0,0 +1,231 @@
+package festo.protocol;
+
+import jade.lang.acl.ACLMessage;
+import festo.utils.Logger;
+
+import java.util.*;
+
+/**
+ * Routage des messages d'un agent par opcode, en O(1).
+ *
+ * - Message binaire : l'opcode est le code du {@link MessageType} (table directe).
+ * - Message texte : l'opcode est le mot-clé avant le premier ':' (ex. "REGISTER"),
+ *   retrouvé dans une table de hachage sans extraire de sous-chaîne.
+ *
+ * Chaque opcode garde un compteur de messages et le temps cumulé passé dans son handler.
+ * Un dispatcher par agent : pas de synchronisation.
+ */
+public final class MessageDispatcher {
+
+    @FunctionalInterface
+    public interface Handler {
+        void handle(ACLMessage msg);
+    }
+
+    private static final int BINARY_SLOTS = 256;
+
+    private final String owner;
+
+    // Slots 0..255 : types binaires ; 256.. : mots-clés texte ; dernier : handler par défaut
+    private Handler[] handlers = new Handler[BINARY_SLOTS];
+    private String[] names = new String[BINARY_SLOTS];
+    private long[] counts = new long[BINARY_SLOTS];
+    private long[] nanos = new long[BINARY_SLOTS];
+    private int slotCount = BINARY_SLOTS;
+
+    // Table des mots-clés (adressage ouvert, sonde linéaire) : contient des numéros de slot
+    private int[] keywordTable = newKeywordTable(32);
+    private int keywordCount;
+
+    private int defaultSlot = -1;
+    private long unhandled;
+    private long malformed;
+
+    public MessageDispatcher(String owner) {
+        this.owner = owner;
+    }
+
+    /** Handler pour un type de message binaire. */
+    public MessageDispatcher on(MessageType type, Handler handler) {
+        handlers[type.code()] = handler;
+        names[type.code()] = type.name();
+        return this;
+    }
+
+    /** Handler pour un message texte "KEYWORD:..." (ou exactement "KEYWORD"). */
+    public MessageDispatcher onKeyword(String keyword, Handler handler) {
+        int existing = findKeyword(keyword, keyword.length(), keywordHash(keyword, keyword.length()));
+        if (existing >= 0) {
+            handlers[existing] = handler;
+            return this;
+        }
+        int slot = newSlot(keyword, handler);
+        if ((keywordCount + 1) * 2 > keywordTable.length) {
+            rehash(keywordTable.length * 2);
+        }
+        insertKeyword(slot);
+        keywordCount++;
+        return this;
+    }
+
+    /** Handler appelé quand aucun opcode ne correspond. */
+    public MessageDispatcher onDefault(Handler handler) {
+        if (defaultSlot < 0) {
+            defaultSlot = newSlot("(autre)", handler);
+        } else {
+            handlers[defaultSlot] = handler;
+        }
+        return this;
+    }
+
+    /**
+     * Route le message vers son handler.
+     * @return false si aucun handler (ni défaut) n'a pris le message
+     */
+    public boolean dispatch(ACLMessage msg) {
+        int slot = resolve(msg);
+        if (slot < 0 || handlers[slot] == null) {
+            slot = defaultSlot;
+            if (slot < 0) {
+                unhandled++;
+                return false;
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            handlers[slot].handle(msg);
+        } catch (ProtocolException e) {
+            malformed++;
+            Logger.warn(owner + " - Trame invalide de " + msg.getSender().getLocalName() +
+                    ": " + e.getMessage());
+        } finally {
+            counts[slot]++;
+            nanos[slot] += System.nanoTime() - start;
+        }
+        return true;
+    }
+
+    /** Opcode (slot) du message, -1 si inconnu. */
+    public int resolve(ACLMessage msg) {
+        MessageType type = MessageCodec.peekType(msg);
+        if (type != null) {
+            return type.code();
+        }
+        if (msg.hasByteSequenceContent()) {
+            return -1;
+        }
+        String content = msg.getContent();
+        if (content == null) {
+            return -1;
+        }
+        int length = keywordLength(content);
+        return findKeyword(content, length, keywordHash(content, length));
+    }
+
+    public long getCount(MessageType type) {
+        return counts[type.code()];
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < slotCount; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Affiche les opcodes triés par temps de traitement cumulé.
+     */
+    public void printStatistics() {
+        List<Integer> active = new ArrayList<>();
+        for (int i = 0; i < slotCount; i++) {
+            if (counts[i] > 0) {
+                active.add(i);
+            }
+        }
+        active.sort((a, b) -> Long.compare(nanos[b], nanos[a]));
+
+        Logger.log("📬 Répartition des messages - " + owner);
+        for (int slot : active) {
+            Logger.log(String.format("   %-22s %8d msgs  %9.2f ms  %8.1f µs/msg",
+                    names[slot], counts[slot], nanos[slot] / 1e6,
+                    nanos[slot] / 1e3 / counts[slot]));
+        }
+        if (unhandled > 0 || malformed > 0) {
+            Logger.log("   Non routés: " + unhandled + " | Trames invalides: " + malformed);
+        }
+    }
+
+    /*
+     * Table des mots-clés
+     */
+
+    private int newSlot(String name, Handler handler) {
+        if (slotCount == handlers.length) {
+            int capacity = handlers.length + 16;
+            handlers = Arrays.copyOf(handlers, capacity);
+            names = Arrays.copyOf(names, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            nanos = Arrays.copyOf(nanos, capacity);
+        }
+        int slot = slotCount++;
+        handlers[slot] = handler;
+        names[slot] = name;
+        return slot;
+    }
+
+    private static int keywordLength(String content) {
+        int separator = content.indexOf(':');
+        return separator >= 0 ? separator : content.length();
+    }
+
+    private static int keywordHash(String text, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private int findKeyword(String text, int length, int hash) {
+        int mask = keywordTable.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = keywordTable[i];
+            if (slot < 0) {
+                return -1;
+            }
+            String keyword = names[slot];
+            if (keyword.length() == length && text.regionMatches(0, keyword, 0, length)) {
+                return slot;
+            }
+        }
+    }
+
+    private void insertKeyword(int slot) {
+        String keyword = names[slot];
+        int mask = keywordTable.length - 1;
+        int i = keywordHash(keyword, keyword.length()) & mask;
+        while (keywordTable[i] >= 0) {
+            i = (i + 1) & mask;
+        }
+        keywordTable[i] = slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = keywordTable;
+        keywordTable = newKeywordTable(capacity);
+        for (int slot : old) {
+            if (slot >= 0) {
+                insertKeyword(slot);
+            }
+        }
+    }
+
+    private static int[] newKeywordTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+}
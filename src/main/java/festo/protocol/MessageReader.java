@@ -0,0 +1,132 @@
+package festo.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lecteur réutilisable sur une trame binaire.
+ * Les chaînes ASCII déjà vues sont renvoyées depuis un cache à correspondance directe,
+ * ce qui évite toute allocation pour les identifiants qui reviennent à chaque message.
+ */
+public final class MessageReader {
+
+    private static final int CACHE_SIZE = 512; // puissance de 2
+
+    private final String[] stringCache = new String[CACHE_SIZE];
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    public void wrap(byte[] buffer, int offset) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = buffer.length;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    public int readByte() {
+        require(1);
+        return buffer[position++];
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public int readUnsignedShort() {
+        require(2);
+        int value = ((buffer[position] & 0xFF) << 8) | (buffer[position + 1] & 0xFF);
+        position += 2;
+        return value;
+    }
+
+    public int readInt() {
+        require(4);
+        int value = ((buffer[position] & 0xFF) << 24)
+                | ((buffer[position + 1] & 0xFF) << 16)
+                | ((buffer[position + 2] & 0xFF) << 8)
+                | (buffer[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+
+    public long readLong() {
+        long high = readInt() & 0xFFFFFFFFL;
+        long low = readInt() & 0xFFFFFFFFL;
+        return (high << 32) | low;
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ProtocolException("VarInt trop long");
+    }
+
+    public int readSignedVarInt() {
+        int raw = readVarInt();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public String readString() {
+        int length = readUnsignedShort();
+        if (length == MessageWriter.NULL_STRING) {
+            return null;
+        }
+        require(length);
+        int start = position;
+        position += length;
+        if (length == 0) {
+            return "";
+        }
+
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            byte b = buffer[i];
+            if (b < 0) {
+                // Non ASCII : pas de cache
+                return new String(buffer, start, length, StandardCharsets.UTF_8);
+            }
+            hash = 31 * hash + b;
+        }
+
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String cached = stringCache[slot];
+        if (cached != null && sameAscii(cached, start, length)) {
+            return cached;
+        }
+        String value = new String(buffer, start, length, StandardCharsets.ISO_8859_1);
+        stringCache[slot] = value;
+        return value;
+    }
+
+    private boolean sameAscii(String candidate, int start, int length) {
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void require(int bytes) {
+        if (position + bytes > limit) {
+            throw new ProtocolException("Trame tronquée (" + bytes + " octets attendus, " +
+                    (limit - position) + " disponibles)");
+        }
+    }
+}
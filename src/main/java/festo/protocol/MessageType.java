@@ -0,0 +1,67 @@
+package festo.protocol;
+
+/**
+ * Types de messages binaires échangés entre agents.
+ * Le code (1 octet) est écrit dans l'en-tête de chaque trame.
+ */
+public enum MessageType {
+    TASK(0x01, Lane.CONTROL),
+    TASK_ACCEPTED(0x02, Lane.CONTROL),
+    TASK_REFUSED(0x03, Lane.CONTROL),
+    TASK_COMPLETED(0x04, Lane.TELEMETRY),
+    FAILURE(0x05, Lane.CRITICAL),
+    OVERLOAD(0x06, Lane.CRITICAL),
+    LOAD_BALANCING(0x07, Lane.CONTROL),
+    SITE_STATUS(0x08, Lane.TELEMETRY),
+    ESCALATION(0x09, Lane.CRITICAL),
+    PING(0x0A, Lane.TELEMETRY),
+    PONG(0x0B, Lane.TELEMETRY),
+    SUPERVISOR_DIRECTIVE(0x0C, Lane.CONTROL),
+    MACHINE_STATE(0x0D, Lane.TELEMETRY),
+    SITE_DIGEST(0x0E, Lane.TELEMETRY),
+    CREDIT(0x0F, Lane.CONTROL),
+    TASK_BATCH(0x10, Lane.CONTROL),
+    TASK_BATCH_REPLY(0x11, Lane.CONTROL),
+    STEAL_REQUEST(0x12, Lane.CONTROL),
+    STEAL_GRANT(0x13, Lane.CONTROL),
+    ADMISSION_CONTROL(0x14, Lane.CONTROL),
+    TASK_CLAIM(0x15, Lane.CONTROL),
+    TASK_CLAIM_REJECTED(0x16, Lane.CONTROL),
+    TRANSFER_TASKS(0x17, Lane.CONTROL);
+
+    /** Voie de priorité dans la boîte aux lettres (voir {@link PriorityMailbox}). */
+    public enum Lane {
+        CRITICAL,   // pannes, surcharges, escalades
+        CONTROL,    // tâches, directives, équilibrage, messages texte
+        TELEMETRY   // états, rapports, heartbeats
+    }
+
+    private static final MessageType[] BY_CODE = new MessageType[256];
+
+    static {
+        for (MessageType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final int code;
+    private final Lane lane;
+
+    MessageType(int code, Lane lane) {
+        this.code = code;
+        this.lane = lane;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public Lane lane() {
+        return lane;
+    }
+
+    // Retourne null si le code est inconnu
+    public static MessageType fromCode(int code) {
+        return BY_CODE[code & 0xFF];
+    }
+}
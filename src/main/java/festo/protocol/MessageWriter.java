@@ -0,0 +1,116 @@
+package festo.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tampon d'écriture réutilisable (big-endian).
+ * Les chaînes sont préfixées par leur longueur sur 2 octets, 0xFFFF = null.
+ */
+public final class MessageWriter {
+
+    static final int NULL_STRING = 0xFFFF;
+
+    private byte[] buffer;
+    private int position;
+
+    public MessageWriter(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public void reset() {
+        position = 0;
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeShort(int value) {
+        ensureCapacity(2);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    /** Entier non signé sur 1 à 5 octets (7 bits par octet). */
+    public void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    /** Entier signé en zigzag : les petites valeurs négatives restent courtes. */
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeDouble(double value) {
+        writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    public void writeString(String value) {
+        if (value == null) {
+            writeShort(NULL_STRING);
+            return;
+        }
+
+        // Chemin rapide ASCII (identifiants machines, sites, tâches)
+        int length = value.length();
+        boolean ascii = length < NULL_STRING;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = value.charAt(i) < 0x80;
+        }
+
+        if (ascii) {
+            writeShort(length);
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length >= NULL_STRING) {
+                throw new ProtocolException("Chaîne trop longue: " + bytes.length + " octets");
+            }
+            writeShort(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+    }
+
+    public int size() {
+        return position;
+    }
+
+    // Copie exacte : l'ACLMessage garde une référence sur le tableau
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package festo.protocol;
+
+/**
+ * OVERLOAD : une machine signale une surcharge critique.
+ */
+public class OverloadMessage extends ProtocolMessage {
+
+    private String machineId;
+    private double load;
+
+    public OverloadMessage set(String machineId, double load) {
+        this.machineId = machineId;
+        this.load = load;
+        return this;
+    }
+
+    public String getMachineId() { return machineId; }
+    public double getLoad() { return load; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.OVERLOAD;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(machineId);
+        writer.writeDouble(load);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        machineId = reader.readString();
+        load = reader.readDouble();
+    }
+
+    @Override
+    public String toString() {
+        return "OVERLOAD:" + machineId + ":" + load;
+    }
+}
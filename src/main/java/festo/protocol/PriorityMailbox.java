@@ -0,0 +1,145 @@
+package festo.protocol;
+
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import festo.protocol.MessageType.Lane;
+import festo.utils.Logger;
+
+/**
+ * Boîte aux lettres à voies de priorité au-dessus de la file JADE de l'agent.
+ *
+ * À chaque appel de {@link #next()}, tous les messages arrivés sont transférés
+ * dans leur voie (CRITICAL, CONTROL, TELEMETRY) puis le plus prioritaire est rendu :
+ * une panne n'attend jamais derrière des rapports d'état déjà reçus.
+ * Le classement est en O(1) : voie du {@link MessageType}, CONTROL pour les messages texte.
+ *
+ * Métriques par voie : profondeur courante et max, messages servis, attente moyenne et max
+ * (depuis l'horodatage d'envoi JADE quand il est disponible).
+ */
+public final class PriorityMailbox {
+
+    private static final Lane[] LANES = Lane.values();
+
+    private final Agent agent;
+    private final String owner;
+    private final LaneQueue[] lanes = new LaneQueue[LANES.length];
+
+    public PriorityMailbox(Agent agent, String owner) {
+        this.agent = agent;
+        this.owner = owner;
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new LaneQueue();
+        }
+    }
+
+    /**
+     * Prochain message à traiter, voie critique d'abord.
+     * @return null si aucun message (le comportement peut alors faire block())
+     */
+    public ACLMessage next() {
+        drain();
+        for (LaneQueue lane : lanes) {
+            if (lane.size > 0) {
+                return lane.poll();
+            }
+        }
+        return null;
+    }
+
+    public static Lane laneOf(ACLMessage msg) {
+        MessageType type = MessageCodec.peekType(msg);
+        return type != null ? type.lane() : Lane.CONTROL;
+    }
+
+    public int depth(Lane lane) {
+        return lanes[lane.ordinal()].size;
+    }
+
+    public int maxDepth(Lane lane) {
+        return lanes[lane.ordinal()].maxSize;
+    }
+
+    public long served(Lane lane) {
+        return lanes[lane.ordinal()].served;
+    }
+
+    /** Attente moyenne (ms) des messages servis sur cette voie. */
+    public double averageWait(Lane lane) {
+        LaneQueue q = lanes[lane.ordinal()];
+        return q.served > 0 ? (double) q.totalWait / q.served : 0;
+    }
+
+    public long maxWait(Lane lane) {
+        return lanes[lane.ordinal()].maxWait;
+    }
+
+    public void printStatistics() {
+        Logger.log("📥 Boîte aux lettres - " + owner);
+        for (Lane lane : LANES) {
+            LaneQueue q = lanes[lane.ordinal()];
+            Logger.log(String.format("   %-10s file: %4d (max %4d) | servis: %7d | attente moy: %7.1f ms, max: %6d ms",
+                    lane, q.size, q.maxSize, q.served, averageWait(lane), q.maxWait));
+        }
+    }
+
+    // Transfère la file JADE dans les voies
+    private void drain() {
+        ACLMessage msg;
+        while ((msg = agent.receive()) != null) {
+            long postTime = msg.getPostTimeStamp();
+            lanes[laneOf(msg).ordinal()].offer(msg, postTime > 0 ? postTime : System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * File circulaire d'une voie : messages + heure d'arrivée (ms), sans allocation par message.
+     */
+    private static final class LaneQueue {
+        ACLMessage[] messages = new ACLMessage[64];
+        long[] arrivals = new long[64];
+        int head;
+        int size;
+        int maxSize;
+        long served;
+        long totalWait;
+        long maxWait;
+
+        void offer(ACLMessage msg, long arrival) {
+            if (size == messages.length) {
+                grow();
+            }
+            int tail = (head + size) & (messages.length - 1);
+            messages[tail] = msg;
+            arrivals[tail] = arrival;
+            size++;
+            maxSize = Math.max(maxSize, size);
+        }
+
+        ACLMessage poll() {
+            ACLMessage msg = messages[head];
+            long wait = Math.max(0, System.currentTimeMillis() - arrivals[head]);
+            messages[head] = null;
+            head = (head + 1) & (messages.length - 1);
+            size--;
+
+            served++;
+            totalWait += wait;
+            maxWait = Math.max(maxWait, wait);
+            return msg;
+        }
+
+        private void grow() {
+            int length = messages.length;
+            ACLMessage[] newMessages = new ACLMessage[length * 2];
+            long[] newArrivals = new long[length * 2];
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) & (length - 1);
+                newMessages[i] = messages[index];
+                newArrivals[i] = arrivals[index];
+            }
+            messages = newMessages;
+            arrivals = newArrivals;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package festo.protocol;
+
+/**
+ * Trame binaire invalide : en-tête inconnu, version non supportée ou contenu tronqué.
+ */
+public class ProtocolException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ProtocolException(String message) {
+        super(message);
+    }
+}
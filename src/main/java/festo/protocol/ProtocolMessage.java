@@ -0,0 +1,25 @@
+package festo.protocol;
+
+/**
+ * Message typé du protocole binaire.
+ * Les instances sont mutables pour pouvoir être réutilisées au décodage.
+ */
+public abstract class ProtocolMessage {
+
+    public abstract MessageType type();
+
+    /** Version du format écrite dans l'en-tête. */
+    public int version() {
+        return MessageCodec.CURRENT_VERSION;
+    }
+
+    /** Indique si cette classe sait décoder le type donné. */
+    public boolean accepts(MessageType type) {
+        return type == type();
+    }
+
+    protected abstract void writeBody(MessageWriter writer);
+
+    /** Décode le corps selon la version lue dans l'en-tête. */
+    protected abstract void readBody(MessageReader reader, MessageType type, int version);
+}
@@ -0,0 +1,146 @@
+package festo.protocol;
+
+import java.util.Arrays;
+
+/**
+ * SITE_DIGEST : résumé périodique de l'état des machines d'un site,
+ * publié par le coordinateur à ses machines et aux moniteurs.
+ *
+ * Encodage delta :
+ * - seules les machines modifiées depuis le digest précédent sont présentes,
+ *   sauf dans un digest complet (keyframe) envoyé régulièrement ;
+ * - chaque machine est désignée par son slot dense dans le site, écrit en écart
+ *   par rapport au slot précédent (entrées triées) ;
+ * - l'identifiant n'est transmis que dans les keyframes ou pour une nouvelle machine ;
+ * - la charge est quantifiée au dixième de pourcent.
+ */
+public class SiteDigestMessage extends ProtocolMessage {
+
+    private static final int FLAG_OPERATIONAL = 0x01;
+    private static final int FLAG_HAS_ID = 0x02;
+
+    private String siteId;
+    private int sequence;
+    private boolean keyframe;
+
+    private int size;
+    private int[] slots = new int[16];
+    private String[] machineIds = new String[16];
+    private int[] loadTenths = new int[16];
+    private int[] queueSizes = new int[16];
+    private int[] freeCapacities = new int[16];
+    private boolean[] operational = new boolean[16];
+
+    /** Prépare un nouveau digest (les entrées précédentes sont oubliées). */
+    public SiteDigestMessage begin(String siteId, int sequence, boolean keyframe) {
+        this.siteId = siteId;
+        this.sequence = sequence;
+        this.keyframe = keyframe;
+        this.size = 0;
+        return this;
+    }
+
+    /**
+     * Ajoute une entrée. Les slots doivent être ajoutés dans l'ordre croissant.
+     * @param machineId null si les destinataires connaissent déjà ce slot
+     */
+    public void add(int slot, String machineId, double load, int queueSize,
+                    int freeCapacity, boolean isOperational) {
+        if (size > 0 && slot <= slots[size - 1]) {
+            throw new IllegalArgumentException("Slots non croissants: " + slot);
+        }
+        ensureCapacity(size + 1);
+        slots[size] = slot;
+        machineIds[size] = machineId;
+        loadTenths[size] = (int) Math.round(Math.max(0, load) * 10);
+        queueSizes[size] = queueSize;
+        freeCapacities[size] = freeCapacity;
+        operational[size] = isOperational;
+        size++;
+    }
+
+    public String getSiteId() { return siteId; }
+    public int getSequence() { return sequence; }
+    public boolean isKeyframe() { return keyframe; }
+    public int size() { return size; }
+
+    public int getSlot(int i) { return slots[i]; }
+    public String getMachineId(int i) { return machineIds[i]; }
+    public double getLoad(int i) { return loadTenths[i] / 10.0; }
+    public int getQueueSize(int i) { return queueSizes[i]; }
+    public int getFreeCapacity(int i) { return freeCapacities[i]; }
+    public boolean isOperational(int i) { return operational[i]; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.SITE_DIGEST;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(siteId);
+        writer.writeInt(sequence);
+        writer.writeBoolean(keyframe);
+        writer.writeVarInt(size);
+
+        int previousSlot = -1;
+        for (int i = 0; i < size; i++) {
+            writer.writeVarInt(slots[i] - previousSlot - 1);
+            previousSlot = slots[i];
+
+            int flags = (operational[i] ? FLAG_OPERATIONAL : 0)
+                    | (machineIds[i] != null ? FLAG_HAS_ID : 0);
+            writer.writeByte(flags);
+            if (machineIds[i] != null) {
+                writer.writeString(machineIds[i]);
+            }
+            writer.writeVarInt(loadTenths[i]);
+            writer.writeVarInt(queueSizes[i]);
+            writer.writeSignedVarInt(freeCapacities[i]);
+        }
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        siteId = reader.readString();
+        sequence = reader.readInt();
+        keyframe = reader.readBoolean();
+        int count = reader.readVarInt();
+        if (count > reader.remaining()) {
+            throw new ProtocolException("Nombre d'entrées invalide: " + count);
+        }
+        ensureCapacity(count);
+
+        int previousSlot = -1;
+        for (int i = 0; i < count; i++) {
+            slots[i] = previousSlot + 1 + reader.readVarInt();
+            previousSlot = slots[i];
+
+            int flags = reader.readByte();
+            operational[i] = (flags & FLAG_OPERATIONAL) != 0;
+            machineIds[i] = (flags & FLAG_HAS_ID) != 0 ? reader.readString() : null;
+            loadTenths[i] = reader.readVarInt();
+            queueSizes[i] = reader.readVarInt();
+            freeCapacities[i] = reader.readSignedVarInt();
+        }
+        size = count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > slots.length) {
+            int newLength = Math.max(capacity, slots.length * 2);
+            slots = Arrays.copyOf(slots, newLength);
+            machineIds = Arrays.copyOf(machineIds, newLength);
+            loadTenths = Arrays.copyOf(loadTenths, newLength);
+            queueSizes = Arrays.copyOf(queueSizes, newLength);
+            freeCapacities = Arrays.copyOf(freeCapacities, newLength);
+            operational = Arrays.copyOf(operational, newLength);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SITE_DIGEST:" + siteId + ":SEQ:" + sequence +
+                (keyframe ? ":KEYFRAME" : ":DELTA") + ":ENTRIES:" + size;
+    }
+}
@@ -0,0 +1,88 @@
+package festo.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Vue locale de l'état d'un site, reconstruite à partir des SITE_DIGEST reçus.
+ * Les entrées delta portent des valeurs absolues : un digest manqué laisse
+ * seulement des valeurs anciennes jusqu'au prochain keyframe.
+ */
+public class SiteDigestView {
+
+    private final String siteId;
+    private int lastSequence = -1;
+    private long lastUpdate;
+    private int missedDigests;
+
+    private int size; // plus grand slot connu + 1
+    private String[] machineIds = new String[16];
+    private double[] loads = new double[16];
+    private int[] queueSizes = new int[16];
+    private int[] freeCapacities = new int[16];
+    private boolean[] operational = new boolean[16];
+
+    public SiteDigestView(String siteId) {
+        this.siteId = siteId;
+    }
+
+    /**
+     * Applique un digest du site.
+     * @return false si le digest est ancien ou d'un autre site
+     */
+    public boolean apply(SiteDigestMessage digest) {
+        if (!siteId.equals(digest.getSiteId())) {
+            return false;
+        }
+        int sequence = digest.getSequence();
+        if (lastSequence >= 0 && sequence <= lastSequence) {
+            return false; // doublon ou message en retard
+        }
+        if (lastSequence >= 0 && sequence != lastSequence + 1) {
+            missedDigests += sequence - lastSequence - 1;
+        }
+        lastSequence = sequence;
+        lastUpdate = System.currentTimeMillis();
+
+        for (int i = 0; i < digest.size(); i++) {
+            int slot = digest.getSlot(i);
+            ensureCapacity(slot + 1);
+            String machineId = digest.getMachineId(i);
+            if (machineId != null) {
+                machineIds[slot] = machineId;
+            } else if (machineIds[slot] == null) {
+                continue; // slot encore inconnu : attendre le keyframe
+            }
+            loads[slot] = digest.getLoad(i);
+            queueSizes[slot] = digest.getQueueSize(i);
+            freeCapacities[slot] = digest.getFreeCapacity(i);
+            operational[slot] = digest.isOperational(i);
+            size = Math.max(size, slot + 1);
+        }
+        return true;
+    }
+
+    public String getSiteId() { return siteId; }
+    public int getLastSequence() { return lastSequence; }
+    public long getLastUpdate() { return lastUpdate; }
+    public int getMissedDigests() { return missedDigests; }
+
+    /** Nombre de slots (certains peuvent être vides : machineId null). */
+    public int size() { return size; }
+
+    public String getMachineId(int slot) { return machineIds[slot]; }
+    public double getLoad(int slot) { return loads[slot]; }
+    public int getQueueSize(int slot) { return queueSizes[slot]; }
+    public int getFreeCapacity(int slot) { return freeCapacities[slot]; }
+    public boolean isOperational(int slot) { return operational[slot]; }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > machineIds.length) {
+            int newLength = Math.max(capacity, machineIds.length * 2);
+            machineIds = Arrays.copyOf(machineIds, newLength);
+            loads = Arrays.copyOf(loads, newLength);
+            queueSizes = Arrays.copyOf(queueSizes, newLength);
+            freeCapacities = Arrays.copyOf(freeCapacities, newLength);
+            operational = Arrays.copyOf(operational, newLength);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package festo.protocol;
+
+import festo.utils.LatencyHistogram;
+
+import java.util.Arrays;
+
+/**
+ * SITE_STATUS : rapport périodique d'un coordinateur de site au superviseur.
+ * Depuis v5 : histogrammes cumulés du site (bout en bout, attente, traitement),
+ * encodés de façon creuse (seaux non vides seulement, indices en écart).
+ * Depuis v6 : tâches à échéance terminées, échéances manquées et retard cumulé (ms).
+ * Depuis v10 : candidates à l'équilibrage entre shards d'un même site (sources restées
+ * surchargées après le plan local, receveuses peu chargées), vide hors shard.
+ */
+public class SiteStatusMessage extends ProtocolMessage {
+
+    private String siteId;
+    private double load;
+    private int totalMachines;
+    private int operationalMachines;
+    private int failures;
+    private int tasksCompleted;
+
+    // Écriture : histogrammes du coordinateur (non copiés) ; lecture : histogrammes propres au message
+    private LatencyHistogram endToEnd;
+    private LatencyHistogram queueWait;
+    private LatencyHistogram service;
+
+    private long deadlineTasks;
+    private long deadlineMisses;
+    private long totalLatenessMs;
+
+    private int candidateCount;
+    private String[] candidateIds = new String[0];
+    private long[] candidateMasks = new long[0];
+    private int[] candidateQueues = new int[0];
+    private int[] candidateFree = new int[0];
+    private boolean[] candidateDonor = new boolean[0];
+
+    public SiteStatusMessage set(String siteId, double load, int totalMachines,
+                                 int operationalMachines, int failures, int tasksCompleted) {
+        this.siteId = siteId;
+        this.load = load;
+        this.totalMachines = totalMachines;
+        this.operationalMachines = operationalMachines;
+        this.failures = failures;
+        this.tasksCompleted = tasksCompleted;
+        this.endToEnd = null;
+        this.queueWait = null;
+        this.service = null;
+        this.deadlineTasks = 0;
+        this.deadlineMisses = 0;
+        this.totalLatenessMs = 0;
+        this.candidateCount = 0;
+        return this;
+    }
+
+    /** Candidate à l'équilibrage entre shards : source (donor) ou receveuse. */
+    public SiteStatusMessage addCandidate(String machineId, long capabilityMask, int queue, int free,
+                                          boolean donor) {
+        ensureCandidates(candidateCount + 1);
+        candidateIds[candidateCount] = machineId;
+        candidateMasks[candidateCount] = capabilityMask;
+        candidateQueues[candidateCount] = queue;
+        candidateFree[candidateCount] = free;
+        candidateDonor[candidateCount] = donor;
+        candidateCount++;
+        return this;
+    }
+
+    public SiteStatusMessage withDeadlines(long deadlineTasks, long deadlineMisses, long totalLatenessMs) {
+        this.deadlineTasks = deadlineTasks;
+        this.deadlineMisses = deadlineMisses;
+        this.totalLatenessMs = totalLatenessMs;
+        return this;
+    }
+
+    public SiteStatusMessage withLatency(LatencyHistogram endToEnd, LatencyHistogram queueWait,
+                                         LatencyHistogram service) {
+        this.endToEnd = endToEnd;
+        this.queueWait = queueWait;
+        this.service = service;
+        return this;
+    }
+
+    public String getSiteId() { return siteId; }
+    public double getLoad() { return load; }
+    public int getTotalMachines() { return totalMachines; }
+    public int getOperationalMachines() { return operationalMachines; }
+    public int getFailures() { return failures; }
+    public int getTasksCompleted() { return tasksCompleted; }
+    /** Histogrammes reçus ; null si l'émetteur n'en a pas envoyé. */
+    public LatencyHistogram getEndToEnd() { return endToEnd; }
+    public LatencyHistogram getQueueWait() { return queueWait; }
+    public LatencyHistogram getService() { return service; }
+    public long getDeadlineTasks() { return deadlineTasks; }
+    public long getDeadlineMisses() { return deadlineMisses; }
+    public long getTotalLatenessMs() { return totalLatenessMs; }
+    public int getCandidateCount() { return candidateCount; }
+    public String getCandidateId(int i) { return candidateIds[i]; }
+    public long getCandidateMask(int i) { return candidateMasks[i]; }
+    public int getCandidateQueue(int i) { return candidateQueues[i]; }
+    public int getCandidateFree(int i) { return candidateFree[i]; }
+    public boolean isCandidateDonor(int i) { return candidateDonor[i]; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.SITE_STATUS;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(siteId);
+        writer.writeDouble(load);
+        writer.writeInt(totalMachines);
+        writer.writeInt(operationalMachines);
+        writer.writeInt(failures);
+        writer.writeInt(tasksCompleted);
+        writer.writeBoolean(endToEnd != null);
+        if (endToEnd != null) {
+            writeHistogram(writer, endToEnd);
+            writeHistogram(writer, queueWait);
+            writeHistogram(writer, service);
+        }
+        writer.writeLong(deadlineTasks);
+        writer.writeLong(deadlineMisses);
+        writer.writeLong(totalLatenessMs);
+        writer.writeVarInt(candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            writer.writeString(candidateIds[i]);
+            writer.writeLong(candidateMasks[i]);
+            writer.writeVarInt(candidateQueues[i]);
+            writer.writeVarInt(candidateFree[i]);
+            writer.writeBoolean(candidateDonor[i]);
+        }
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        siteId = reader.readString();
+        load = reader.readDouble();
+        totalMachines = reader.readInt();
+        operationalMachines = reader.readInt();
+        failures = reader.readInt();
+        tasksCompleted = reader.readInt();
+        if (version >= 5 && reader.readBoolean()) {
+            endToEnd = readHistogram(reader, endToEnd);
+            queueWait = readHistogram(reader, queueWait);
+            service = readHistogram(reader, service);
+        } else {
+            endToEnd = null;
+            queueWait = null;
+            service = null;
+        }
+        if (version >= 6) {
+            deadlineTasks = reader.readLong();
+            deadlineMisses = reader.readLong();
+            totalLatenessMs = reader.readLong();
+        } else {
+            deadlineTasks = 0;
+            deadlineMisses = 0;
+            totalLatenessMs = 0;
+        }
+        candidateCount = 0;
+        if (version >= 10) {
+            int count = reader.readVarInt();
+            if (count > reader.remaining()) {
+                throw new ProtocolException("Candidates invalides: " + count);
+            }
+            ensureCandidates(count);
+            for (int i = 0; i < count; i++) {
+                candidateIds[i] = reader.readString();
+                candidateMasks[i] = reader.readLong();
+                candidateQueues[i] = reader.readVarInt();
+                candidateFree[i] = reader.readVarInt();
+                candidateDonor[i] = reader.readBoolean();
+            }
+            candidateCount = count;
+        }
+    }
+
+    private void ensureCandidates(int capacity) {
+        if (capacity > candidateIds.length) {
+            int newLength = Math.max(capacity, candidateIds.length * 2);
+            candidateIds = Arrays.copyOf(candidateIds, newLength);
+            candidateMasks = Arrays.copyOf(candidateMasks, newLength);
+            candidateQueues = Arrays.copyOf(candidateQueues, newLength);
+            candidateFree = Arrays.copyOf(candidateFree, newLength);
+            candidateDonor = Arrays.copyOf(candidateDonor, newLength);
+        }
+    }
+
+    private static void writeHistogram(MessageWriter writer, LatencyHistogram histogram) {
+        int nonEmpty = 0;
+        for (int i = histogram.nextNonEmpty(0); i >= 0; i = histogram.nextNonEmpty(i + 1)) {
+            nonEmpty++;
+        }
+        writer.writeVarInt(nonEmpty);
+        int previous = -1;
+        for (int i = histogram.nextNonEmpty(0); i >= 0; i = histogram.nextNonEmpty(i + 1)) {
+            writer.writeVarInt(i - previous - 1);
+            writer.writeVarInt((int) Math.min(Integer.MAX_VALUE, histogram.countAt(i)));
+            previous = i;
+        }
+    }
+
+    private static LatencyHistogram readHistogram(MessageReader reader, LatencyHistogram into) {
+        LatencyHistogram histogram = into != null ? into : new LatencyHistogram();
+        histogram.reset();
+        int nonEmpty = reader.readVarInt();
+        if (nonEmpty > LatencyHistogram.BUCKET_COUNT || nonEmpty > reader.remaining()) {
+            throw new ProtocolException("Histogramme invalide: " + nonEmpty + " seaux");
+        }
+        int bucket = -1;
+        for (int k = 0; k < nonEmpty; k++) {
+            bucket += reader.readVarInt() + 1;
+            histogram.addBucket(bucket, reader.readVarInt());
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.US,
+                "SITE_STATUS:%s:LOAD:%.1f:MACHINES:%d:OPERATIONAL:%d:FAILURES:%d:TASKS:%d",
+                siteId, load, totalMachines, operationalMachines, failures, tasksCompleted);
+    }
+}
@@ -0,0 +1,114 @@
+package festo.protocol;
+
+import java.util.Arrays;
+
+/**
+ * STEAL_GRANT : réponse unique de la victime à un {@link StealRequestMessage}.
+ * Contient les tâches cédées (retirées de sa file avant l'envoi), éventuellement aucune ;
+ * dans ce cas le statut indique pourquoi.
+ * Chaque tâche garde sa capacité exigée (v12) : le voleur pourra la transférer à son tour
+ * sans la présenter comme "sans exigence".
+ */
+public class StealGrantMessage extends ProtocolMessage {
+
+    public static final int GRANTED = 0;
+    public static final int NOTHING_TO_GIVE = 1;  // file trop courte ou victime en pause
+    public static final int INCOMPATIBLE = 2;     // type de machine non compatible
+
+    private String victimId;
+    private int status;
+
+    private int size;
+    private String[] taskIds = new String[8];
+    private int[] priorities = new int[8];
+    private long[] createdAt = new long[8];
+    private long[] deadlines = new long[8];  // 0 si aucune
+    private int[] capabilities = new int[8]; // voir TaskMessage.ANY_CAPABILITY
+
+    /** Prépare une nouvelle réponse (les tâches précédentes sont oubliées). */
+    public StealGrantMessage begin(String victimId, int status) {
+        this.victimId = victimId;
+        this.status = status;
+        this.size = 0;
+        return this;
+    }
+
+    public StealGrantMessage add(String taskId, int priority, long created, long deadline) {
+        return add(taskId, priority, created, deadline, TaskMessage.ANY_CAPABILITY);
+    }
+
+    public StealGrantMessage add(String taskId, int priority, long created, long deadline, int capability) {
+        ensureCapacity(size + 1);
+        taskIds[size] = taskId;
+        priorities[size] = priority;
+        createdAt[size] = created;
+        deadlines[size] = deadline;
+        capabilities[size] = capability;
+        size++;
+        return this;
+    }
+
+    public String getVictimId() { return victimId; }
+    public int getStatus() { return status; }
+    public int size() { return size; }
+
+    public String getTaskId(int i) { return taskIds[i]; }
+    public int getPriority(int i) { return priorities[i]; }
+    public long getCreatedAt(int i) { return createdAt[i]; }
+    public long getDeadline(int i) { return deadlines[i]; }
+    public int getCapability(int i) { return capabilities[i]; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.STEAL_GRANT;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(victimId);
+        writer.writeByte(status);
+        writer.writeVarInt(size);
+        for (int i = 0; i < size; i++) {
+            writer.writeString(taskIds[i]);
+            writer.writeByte(priorities[i]);
+            writer.writeLong(createdAt[i]);
+            writer.writeLong(deadlines[i]);
+            writer.writeByte(capabilities[i] + 1); // 0 = aucune exigence
+        }
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        victimId = reader.readString();
+        status = reader.readByte();
+        int count = reader.readVarInt();
+        if (count > reader.remaining()) {
+            throw new ProtocolException("Nombre de tâches invalide: " + count);
+        }
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            taskIds[i] = reader.readString();
+            priorities[i] = reader.readByte();
+            createdAt[i] = version >= 5 ? reader.readLong() : 0;
+            deadlines[i] = version >= 6 ? reader.readLong() : 0;
+            capabilities[i] = version >= 12 ? reader.readByte() - 1 : TaskMessage.ANY_CAPABILITY;
+        }
+        size = count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > taskIds.length) {
+            int newLength = Math.max(capacity, taskIds.length * 2);
+            taskIds = Arrays.copyOf(taskIds, newLength);
+            priorities = Arrays.copyOf(priorities, newLength);
+            createdAt = Arrays.copyOf(createdAt, newLength);
+            deadlines = Arrays.copyOf(deadlines, newLength);
+            capabilities = Arrays.copyOf(capabilities, newLength);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "STEAL_GRANT:" + victimId + ":STATUS:" + status + ":TASKS:" + size;
+    }
+}
@@ -0,0 +1,48 @@
+package festo.protocol;
+
+/**
+ * STEAL_REQUEST : une machine inactive demande jusqu'à {@code wanted} tâches
+ * à une machine voisine du même site. Le type de machine permet à la victime
+ * de vérifier la compatibilité avant de céder quoi que ce soit.
+ */
+public class StealRequestMessage extends ProtocolMessage {
+
+    private String thiefId;
+    private String machineType;
+    private int wanted;
+
+    public StealRequestMessage set(String thiefId, String machineType, int wanted) {
+        this.thiefId = thiefId;
+        this.machineType = machineType;
+        this.wanted = wanted;
+        return this;
+    }
+
+    public String getThiefId() { return thiefId; }
+    public String getMachineType() { return machineType; }
+    public int getWanted() { return wanted; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.STEAL_REQUEST;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(thiefId);
+        writer.writeString(machineType);
+        writer.writeVarInt(wanted);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        thiefId = reader.readString();
+        machineType = reader.readString();
+        wanted = reader.readVarInt();
+    }
+
+    @Override
+    public String toString() {
+        return "STEAL_REQUEST:" + thiefId + ":" + machineType + ":WANTED:" + wanted;
+    }
+}
@@ -0,0 +1,46 @@
+package festo.protocol;
+
+/**
+ * SUPERVISOR_DIRECTIVE : ordre du superviseur global vers un coordinateur de site.
+ */
+public class SupervisorDirectiveMessage extends ProtocolMessage {
+
+    private String action;       // REALLOCATE, THROTTLE, REDUCE_LOAD...
+    private String machineId;    // peut être null
+    private String description;
+
+    public SupervisorDirectiveMessage set(String action, String machineId, String description) {
+        this.action = action;
+        this.machineId = machineId;
+        this.description = description;
+        return this;
+    }
+
+    public String getAction() { return action; }
+    public String getMachineId() { return machineId; }
+    public String getDescription() { return description; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.SUPERVISOR_DIRECTIVE;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(action);
+        writer.writeString(machineId);
+        writer.writeString(description);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        action = reader.readString();
+        machineId = reader.readString();
+        description = reader.readString();
+    }
+
+    @Override
+    public String toString() {
+        return "SUPERVISOR_DIRECTIVE:" + action + ":" + machineId + ":" + description;
+    }
+}
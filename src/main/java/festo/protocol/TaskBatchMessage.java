@@ -0,0 +1,140 @@
+package festo.protocol;
+
+import java.util.Arrays;
+
+/**
+ * TASK_BATCH : plusieurs tâches pour une même machine dans un seul message.
+ *
+ * - allOrNothing = true : la machine admet tout le lot ou le refuse en entier ;
+ * - sinon chaque tâche est admise ou refusée séparément.
+ * La machine répond par un seul {@link TaskBatchReplyMessage}.
+ * Depuis la v7, un lot peut venir d'une autre machine du site (transfert) : ses tâches
+ * ont déjà été admises une fois et la propriété passe de la source à la cible.
+ */
+public class TaskBatchMessage extends ProtocolMessage {
+
+    private String batchId;
+    private boolean allOrNothing;
+    private String transferFrom; // machine source d'un transfert, null sinon
+
+    private int size;
+    private String[] taskIds = new String[16];
+    private int[] priorities = new int[16];
+    private int[] capabilities = new int[16]; // voir TaskMessage.ANY_CAPABILITY
+    private long[] createdAt = new long[16];
+    private long[] deadlines = new long[16];  // 0 si aucune
+    private boolean[] firm = new boolean[16];
+
+    /** Prépare un nouveau lot (les tâches précédentes sont oubliées). */
+    public TaskBatchMessage begin(String batchId, boolean allOrNothing) {
+        this.batchId = batchId;
+        this.allOrNothing = allOrNothing;
+        this.transferFrom = null;
+        this.size = 0;
+        return this;
+    }
+
+    public TaskBatchMessage withTransferFrom(String machineId) {
+        this.transferFrom = machineId;
+        return this;
+    }
+
+    public TaskBatchMessage add(String taskId, int priority) {
+        return add(taskId, priority, TaskMessage.ANY_CAPABILITY);
+    }
+
+    public TaskBatchMessage add(String taskId, int priority, int capability) {
+        return add(taskId, priority, capability, 0);
+    }
+
+    public TaskBatchMessage add(String taskId, int priority, int capability, long created) {
+        ensureCapacity(size + 1);
+        taskIds[size] = taskId;
+        priorities[size] = priority;
+        capabilities[size] = capability;
+        createdAt[size] = created;
+        deadlines[size] = 0;
+        firm[size] = false;
+        size++;
+        return this;
+    }
+
+    /** Échéance de la dernière tâche ajoutée. */
+    public TaskBatchMessage withDeadline(long deadline, boolean isFirm) {
+        deadlines[size - 1] = deadline;
+        firm[size - 1] = isFirm;
+        return this;
+    }
+
+    public String getBatchId() { return batchId; }
+    public boolean isAllOrNothing() { return allOrNothing; }
+    public String getTransferFrom() { return transferFrom; }
+    public int size() { return size; }
+
+    public String getTaskId(int i) { return taskIds[i]; }
+    public int getPriority(int i) { return priorities[i]; }
+    public int getCapability(int i) { return capabilities[i]; }
+    public long getCreatedAt(int i) { return createdAt[i]; }
+    public long getDeadline(int i) { return deadlines[i]; }
+    public boolean isFirm(int i) { return firm[i]; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.TASK_BATCH;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(batchId);
+        writer.writeBoolean(allOrNothing);
+        writer.writeString(transferFrom);
+        writer.writeVarInt(size);
+        for (int i = 0; i < size; i++) {
+            writer.writeString(taskIds[i]);
+            writer.writeByte(priorities[i]);
+            writer.writeByte(capabilities[i] + 1);
+            writer.writeLong(createdAt[i]);
+            writer.writeLong(deadlines[i]);
+            writer.writeBoolean(firm[i]);
+        }
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        batchId = reader.readString();
+        allOrNothing = reader.readBoolean();
+        transferFrom = version >= 7 ? reader.readString() : null;
+        int count = reader.readVarInt();
+        if (count > reader.remaining()) {
+            throw new ProtocolException("Nombre de tâches invalide: " + count);
+        }
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            taskIds[i] = reader.readString();
+            priorities[i] = reader.readByte();
+            capabilities[i] = version >= 4 ? reader.readByte() - 1 : TaskMessage.ANY_CAPABILITY;
+            createdAt[i] = version >= 5 ? reader.readLong() : 0;
+            deadlines[i] = version >= 6 ? reader.readLong() : 0;
+            firm[i] = version >= 6 && reader.readBoolean();
+        }
+        size = count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > taskIds.length) {
+            int newLength = Math.max(capacity, taskIds.length * 2);
+            taskIds = Arrays.copyOf(taskIds, newLength);
+            priorities = Arrays.copyOf(priorities, newLength);
+            capabilities = Arrays.copyOf(capabilities, newLength);
+            createdAt = Arrays.copyOf(createdAt, newLength);
+            deadlines = Arrays.copyOf(deadlines, newLength);
+            firm = Arrays.copyOf(firm, newLength);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TASK_BATCH:" + batchId + ":TASKS:" + size + (allOrNothing ? ":ALL_OR_NOTHING" : "") +
+                (transferFrom != null ? ":FROM:" + transferFrom : "");
+    }
+}
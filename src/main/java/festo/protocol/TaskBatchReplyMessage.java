@@ -0,0 +1,122 @@
+package festo.protocol;
+
+import java.util.Arrays;
+
+/**
+ * TASK_BATCH_REPLY : réponse unique d'une machine à un {@link TaskBatchMessage}.
+ * Une décision par tâche (dans l'ordre du lot), plus la charge et les crédits de la machine.
+ * Depuis la v6, un refus porte son motif ({@link TaskReplyMessage#REASON_DEADLINE}...).
+ */
+public class TaskBatchReplyMessage extends ProtocolMessage {
+
+    private String batchId;
+    private double load;
+    private int eta;          // secondes, pour la dernière tâche acceptée
+    private int credits = -1; // places libres après décision, -1 si inconnu
+
+    private int size;
+    private int acceptedCount;
+    private String[] taskIds = new String[16];
+    private boolean[] accepted = new boolean[16];
+    private int[] reasons = new int[16];
+
+    /** Prépare une nouvelle réponse (les décisions précédentes sont oubliées). */
+    public TaskBatchReplyMessage begin(String batchId, double load) {
+        this.batchId = batchId;
+        this.load = load;
+        this.eta = 0;
+        this.credits = -1;
+        this.size = 0;
+        this.acceptedCount = 0;
+        return this;
+    }
+
+    public TaskBatchReplyMessage add(String taskId, boolean isAccepted) {
+        return add(taskId, isAccepted, TaskReplyMessage.REASON_CAPACITY);
+    }
+
+    public TaskBatchReplyMessage add(String taskId, boolean isAccepted, int reason) {
+        ensureCapacity(size + 1);
+        taskIds[size] = taskId;
+        accepted[size] = isAccepted;
+        reasons[size] = reason;
+        if (isAccepted) acceptedCount++;
+        size++;
+        return this;
+    }
+
+    public TaskBatchReplyMessage withEta(int eta) {
+        this.eta = eta;
+        return this;
+    }
+
+    public TaskBatchReplyMessage withCredits(int credits) {
+        this.credits = credits;
+        return this;
+    }
+
+    public String getBatchId() { return batchId; }
+    public double getLoad() { return load; }
+    public int getEta() { return eta; }
+    public int getCredits() { return credits; }
+    public int size() { return size; }
+    public int getAcceptedCount() { return acceptedCount; }
+
+    public String getTaskId(int i) { return taskIds[i]; }
+    public boolean isAccepted(int i) { return accepted[i]; }
+    public int getReason(int i) { return reasons[i]; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.TASK_BATCH_REPLY;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(batchId);
+        writer.writeDouble(load);
+        writer.writeVarInt(eta);
+        writer.writeSignedVarInt(credits);
+        writer.writeVarInt(size);
+        for (int i = 0; i < size; i++) {
+            writer.writeString(taskIds[i]);
+            writer.writeBoolean(accepted[i]);
+            writer.writeByte(reasons[i]);
+        }
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        batchId = reader.readString();
+        load = reader.readDouble();
+        eta = reader.readVarInt();
+        credits = reader.readSignedVarInt();
+        int count = reader.readVarInt();
+        if (count > reader.remaining()) {
+            throw new ProtocolException("Nombre de décisions invalide: " + count);
+        }
+        ensureCapacity(count);
+        acceptedCount = 0;
+        for (int i = 0; i < count; i++) {
+            taskIds[i] = reader.readString();
+            accepted[i] = reader.readBoolean();
+            reasons[i] = version >= 6 ? reader.readByte() : TaskReplyMessage.REASON_CAPACITY;
+            if (accepted[i]) acceptedCount++;
+        }
+        size = count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > taskIds.length) {
+            int newLength = Math.max(capacity, taskIds.length * 2);
+            taskIds = Arrays.copyOf(taskIds, newLength);
+            accepted = Arrays.copyOf(accepted, newLength);
+            reasons = Arrays.copyOf(reasons, newLength);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TASK_BATCH_REPLY:" + batchId + ":ACCEPTED:" + acceptedCount + "/" + size;
+    }
+}
@@ -0,0 +1,66 @@
+package festo.protocol;
+
+/**
+ * TASK_CLAIM / TASK_CLAIM_REJECTED : une machine déclare à son coordinateur la tâche qu'elle
+ * vient d'admettre ; le coordinateur ne répond que pour refuser un doublon
+ * (tâche déjà détenue par une machine du site), avec le propriétaire en place.
+ */
+public class TaskClaimMessage extends ProtocolMessage {
+
+    private boolean rejected;
+    private String taskId;
+    private String machineId;  // revendicatrice, ou propriétaire en place si refus
+    private String fromId;     // ancien propriétaire qui l'a cédée (vol, transfert), null sinon
+
+    public TaskClaimMessage claim(String taskId, String machineId, String fromId) {
+        this.rejected = false;
+        this.taskId = taskId;
+        this.machineId = machineId;
+        this.fromId = fromId;
+        return this;
+    }
+
+    public TaskClaimMessage rejected(String taskId, String ownerId) {
+        this.rejected = true;
+        this.taskId = taskId;
+        this.machineId = ownerId;
+        this.fromId = null;
+        return this;
+    }
+
+    public boolean isRejected() { return rejected; }
+    public String getTaskId() { return taskId; }
+    public String getMachineId() { return machineId; }
+    public String getFromId() { return fromId; }
+
+    @Override
+    public MessageType type() {
+        return rejected ? MessageType.TASK_CLAIM_REJECTED : MessageType.TASK_CLAIM;
+    }
+
+    @Override
+    public boolean accepts(MessageType type) {
+        return type == MessageType.TASK_CLAIM || type == MessageType.TASK_CLAIM_REJECTED;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(taskId);
+        writer.writeString(machineId);
+        writer.writeString(fromId);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        rejected = type == MessageType.TASK_CLAIM_REJECTED;
+        taskId = reader.readString();
+        machineId = reader.readString();
+        fromId = reader.readString();
+    }
+
+    @Override
+    public String toString() {
+        return (rejected ? "CLAIM_REJECTED:" : "CLAIM:") + taskId + ":" + machineId +
+                (fromId != null ? ":FROM:" + fromId : "");
+    }
+}
@@ -0,0 +1,88 @@
+package festo.protocol;
+
+/**
+ * TASK_COMPLETED : une machine signale la fin d'une tâche à son coordinateur.
+ * Depuis v5 : priorité, création de la tâche et durées d'attente et de traitement (ms),
+ * pour les histogrammes de latence du site. Depuis v6 : échéance de la tâche (0 si aucune).
+ */
+public class TaskCompletedMessage extends ProtocolMessage {
+
+    private String taskId;
+    private String machineId;
+    private int priority;
+    private long createdAt;     // 0 si inconnue
+    private long queueWaitMs;
+    private long serviceMs;
+    private long deadline;
+
+    public TaskCompletedMessage set(String taskId, String machineId) {
+        this.taskId = taskId;
+        this.machineId = machineId;
+        this.priority = 0;
+        this.createdAt = 0;
+        this.queueWaitMs = 0;
+        this.serviceMs = 0;
+        this.deadline = 0;
+        return this;
+    }
+
+    public TaskCompletedMessage withTimings(int priority, long createdAt, long queueWaitMs, long serviceMs) {
+        this.priority = priority;
+        this.createdAt = createdAt;
+        this.queueWaitMs = queueWaitMs;
+        this.serviceMs = serviceMs;
+        return this;
+    }
+
+    public TaskCompletedMessage withDeadline(long deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    public String getTaskId() { return taskId; }
+    public String getMachineId() { return machineId; }
+    public int getPriority() { return priority; }
+    public long getCreatedAt() { return createdAt; }
+    public long getQueueWaitMs() { return queueWaitMs; }
+    public long getServiceMs() { return serviceMs; }
+    public long getDeadline() { return deadline; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.TASK_COMPLETED;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(taskId);
+        writer.writeString(machineId);
+        writer.writeByte(priority);
+        writer.writeLong(createdAt);
+        writer.writeVarInt((int) Math.min(Integer.MAX_VALUE, queueWaitMs));
+        writer.writeVarInt((int) Math.min(Integer.MAX_VALUE, serviceMs));
+        writer.writeLong(deadline);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        taskId = reader.readString();
+        machineId = reader.readString();
+        if (version >= 5) {
+            priority = reader.readByte();
+            createdAt = reader.readLong();
+            queueWaitMs = reader.readVarInt();
+            serviceMs = reader.readVarInt();
+        } else {
+            priority = 0;
+            createdAt = 0;
+            queueWaitMs = 0;
+            serviceMs = 0;
+        }
+        deadline = version >= 6 ? reader.readLong() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TASK_COMPLETED:" + taskId + ":" + machineId;
+    }
+}
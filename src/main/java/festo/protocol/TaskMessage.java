@@ -0,0 +1,80 @@
+package festo.protocol;
+
+/**
+ * TASK : demande d'exécution d'une tâche (générateur / coordinateur → machine).
+ * La capacité exigée est un code (ordinal de la capacité), {@link #ANY_CAPABILITY} si aucune.
+ */
+public class TaskMessage extends ProtocolMessage {
+
+    public static final int ANY_CAPABILITY = -1;
+
+    private String taskId;
+    private int priority;
+    private int capability = ANY_CAPABILITY;
+    private long createdAt; // création de la tâche (ms), 0 si inconnue
+    private long deadline;  // échéance absolue (ms), 0 si aucune
+    private boolean firm;   // échéance ferme : la machine refuse si elle ne peut pas la tenir
+
+    public TaskMessage set(String taskId, int priority) {
+        return set(taskId, priority, ANY_CAPABILITY);
+    }
+
+    public TaskMessage set(String taskId, int priority, int capability) {
+        this.taskId = taskId;
+        this.priority = priority;
+        this.capability = capability;
+        this.createdAt = 0;
+        this.deadline = 0;
+        this.firm = false;
+        return this;
+    }
+
+    public TaskMessage withCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+        return this;
+    }
+
+    public TaskMessage withDeadline(long deadline, boolean firm) {
+        this.deadline = deadline;
+        this.firm = firm;
+        return this;
+    }
+
+    public String getTaskId() { return taskId; }
+    public int getPriority() { return priority; }
+    public int getCapability() { return capability; }
+    public long getCreatedAt() { return createdAt; }
+    public long getDeadline() { return deadline; }
+    public boolean isFirm() { return firm; }
+
+    @Override
+    public MessageType type() {
+        return MessageType.TASK;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(taskId);
+        writer.writeByte(priority);
+        writer.writeByte(capability + 1); // 0 = aucune exigence
+        writer.writeLong(createdAt);
+        writer.writeLong(deadline);
+        writer.writeBoolean(firm);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        taskId = reader.readString();
+        priority = reader.readByte();
+        capability = version >= 4 ? reader.readByte() - 1 : ANY_CAPABILITY;
+        createdAt = version >= 5 ? reader.readLong() : 0;
+        deadline = version >= 6 ? reader.readLong() : 0;
+        firm = version >= 6 && reader.readBoolean();
+    }
+
+    @Override
+    public String toString() {
+        return "TASK:" + taskId + ":" + priority +
+                (capability != ANY_CAPABILITY ? ":CAPABILITY:" + capability : "");
+    }
+}
@@ -0,0 +1,89 @@
+package festo.protocol;
+
+/**
+ * TASK_ACCEPTED / TASK_REFUSED : réponse d'une machine à une demande de tâche.
+ * Depuis la v2, la réponse porte aussi les crédits (places libres) de la machine ;
+ * depuis la v6, le motif d'un refus.
+ */
+public class TaskReplyMessage extends ProtocolMessage {
+
+    public static final int REASON_CAPACITY = 0;  // file pleine, panne, admission
+    public static final int REASON_DEADLINE = 1;  // fin prévue après l'échéance ferme
+
+    private boolean accepted;
+    private String taskId;
+    private int eta;      // secondes, si acceptée
+    private double load;  // charge de la machine, si refusée
+    private int credits = -1; // places libres après décision, -1 si inconnu (v1)
+    private int reason = REASON_CAPACITY;
+
+    public TaskReplyMessage accepted(String taskId, int eta) {
+        this.accepted = true;
+        this.taskId = taskId;
+        this.eta = eta;
+        this.load = 0;
+        this.reason = REASON_CAPACITY;
+        return this;
+    }
+
+    public TaskReplyMessage refused(String taskId, double load) {
+        this.accepted = false;
+        this.taskId = taskId;
+        this.eta = 0;
+        this.load = load;
+        this.reason = REASON_CAPACITY;
+        return this;
+    }
+
+    public TaskReplyMessage withReason(int reason) {
+        this.reason = reason;
+        return this;
+    }
+
+    public TaskReplyMessage withCredits(int credits) {
+        this.credits = credits;
+        return this;
+    }
+
+    public boolean isAccepted() { return accepted; }
+    public String getTaskId() { return taskId; }
+    public int getEta() { return eta; }
+    public double getLoad() { return load; }
+    public int getCredits() { return credits; }
+    public int getReason() { return reason; }
+
+    @Override
+    public MessageType type() {
+        return accepted ? MessageType.TASK_ACCEPTED : MessageType.TASK_REFUSED;
+    }
+
+    @Override
+    public boolean accepts(MessageType type) {
+        return type == MessageType.TASK_ACCEPTED || type == MessageType.TASK_REFUSED;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(taskId);
+        writer.writeInt(eta);
+        writer.writeDouble(load);
+        writer.writeSignedVarInt(credits);
+        writer.writeByte(reason);
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        accepted = type == MessageType.TASK_ACCEPTED;
+        taskId = reader.readString();
+        eta = reader.readInt();
+        load = reader.readDouble();
+        credits = version >= 2 ? reader.readSignedVarInt() : -1;
+        reason = version >= 6 ? reader.readByte() : REASON_CAPACITY;
+    }
+
+    @Override
+    public String toString() {
+        return accepted ? "ACCEPTED:" + taskId + ":ETA:" + eta
+                : "REFUSED:" + taskId + ":LOAD:" + load;
+    }
+}
@@ -0,0 +1,115 @@
+package festo.protocol;
+
+import java.util.Arrays;
+
+/**
+ * TRANSFER_TASKS : plan de rééquilibrage du coordinateur, envoyé en un seul message à toutes
+ * les machines sources. Chaque mouvement demande à une source de céder jusqu'à {@code count}
+ * tâches de sa file à une cible ; une source exécute ses mouvements l'un après l'autre.
+ * Pour chaque mouvement, la source envoie un seul {@link TaskBatchMessage}
+ * (marqué {@link TaskBatchMessage#getTransferFrom()}) et le garde jusqu'à l'accusé
+ * ({@link TaskBatchReplyMessage}) de la cible.
+ * Avant la v9 : un seul mouvement, sans source (le destinataire).
+ */
+public class TransferTasksMessage extends ProtocolMessage {
+
+    private String siteId;
+    private int planId;
+
+    private int size;
+    private String[] sourceIds = new String[8];
+    private String[] targetIds = new String[8];
+    private int[] counts = new int[8];
+
+    /** Prépare un nouveau plan (les mouvements précédents sont oubliés). */
+    public TransferTasksMessage begin(String siteId, int planId) {
+        this.siteId = siteId;
+        this.planId = planId;
+        this.size = 0;
+        return this;
+    }
+
+    public TransferTasksMessage add(String sourceId, String targetId, int count) {
+        ensureCapacity(size + 1);
+        sourceIds[size] = sourceId;
+        targetIds[size] = targetId;
+        counts[size] = count;
+        size++;
+        return this;
+    }
+
+    public String getSiteId() { return siteId; }
+    public int getPlanId() { return planId; }
+    public int size() { return size; }
+
+    public String getSourceId(int i) { return sourceIds[i]; } // null : le destinataire (avant v9)
+    public String getTargetId(int i) { return targetIds[i]; }
+    public int getCount(int i) { return counts[i]; }
+
+    /** Nombre total de tâches à déplacer. */
+    public int totalCount() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    @Override
+    public MessageType type() {
+        return MessageType.TRANSFER_TASKS;
+    }
+
+    @Override
+    protected void writeBody(MessageWriter writer) {
+        writer.writeString(siteId);
+        writer.writeVarInt(planId);
+        writer.writeVarInt(size);
+        for (int i = 0; i < size; i++) {
+            writer.writeString(sourceIds[i]);
+            writer.writeString(targetIds[i]);
+            writer.writeVarInt(counts[i]);
+        }
+    }
+
+    @Override
+    protected void readBody(MessageReader reader, MessageType type, int version) {
+        if (version < 9) {
+            siteId = null;
+            planId = 0;
+            ensureCapacity(1);
+            sourceIds[0] = null;
+            targetIds[0] = reader.readString();
+            counts[0] = reader.readVarInt();
+            size = 1;
+            return;
+        }
+        siteId = reader.readString();
+        planId = reader.readVarInt();
+        int count = reader.readVarInt();
+        if (count > reader.remaining()) {
+            throw new ProtocolException("Nombre de mouvements invalide: " + count);
+        }
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            sourceIds[i] = reader.readString();
+            targetIds[i] = reader.readString();
+            counts[i] = reader.readVarInt();
+        }
+        size = count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > sourceIds.length) {
+            int newLength = Math.max(capacity, sourceIds.length * 2);
+            sourceIds = Arrays.copyOf(sourceIds, newLength);
+            targetIds = Arrays.copyOf(targetIds, newLength);
+            counts = Arrays.copyOf(counts, newLength);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TRANSFER_TASKS:" + siteId + ":PLAN:" + planId + ":MOVES:" + size + ":TASKS:" + totalCount();
+    }
+}
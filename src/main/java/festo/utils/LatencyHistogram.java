@@ -0,0 +1,134 @@
+package festo.utils;
+
+import java.util.Arrays;
+
+/**
+ * Histogramme de latences à précision relative bornée (disposition type HdrHistogram).
+ *
+ * Valeurs en millisecondes. En dessous de 128 ms chaque milliseconde a son seau ;
+ * au-delà, chaque puissance de deux est découpée en 64 seaux, soit une erreur relative
+ * inférieure à 1,6 % jusqu'à ~2^40 ms. Enregistrement en O(1) sans allocation,
+ * fusion de deux histogrammes par addition des compteurs.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;      // 128
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;     // 64
+    private static final int MAX_SHIFT = 34;
+    public static final int BUCKET_COUNT = SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        recordCount(bucketOf(v), 1, v, v);
+    }
+
+    /** Ajoute les compteurs d'un autre histogramme. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /** Ajoute {@code count} valeurs dans un seau (histogramme reçu sous forme creuse). */
+    public void addBucket(int bucket, long count) {
+        if (bucket < 0 || bucket >= BUCKET_COUNT || count <= 0) {
+            return;
+        }
+        long value = valueAt(bucket);
+        recordCount(bucket, count, value * count, value);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Valeur au percentile donné (0-100), à la précision du seau ; 0 si vide.
+     */
+    public long percentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, Math.max(min, valueAt(i)));
+            }
+        }
+        return max;
+    }
+
+    public long getCount() { return totalCount; }
+    public long getMax() { return max; }
+    public long getMin() { return totalCount > 0 ? min : 0; }
+    public double getMean() { return totalCount > 0 ? (double) sum / totalCount : 0; }
+
+    /** Compteur d'un seau (pour l'encodage creux). */
+    public long countAt(int bucket) {
+        return counts[bucket];
+    }
+
+    /** Indice du prochain seau non vide à partir de {@code from}, -1 sinon. */
+    public int nextNonEmpty(int from) {
+        for (int i = from; i < BUCKET_COUNT; i++) {
+            if (counts[i] != 0) return i;
+        }
+        return -1;
+    }
+
+    private void recordCount(int bucket, long count, long total, long value) {
+        counts[bucket] += count;
+        totalCount += count;
+        sum += total;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        if (shift > MAX_SHIFT) {
+            return BUCKET_COUNT - 1; // au-delà de la plage : dernier seau
+        }
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) (value >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    // Valeur représentative d'un seau : milieu de son intervalle
+    static long valueAt(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long subBucket = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return (subBucket << shift) + (1L << (shift - 1));
+    }
+
+    /** "n=… p50=… p90=… p99=… p99.9=… max=…" (ms). */
+    @Override
+    public String toString() {
+        if (totalCount == 0) {
+            return "n=0";
+        }
+        return String.format("n=%d p50=%d p90=%d p99=%d p99.9=%d max=%d ms",
+                totalCount, percentile(50), percentile(90), percentile(99), percentile(99.9), max);
+    }
+}
@@ -0,0 +1,143 @@
+package festo.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Roue temporelle hachée : des milliers d'échéances pour un seul TickerBehaviour.
+ *
+ * La roue a {@code slots} cases (puissance de 2) de {@code tickMs} chacune.
+ * Une échéance est rangée dans la case de son tick ; une échéance plus lointaine
+ * qu'un tour de roue reste dans sa case jusqu'au bon tour.
+ * Armer et annuler sont en O(1) (listes doublement chaînées), avancer coûte
+ * O(ticks écoulés + échéances expirées).
+ *
+ * Un agent JADE n'exécute qu'un comportement à la fois : pas de synchronisation.
+ */
+public final class TimerWheel<T> {
+
+    /** Échéance armée ; sert de jeton pour l'annulation. */
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private int bucket = -1;
+
+        private Timeout(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T payload() {
+            return payload;
+        }
+
+        public boolean isPending() {
+            return bucket >= 0;
+        }
+    }
+
+    private final long tickMs;
+    private final long startTime;
+    private final Timeout<T>[] heads;
+    private final int mask;
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(long tickMs, int slots, long now) {
+        if (tickMs <= 0 || slots <= 0 || (slots & (slots - 1)) != 0) {
+            throw new IllegalArgumentException("tickMs > 0 et slots puissance de 2 requis");
+        }
+        this.tickMs = tickMs;
+        this.startTime = now;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Timeout<T>[] buckets = (Timeout<T>[]) new Timeout[slots];
+        this.heads = buckets;
+        this.mask = slots - 1;
+    }
+
+    /** Arme une échéance dans delayMs (arrondie au tick supérieur). */
+    public Timeout<T> schedule(T payload, long delayMs, long now) {
+        long deadlineTick = (now + Math.max(0, delayMs) - startTime + tickMs - 1) / tickMs;
+        Timeout<T> timeout = new Timeout<>(payload, Math.max(deadlineTick, currentTick + 1));
+        link(timeout);
+        return timeout;
+    }
+
+    /** Annule une échéance ; sans effet si elle a déjà expiré ou été annulée. */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || !timeout.isPending()) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    /**
+     * Avance la roue jusqu'à now et passe chaque échéance expirée à onExpire.
+     * @return nombre d'échéances expirées
+     */
+    public int advance(long now, Consumer<T> onExpire) {
+        long targetTick = (now - startTime) / tickMs;
+        int expired = 0;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Roue vide : inutile de parcourir les ticks restants
+            if (size == 0) {
+                currentTick = targetTick;
+                break;
+            }
+            // Détacher d'abord les échéances expirées : le callback peut armer ou annuler
+            List<Timeout<T>> due = null;
+            Timeout<T> timeout = heads[(int) (currentTick & mask)];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.deadlineTick <= currentTick) {
+                    unlink(timeout);
+                    if (due == null) due = new ArrayList<>();
+                    due.add(timeout);
+                }
+                timeout = next;
+            }
+            if (due != null) {
+                for (Timeout<T> t : due) {
+                    onExpire.accept(t.payload);
+                }
+                expired += due.size();
+            }
+        }
+        return expired;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void link(Timeout<T> timeout) {
+        int bucket = (int) (timeout.deadlineTick & mask);
+        timeout.bucket = bucket;
+        timeout.next = heads[bucket];
+        if (heads[bucket] != null) {
+            heads[bucket].prev = timeout;
+        }
+        heads[bucket] = timeout;
+        size++;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            heads[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+}